@@ -14,6 +14,7 @@
 #include <unistd.h>
 #include <SDL2/SDL.h>
 #include <stdarg.h>
+#include <stddef.h>
 
 static int g_debug_enabled = 0;
 
@@ -32,11 +33,14 @@ struct gamepad_io {
     int16_t lx, ly, rx, ry, lt, rt;
     uint8_t btn[15];
     uint8_t hat;
-    uint8_t _padding[4];
+    uint32_t sequence;  /* seqlock: odd while WinHandler rewrites the state above */
     uint16_t low_freq_rumble;
     uint16_t high_freq_rumble;
 };
 
+#define STATE_SIZE offsetof(struct gamepad_io, sequence)
+#define SEQLOCK_RETRIES 8
+
 static int (*p_SDL_Init)(uint32_t flags);
 static const char * (*p_SDL_GetError)(void);
 static SDL_Joystick * (*p_SDL_JoystickOpen)(int device_index);
@@ -79,6 +83,23 @@ static int OnRumble(void *userdata,
 
 
 
+/* Returns sizeof *out for a consistent snapshot, 0 if the writer stayed busy, -1 on error. */
+static ssize_t read_gamepad_state(int fd, struct gamepad_io *out)
+{
+    uint32_t before, after;
+    for (int i = 0; i < SEQLOCK_RETRIES; ++i) {
+        if (pread(fd, &before, sizeof before, STATE_SIZE) != sizeof before) return -1;
+        if (before & 1) continue;
+        if (pread(fd, out, STATE_SIZE, 0) != (ssize_t)STATE_SIZE) return -1;
+        if (pread(fd, &after, sizeof after, STATE_SIZE) != sizeof after) return -1;
+        if (before == after) {
+            out->sequence = 0;
+            return sizeof *out;
+        }
+    }
+    return 0;
+}
+
 static void *event_pump_thread(void *arg) {
     for (;;) {
         p_SDL_PumpEvents();
@@ -103,14 +124,14 @@ static void *vjoy_updater(void *arg)
         return NULL;
     }
 
-    struct gamepad_io cur, last_state = {0};
+    struct gamepad_io cur = {0}, last_state = {0};
 
     LOGI("VJOY UPDATER P%d running (PID %d)\n", idx, getpid());
 
     for (;;) {
         pthread_mutex_lock(&shm_mutex);
 
-        ssize_t n = read(fd, &cur, sizeof cur);
+        ssize_t n = read_gamepad_state(fd, &cur);
 
         if (n == sizeof cur && memcmp(&cur, &last_state, sizeof cur) != 0) {
 
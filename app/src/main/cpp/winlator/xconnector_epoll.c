@@ -61,6 +61,7 @@ Java_com_winlator_cmod_xconnector_XConnectorEpoll_doEpollIndefinitely(JNIEnv *en
     jclass cls = (*env)->GetObjectClass(env, obj);
     jmethodID handleNewConnection = (*env)->GetMethodID(env, cls, "handleNewConnection", "(I)V");
     jmethodID handleExistingConnection = (*env)->GetMethodID(env, cls, "handleExistingConnection", "(I)V");
+    jmethodID handleConnectionHangup = (*env)->GetMethodID(env, cls, "handleConnectionHangup", "(I)V");
 
     int numFds = epoll_wait(epollFd, events, MAX_EVENTS, -1);
     for (int i = 0; i < numFds; i++) {
@@ -82,6 +83,9 @@ Java_com_winlator_cmod_xconnector_XConnectorEpoll_doEpollIndefinitely(JNIEnv *en
         else if (events[i].events & EPOLLIN) {
             (*env)->CallVoidMethod(env, obj, handleExistingConnection, events[i].data.fd);
         }
+        else if (events[i].events & (EPOLLRDHUP | EPOLLHUP | EPOLLERR)) {
+            (*env)->CallVoidMethod(env, obj, handleConnectionHangup, events[i].data.fd);
+        }
     }
 
     return numFds >= 0;
@@ -98,6 +102,20 @@ Java_com_winlator_cmod_xconnector_XConnectorEpoll_addFdToEpoll(JNIEnv *env, jobj
     return JNI_TRUE;
 }
 
+/* Keeps a parked client's fd registered without EPOLLIN, so the peer closing is still seen
+ * while its pending requests stay unread. One-shot: a single hangup event is reported. */
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_cmod_xconnector_XConnectorEpoll_watchFdForHangup(JNIEnv *env, jobject obj,
+                                                              jint epollFd,
+                                                              jint fd) {
+    struct epoll_event event;
+    event.data.fd = fd;
+    event.events = EPOLLRDHUP | EPOLLONESHOT;
+    if (epoll_ctl(epollFd, EPOLL_CTL_MOD, fd, &event) >= 0) return JNI_TRUE;
+    if (epoll_ctl(epollFd, EPOLL_CTL_ADD, fd, &event) >= 0) return JNI_TRUE;
+    return JNI_FALSE;
+}
+
 JNIEXPORT void JNICALL
 Java_com_winlator_cmod_xconnector_XConnectorEpoll_removeFdFromEpoll(JNIEnv *env, jobject obj,
                                                                jint epollFd, jint fd) {
@@ -1690,12 +1690,12 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
                         UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.SYSVSHM_SERVER_PATH)
                 )
         );
-        environment.addComponent(
-                new XServerComponent(
-                        xServer,
-                        UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH)
-                )
+        XServerComponent xServerComponent = new XServerComponent(
+                xServer,
+                UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH)
         );
+        xServerComponent.setWorkerPoolSize(preferences.getInt("xserver_worker_threads", 0));
+        environment.addComponent(xServerComponent);
 
 
         environment.addComponent(new NetworkInfoUpdateComponent());
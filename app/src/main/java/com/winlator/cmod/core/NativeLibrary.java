@@ -0,0 +1,14 @@
+package com.winlator.cmod.core;
+
+public abstract class NativeLibrary {
+    // JVM unit tests have no Android build of the library. The Java side of the class stays usable there, and
+    // the first native call fails with UnsatisfiedLinkError instead.
+    public static void load(String name) {
+        try {
+            System.loadLibrary(name);
+        }
+        catch (UnsatisfiedLinkError e) {
+            if ("Dalvik".equals(System.getProperty("java.vm.name"))) throw e;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 
+import com.github.luben.zstd.Zstd;
+
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -14,9 +16,13 @@ import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -24,9 +30,26 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class TarCompressorUtils {
     public enum Type {XZ, ZSTD}
+    private static final int MAX_BUFFERED_FILE_SIZE = 1024 * 1024;
+    private static final int MAX_PENDING_BYTES = 32 * 1024 * 1024;
+    private static final int COMPRESSION_BLOCK_SIZE = 8 * 1024 * 1024;
+    private static int compressionWorkerCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static float lastCompressionThroughput = 0;
 
     // Interface to define the exclusion filter
     public interface ExclusionFilter {
@@ -34,6 +57,219 @@ public abstract class TarCompressorUtils {
     }
 
 
+    private static class ParallelFileWriter {
+        private final ExecutorService executor;
+        private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+        private final ConcurrentHashMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+        private boolean finished = false;
+
+        private class PendingWrite implements Runnable {
+            private final String path;
+            private final File file;
+            private final byte[] data;
+            private final CountDownLatch done = new CountDownLatch(1);
+
+            private PendingWrite(File file, byte[] data) {
+                this.path = file.getAbsolutePath();
+                this.file = file;
+                this.data = data;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    try (FileOutputStream outStream = new FileOutputStream(file)) {
+                        outStream.write(data);
+                    }
+                    FileUtils.chmod(file, 0771);
+                }
+                catch (Throwable e) {
+                    failed.set(true);
+                }
+                finally {
+                    pendingBytes.release(data.length);
+                    pendingWrites.remove(path, this);
+                    done.countDown();
+                }
+            }
+        }
+
+        private ParallelFileWriter() {
+            int threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            executor = Executors.newFixedThreadPool(threadCount);
+        }
+
+        /**
+         * Waits for a queued write to the given path, so entries that are created inline
+         * (directories, symlinks, large files) never race with an earlier entry of the same name.
+         */
+        private void awaitPending(File file) {
+            PendingWrite pendingWrite = pendingWrites.get(file.getAbsolutePath());
+            if (pendingWrite == null) return;
+            try {
+                pendingWrite.done.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+            }
+        }
+
+        private boolean write(InputStream inStream, File file, long size) throws IOException {
+            if (failed.get()) return false;
+            awaitPending(file);
+
+            if (size > MAX_BUFFERED_FILE_SIZE) {
+                try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
+                    if (!StreamUtils.copy(inStream, outStream)) return false;
+                }
+                FileUtils.chmod(file, 0771);
+                return true;
+            }
+
+            final int length = (int)size;
+            final byte[] data = new byte[length];
+            int position = 0;
+            while (position < length) {
+                int bytesRead = inStream.read(data, position, length - position);
+                if (bytesRead == -1) throw new EOFException();
+                position += bytesRead;
+            }
+
+            pendingBytes.acquireUninterruptibly(length);
+            PendingWrite pendingWrite = new PendingWrite(file, data);
+            pendingWrites.put(pendingWrite.path, pendingWrite);
+            try {
+                executor.execute(pendingWrite);
+            }
+            catch (Throwable e) {
+                pendingBytes.release(length);
+                pendingWrites.remove(pendingWrite.path, pendingWrite);
+                failed.set(true);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean finish() {
+            if (!finished) {
+                finished = true;
+                executor.shutdown();
+                try {
+                    while (!executor.awaitTermination(1, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    failed.set(true);
+                }
+            }
+            return !failed.get();
+        }
+    }
+
+    private static class ParallelCompressorOutputStream extends OutputStream {
+        private final Type type;
+        private final OutputStream outStream;
+        private final int level;
+        private final ExecutorService executor;
+        private final ArrayDeque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+        private final int maxPendingBlocks;
+        private byte[] block = new byte[COMPRESSION_BLOCK_SIZE];
+        private int blockPosition = 0;
+        private boolean closed = false;
+
+        private ParallelCompressorOutputStream(Type type, OutputStream outStream, int level, int workerCount) {
+            this.type = type;
+            this.outStream = outStream;
+            this.level = level;
+            executor = Executors.newFixedThreadPool(workerCount);
+            maxPendingBlocks = workerCount * 2;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (blockPosition == block.length) submitBlock();
+            block[blockPosition++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (blockPosition == block.length) submitBlock();
+                int length = Math.min(len, block.length - blockPosition);
+                System.arraycopy(b, off, block, blockPosition, length);
+                blockPosition += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        private void submitBlock() throws IOException {
+            if (blockPosition == 0) return;
+            final byte[] data = block;
+            final int length = blockPosition;
+            pendingBlocks.add(executor.submit(() -> compressBlock(data, length)));
+            block = new byte[COMPRESSION_BLOCK_SIZE];
+            blockPosition = 0;
+
+            while (pendingBlocks.size() >= maxPendingBlocks) writeNextBlock();
+        }
+
+        private byte[] compressBlock(byte[] data, int length) throws IOException {
+            if (type == Type.ZSTD) {
+                return Zstd.compress(length == data.length ? data : Arrays.copyOf(data, length), level);
+            }
+            else {
+                ByteArrayOutputStream blockStream = new ByteArrayOutputStream(length / 2);
+                try (XZOutputStream xz = new XZOutputStream(blockStream, new LZMA2Options(level))) {
+                    xz.write(data, 0, length);
+                }
+                return blockStream.toByteArray();
+            }
+        }
+
+        private void writeNextBlock() throws IOException {
+            try {
+                outStream.write(pendingBlocks.poll().get());
+            }
+            catch (InterruptedException | ExecutionException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                submitBlock();
+                while (!pendingBlocks.isEmpty()) writeNextBlock();
+            }
+            finally {
+                executor.shutdownNow();
+                outStream.close();
+            }
+        }
+    }
+
+    public static int getCompressionWorkerCount() {
+        return compressionWorkerCount;
+    }
+
+    public static void setCompressionWorkerCount(int compressionWorkerCount) {
+        TarCompressorUtils.compressionWorkerCount = Math.max(1, compressionWorkerCount);
+    }
+
+    public static float getLastCompressionThroughput() {
+        return lastCompressionThroughput;
+    }
+
     private static void addFile(ArchiveOutputStream tar, File file, String entryName) {
         try {
             tar.putArchiveEntry(tar.createArchiveEntry(file, entryName));
@@ -83,6 +319,8 @@ public abstract class TarCompressorUtils {
     }
 
     public static void compress(Type type, File[] files, File destination, int level, ExclusionFilter filter) {
+        long startTime = System.nanoTime();
+        long bytesWritten = 0;
         try (OutputStream outStream = getCompressorOutputStream(type, destination, level);
              TarArchiveOutputStream tar = new TarArchiveOutputStream(outStream)) {
             tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
@@ -102,9 +340,15 @@ public abstract class TarCompressorUtils {
                 }
             }
             tar.finish();
+            bytesWritten = tar.getBytesWritten();
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        float elapsedTime = (System.nanoTime() - startTime) / 1000000000.0f;
+        float megabytes = bytesWritten / (1024.0f * 1024.0f);
+        lastCompressionThroughput = elapsedTime > 0 ? megabytes / elapsedTime : 0;
+        Log.d("TarCompressorUtils", String.format(Locale.ENGLISH, "Compressed %.1f MB in %.1fs (%.1f MB/s, %d workers)", megabytes, elapsedTime, lastCompressionThroughput, compressionWorkerCount));
     }
 
 
@@ -159,6 +403,7 @@ public abstract class TarCompressorUtils {
 
     private static boolean extract(Type type, InputStream source, File destination, OnExtractFileListener onExtractFileListener) {
         if (source == null) return false;
+        ParallelFileWriter fileWriter = new ParallelFileWriter();
         try (InputStream inStream = getCompressorInputStream(type, source);
              ArchiveInputStream tar = new TarArchiveInputStream(inStream)) {
             TarArchiveEntry entry;
@@ -171,33 +416,41 @@ public abstract class TarCompressorUtils {
                     if (file == null) continue;
                 }
 
+                fileWriter.awaitPending(file);
                 if (entry.isDirectory()) {
-                    if (!file.isDirectory()) file.mkdirs();
+                    createDirectory(file);
+                }
+                else if (entry.isSymbolicLink()) {
+                    FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
                 }
                 else {
-                    if (entry.isSymbolicLink()) {
-                        FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
-                    }
-                    else {
-                        try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
-                            if (!StreamUtils.copy(tar, outStream)) return false;
-                        }
-                    }
+                    if (!fileWriter.write(tar, file, entry.getSize())) return false;
+                    continue;
                 }
 
                 FileUtils.chmod(file, 0771);
             }
-            return true;
+            return fileWriter.finish();
         }
         catch (IOException e) {
             e.printStackTrace();
             return false;
         }
+        finally {
+            fileWriter.finish();
+        }
+    }
+
+    // A directory entry replaces a file or link extracted earlier at the same path, as tar does
+    private static void createDirectory(File file) {
+        if (file.isDirectory()) return;
+        if (file.exists() || FileUtils.isSymlink(file)) file.delete();
+        file.mkdirs();
     }
 
     private static InputStream getCompressorInputStream(Type type, InputStream source) throws IOException {
         if (type == Type.XZ) {
-            return new XZCompressorInputStream(source);
+            return new XZCompressorInputStream(source, true);
         }
         else if (type == Type.ZSTD) {
             return new ZstdCompressorInputStream(source);
@@ -206,7 +459,10 @@ public abstract class TarCompressorUtils {
     }
 
     private static OutputStream getCompressorOutputStream(Type type, File destination, int level) throws IOException {
-        if (type == Type.XZ) {
+        if (compressionWorkerCount > 1) {
+            return new ParallelCompressorOutputStream(type, new BufferedOutputStream(new FileOutputStream(destination), StreamUtils.BUFFER_SIZE), level, compressionWorkerCount);
+        }
+        else if (type == Type.XZ) {
             return new XZCompressorOutputStream(new BufferedOutputStream(new FileOutputStream(destination), StreamUtils.BUFFER_SIZE), level);
         }
         else if (type == Type.ZSTD) {
@@ -242,6 +498,7 @@ public abstract class TarCompressorUtils {
 
     public static boolean extractTar(File source, File destination, OnExtractFileListener onExtractFileListener) {
         if (source == null || !source.isFile()) return false;
+        ParallelFileWriter fileWriter = new ParallelFileWriter();
         try (InputStream inStream = new BufferedInputStream(new FileInputStream(source), StreamUtils.BUFFER_SIZE);
              TarArchiveInputStream tar = new TarArchiveInputStream(inStream)) {
             TarArchiveEntry entry;
@@ -273,24 +530,24 @@ public abstract class TarCompressorUtils {
                     if (file == null) continue;
                 }
 
+                fileWriter.awaitPending(file);
                 if (entry.isDirectory()) {
-                    if (!file.isDirectory()) file.mkdirs();
+                    createDirectory(file);
+                } else if (entry.isSymbolicLink()) {
+                    FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
                 } else {
-                    if (entry.isSymbolicLink()) {
-                        FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
-                    } else {
-                        try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
-                            if (!StreamUtils.copy(tar, outStream)) return false;
-                        }
-                    }
+                    if (!fileWriter.write(tar, file, entry.getSize())) return false;
+                    continue;
                 }
 
                 FileUtils.chmod(file, 0771);
             }
-            return true;
+            return fileWriter.finish();
         } catch (IOException e) {
             Log.e("RestoreOp", "Failed to extract tar file", e);
             return false;
+        } finally {
+            fileWriter.finish();
         }
     }
 
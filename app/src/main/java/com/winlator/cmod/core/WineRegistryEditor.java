@@ -6,51 +6,200 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 
 public class WineRegistryEditor implements Closeable {
     private final File file;
-    private final File cloneFile;
+    private final ArrayList<RegistryKey> keys = new ArrayList<>();
+    private final HashMap<String, RegistryKey> keyIndex = new HashMap<>();
+    private String preamble = "";
     private boolean modified = false;
     private boolean createKeyIfNotExist = true;
-    private int lastParentKeyPosition = 0;
-    private String lastParentKey = "";
-
-    public static class Location {
-        public final int offset;
-        public final int start;
-        public final int end;
-
-        public Location(int offset, int start, int end) {
-            this.offset = offset;
-            this.start = start;
-            this.end = end;
+
+    private static class RegistryLine {
+        private final String prefix;
+        private String data;
+
+        private RegistryLine(String prefix, String data) {
+            this.prefix = prefix;
+            this.data = data;
         }
 
-        public int length() {
-            return end - start;
+        private boolean isEmpty() {
+            return prefix == null && data.isEmpty();
+        }
+    }
+
+    private static class RegistryKey {
+        private final String name;
+        private String text;
+        private ArrayList<RegistryLine> lines;
+        private HashMap<String, RegistryLine> values;
+
+        private RegistryKey(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        private void parse() {
+            if (lines != null) return;
+            lines = new ArrayList<>();
+            values = new HashMap<>();
+
+            RegistryLine lastValue = null;
+            int start = 0;
+            int length = text.length();
+            while (start < length) {
+                int end = text.indexOf('\n', start);
+                if (end == -1) end = length;
+                String line = text.substring(start, end);
+                start = end + 1;
+
+                String prefix = getValuePrefix(line);
+                if (prefix != null) {
+                    lastValue = new RegistryLine(prefix, line.substring(prefix.length()));
+                    lines.add(lastValue);
+                    values.putIfAbsent(prefix, lastValue);
+                }
+                else if (lastValue != null && !line.isEmpty() && !lineHasName(line)) {
+                    lastValue.data += "\n" + line;
+                }
+                else {
+                    lines.add(new RegistryLine(null, line));
+                    lastValue = null;
+                }
+            }
+            text = null;
+        }
+
+        private RegistryLine getValue(String prefix) {
+            parse();
+            return values.get(prefix);
+        }
+
+        private void setValue(String prefix, String data) {
+            RegistryLine value = getValue(prefix);
+            if (value != null) {
+                value.data = data;
+                return;
+            }
+
+            int index = lines.size();
+            while (index > 0 && lines.get(index - 1).isEmpty()) index--;
+            value = new RegistryLine(prefix, data);
+            lines.add(index, value);
+            values.put(prefix, value);
+        }
+
+        private boolean removeValue(String prefix) {
+            RegistryLine value = getValue(prefix);
+            if (value == null) return false;
+            lines.remove(value);
+            values.remove(prefix);
+
+            for (RegistryLine line : lines) {
+                if (prefix.equals(line.prefix)) {
+                    values.put(prefix, line);
+                    break;
+                }
+            }
+            return true;
+        }
+
+        private void appendEmptyLine() {
+            if (text != null) {
+                text = appendEmptyLine(text);
+            }
+            else if (lines.isEmpty() || !lines.get(lines.size() - 1).isEmpty()) {
+                lines.add(new RegistryLine(null, ""));
+            }
+        }
+
+        private static String appendEmptyLine(String text) {
+            if (text.isEmpty() || text.endsWith("\n\n")) return text;
+            return text + (text.endsWith("\n") ? "\n" : "\n\n");
+        }
+
+        // A removed key takes the line break in front of it along, as the streaming editor did
+        private void removeTrailingEmptyLine() {
+            if (text != null) {
+                text = removeTrailingEmptyLine(text);
+            }
+            else if (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+                lines.remove(lines.size() - 1);
+            }
+        }
+
+        private static String removeTrailingEmptyLine(String text) {
+            return text.endsWith("\n\n") ? text.substring(0, text.length() - 1) : text;
+        }
+
+        private void write(StringBuilder sb) {
+            if (text != null) {
+                sb.append(text);
+                return;
+            }
+
+            for (RegistryLine line : lines) {
+                if (line.prefix != null) sb.append(line.prefix);
+                sb.append(line.data).append('\n');
+            }
         }
     }
 
     public WineRegistryEditor(File file) {
         this.file = file;
-        cloneFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-        if (!file.isFile()) {
-            try {
-                cloneFile.createNewFile();
-            } catch (IOException e) {
+        if (file.isFile()) {
+            byte[] data = FileUtils.read(file);
+            if (data != null) load(new String(data, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void load(String text) {
+        int length = text.length();
+        int start = 0;
+        int keyStart = -1;
+        String keyName = null;
+
+        while (start < length) {
+            if (text.charAt(start) == '[') {
+                if (keyStart == -1) {
+                    preamble = text.substring(0, start);
+                }
+                else addKey(new RegistryKey(keyName, text.substring(keyStart, start)));
+
+                int end = text.indexOf('\n', start);
+                if (end == -1) end = length;
+                int index = text.lastIndexOf(']', end);
+                keyName = text.substring(start + 1, index > start ? index : end);
+                keyStart = start;
             }
-        } else FileUtils.copy(file, cloneFile);
+
+            int next = text.indexOf('\n', start);
+            if (next == -1) break;
+            start = next + 1;
+        }
+
+        if (keyStart == -1) {
+            preamble = text;
+        }
+        else addKey(new RegistryKey(keyName, text.substring(keyStart)));
+    }
+
+    private void addKey(RegistryKey key) {
+        keys.add(key);
+        keyIndex.putIfAbsent(key.name, key);
+    }
+
+    private void rebuildKeyIndex() {
+        keyIndex.clear();
+        for (RegistryKey key : keys) keyIndex.putIfAbsent(key.name, key);
     }
 
     private static String escape(String str) {
@@ -68,72 +217,84 @@ public class WineRegistryEditor implements Closeable {
                 (index = line.indexOf('=', index)) != -1;
     }
 
+    private static String getValuePrefix(String line) {
+        if (line.startsWith("@=")) return "@=";
+        if (!line.startsWith("\"")) return null;
+
+        for (int i = 1, length = line.length(); i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (c == '"') {
+                return i + 1 < length && line.charAt(i + 1) == '=' ? line.substring(0, i + 2) : null;
+            }
+        }
+        return null;
+    }
+
+    private static String getNamePrefix(String name) {
+        return name != null ? "\"" + escape(name) + "\"=" : "@=";
+    }
+
     @Override
     public void close() {
-        if (modified && cloneFile.exists()) {
-            cloneFile.renameTo(file);
-        } else cloneFile.delete();
-    }
+        if (!modified) return;
 
-    private void resetLastParentKeyPositionIfNeed(String newKey) {
-        int lastIndex = newKey.lastIndexOf("\\");
-        if (lastIndex == -1) {
-            lastParentKeyPosition = 0;
-            lastParentKey = "";
-            return;
-        }
+        StringBuilder sb = new StringBuilder(preamble);
+        for (RegistryKey key : keys) key.write(sb);
 
-        String parentKey = newKey.substring(0, lastIndex);
-        if (!parentKey.equals(lastParentKey)) lastParentKeyPosition = 0;
-        lastParentKey = parentKey;
+        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
+        if (FileUtils.write(tempFile, sb.toString().getBytes(StandardCharsets.UTF_8))) {
+            tempFile.renameTo(file);
+        }
+        else tempFile.delete();
+        modified = false;
     }
 
     public void setCreateKeyIfNotExist(boolean createKeyIfNotExist) {
         this.createKeyIfNotExist = createKeyIfNotExist;
     }
 
-    private Location createKey(String key) {
-        lastParentKeyPosition = 0;
-        Location location = getParentKeyLocation(key);
-        boolean success = false;
-        int offset = 0;
-        int totalLength = 0;
+    private RegistryKey createKey(String key) {
+        long ticks1601To1970 = 86400L * (369 * 365 + 89) * 10000000;
+        long currentTime = System.currentTimeMillis() + ticks1601To1970;
+        String name = escape(key);
+        String content = "[" + name + "] " + ((currentTime - ticks1601To1970) / 1000) +
+                String.format(Locale.ENGLISH, "\n#time=%x%08x", currentTime >> 32, (int) currentTime) + "\n";
+        RegistryKey registryKey = new RegistryKey(name, content);
+
+        int index = getParentKeyIndex(key);
+        if (index != -1) {
+            keys.get(index).appendEmptyLine();
+            if (index + 1 < keys.size()) registryKey.appendEmptyLine();
+            keys.add(index + 1, registryKey);
+        }
+        else {
+            if (!keys.isEmpty()) {
+                keys.get(keys.size() - 1).appendEmptyLine();
+            }
+            else preamble = RegistryKey.appendEmptyLine(preamble);
+            keys.add(registryKey);
+        }
 
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
-        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
+        keyIndex.putIfAbsent(name, registryKey);
+        modified = true;
+        return registryKey;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
+    private int getParentKeyIndex(String key) {
+        String[] parts = key.split("\\\\");
+        for (int depth = parts.length - 1; depth > 0; depth--) {
+            StringBuilder parentKey = new StringBuilder(parts[0]);
+            for (int i = 1; i < depth; i++) parentKey.append("\\").append(parts[i]);
 
-            int length;
-            for (int i = 0, end = location != null ? location.end + 1 : (int) cloneFile.length(); i < end; i += length) {
-                length = Math.min(buffer.length, end - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-                totalLength += length;
+            String prefix = escape(parentKey.toString());
+            for (int i = 0; i < keys.size(); i++) {
+                if (keys.get(i).name.startsWith(prefix)) return i;
             }
-
-            offset = totalLength;
-            long ticks1601To1970 = 86400L * (369 * 365 + 89) * 10000000;
-            long currentTime = System.currentTimeMillis() + ticks1601To1970;
-            String content = "\n[" + escape(key) + "] " + ((currentTime - ticks1601To1970) / 1000) +
-                    String.format(Locale.ENGLISH, "\n#time=%x%08x", currentTime >> 32, (int) currentTime) + "\n";
-            writer.write(content);
-            totalLength += content.length() - 1;
-
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        } catch (IOException e) {
-        }
-
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-            return new Location(offset, totalLength, totalLength);
-        } else {
-            tempFile.delete();
-            return null;
         }
+        return -1;
     }
 
     public String getStringValue(String key, String name) {
@@ -184,75 +345,28 @@ public class WineRegistryEditor implements Closeable {
     }
 
     private String getRawValue(String key, String name) {
-        lastParentKeyPosition = 0;
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) return null;
-
-        Location valueLocation = getValueLocation(keyLocation, name);
-        if (valueLocation == null) return null;
-        boolean success = false;
-        char[] buffer = new char[valueLocation.length()];
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            reader.skip(valueLocation.start);
-            success = reader.read(buffer) == buffer.length;
-        } catch (IOException e) {
-        }
-        return success ? unescape(new String(buffer)) : null;
+        RegistryKey registryKey = keyIndex.get(escape(key));
+        if (registryKey == null) return null;
+
+        RegistryLine value = registryKey.getValue(getNamePrefix(name));
+        return value != null ? unescape(value.data) : null;
     }
 
     private void setRawValue(String key, String name, String value) {
-        resetLastParentKeyPositionIfNeed(key);
-
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) {
+        RegistryKey registryKey = keyIndex.get(escape(key));
+        if (registryKey == null) {
             if (createKeyIfNotExist) {
-                keyLocation = createKey(key);
+                registryKey = createKey(key);
             } else return;
         }
 
-        Location valueLocation = getValueLocation(keyLocation, name);
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
-        boolean success = false;
-
-        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
-
-            int length;
-            for (int i = 0, end = valueLocation != null ? valueLocation.start : keyLocation.end; i < end; i += length) {
-                length = Math.min(buffer.length, end - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-            }
-
-            if (valueLocation == null) {
-                writer.write("\n" + (name != null ? "\"" + escape(name) + "\"" : "@") + "=" + value);
-            } else {
-                writer.write(value);
-                reader.skip(valueLocation.length());
-            }
-
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        } catch (IOException e) {
-        }
-
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-        } else tempFile.delete();
+        registryKey.setValue(getNamePrefix(name), value);
+        modified = true;
     }
 
     public void removeValue(String key, String name) {
-        lastParentKeyPosition = 0;
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) return;
-
-        Location valueLocation = getValueLocation(keyLocation, name);
-        if (valueLocation == null) return;
-        removeRegion(valueLocation);
+        RegistryKey registryKey = keyIndex.get(escape(key));
+        if (registryKey != null && registryKey.removeValue(getNamePrefix(name))) modified = true;
     }
 
     public boolean removeKey(String key) {
@@ -260,140 +374,26 @@ public class WineRegistryEditor implements Closeable {
     }
 
     public boolean removeKey(String key, boolean removeTree) {
-        lastParentKeyPosition = 0;
-        boolean removed = false;
+        RegistryKey lastKey = !keys.isEmpty() ? keys.get(keys.size() - 1) : null;
+        boolean removed;
         if (removeTree) {
-            Location location;
-            while ((location = getKeyLocation(key, true)) != null) {
-                if (removeRegion(location)) removed = true;
-            }
-        } else {
-            Location location = getKeyLocation(key, false);
-            if (location != null && removeRegion(location)) removed = true;
-        }
-        return removed;
-    }
-
-    private boolean removeRegion(Location location) {
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
-        boolean success = false;
-
-        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
-
-            int length = 0;
-            for (int i = 0; i < location.offset; i += length) {
-                length = Math.min(buffer.length, location.offset - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-            }
-
-            boolean skipLine = length > 1 && buffer[length - 1] == '\n';
-            reader.skip(location.end - location.offset + (skipLine ? 1 : 0));
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        } catch (IOException e) {
-        }
-
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-        } else tempFile.delete();
-        return success;
-    }
-
-    private Location getKeyLocation(String key) {
-        return getKeyLocation(key, false);
-    }
-
-    private Location getKeyLocation(String key, boolean keyAsPrefix) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            int lastIndex = key.lastIndexOf("\\");
-            String parentKey = lastParentKeyPosition == 0 && lastIndex != -1 ? "[" + escape(key.substring(0, lastIndex)) : null;
-
-            if (lastParentKeyPosition > 0) reader.skip(lastParentKeyPosition);
-            key = "[" + escape(key) + (!keyAsPrefix ? "]" : "");
-            int totalLength = lastParentKeyPosition;
-            int start = -1;
-            int end = -1;
-            int emptyLines = 0;
-            int offset = 0;
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (start == -1) {
-                    if (parentKey != null && line.startsWith(parentKey)) {
-                        lastParentKeyPosition = totalLength;
-                        parentKey = null;
-                    }
-
-                    if (parentKey == null && line.startsWith(key)) {
-                        offset = totalLength - 1;
-                        start = totalLength + line.length() + 1;
-                    }
-                } else {
-                    if (line.startsWith("[")) {
-                        end = Math.max(-1, totalLength - emptyLines - 1);
-                        break;
-                    } else emptyLines = line.isEmpty() ? emptyLines + 1 : 0;
-                }
-                totalLength += line.length() + 1;
-            }
-
-            if (end == -1) end = totalLength - 1;
-            return start != -1 ? new Location(offset, start, end) : null;
-        } catch (IOException e) {
-            return null;
+            String prefix = escape(key);
+            removed = keys.removeIf((registryKey) -> registryKey.name.startsWith(prefix));
         }
-    }
-
-    private Location getParentKeyLocation(String key) {
-        String[] parts = key.split("\\\\");
-        ArrayList<String> stack = new ArrayList<>(Arrays.asList(parts).subList(0, parts.length - 1));
-
-        while (!stack.isEmpty()) {
-            String currentKey = String.join("\\", stack);
-            Location location = getKeyLocation(currentKey, true);
-            if (location != null) return location;
-            stack.remove(stack.size() - 1);
+        else {
+            RegistryKey registryKey = keyIndex.get(escape(key));
+            removed = registryKey != null && keys.remove(registryKey);
         }
 
-        return null;
-    }
-
-    private Location getValueLocation(Location keyLocation, String name) {
-        if (keyLocation.start == keyLocation.end) return null;
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            reader.skip(keyLocation.start);
-            name = name != null ? "\"" + escape(name) + "\"=" : "@=";
-            int totalLength = 0;
-            int start = -1;
-            int end = -1;
-            int offset = 0;
-
-            String line;
-            while ((line = reader.readLine()) != null && totalLength < keyLocation.length()) {
-                if (start == -1) {
-                    if (line.startsWith(name)) {
-                        offset = totalLength - 1;
-                        start = totalLength + name.length();
-                    }
-                } else {
-                    if (line.isEmpty() || lineHasName(line)) {
-                        end = totalLength - 1;
-                        break;
-                    }
-                }
-                totalLength += line.length() + 1;
+        if (removed) {
+            if (keys.isEmpty()) {
+                preamble = RegistryKey.removeTrailingEmptyLine(preamble);
             }
-
-            if (end == -1) end = totalLength - 1;
-            return start != -1 ? new Location(keyLocation.start + offset, keyLocation.start + start, keyLocation.start + end) : null;
-        } catch (IOException e) {
-            return null;
+            else if (keys.get(keys.size() - 1) != lastKey) keys.get(keys.size() - 1).removeTrailingEmptyLine();
+            rebuildKeyIndex();
+            modified = true;
         }
+        return removed;
     }
 
     public void importReg(String regFile) {
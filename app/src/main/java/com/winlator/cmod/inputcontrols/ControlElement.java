@@ -88,6 +88,8 @@ public class ControlElement {
     private Object touchTime;
 
     private final PointF touchDownOrigin = new PointF();
+    private final Rect iconSrcRect = new Rect();
+    private final Rect iconDstRect = new Rect();
 
 
     public ControlElement(InputControlsView inputControlsView) {
@@ -244,6 +246,19 @@ public class ControlElement {
         this.iconId = (byte)iconId;
     }
 
+    // Sticks and range buttons move while touched, so they are always drawn live instead of from the cached layer
+    public boolean isAnimated() {
+        return type == Type.STICK || type == Type.RANGE_BUTTON;
+    }
+
+    public void getDirtyBounds(Rect outRect) {
+        float snappingSize = inputControlsView.getSnappingSize();
+        int inset = (int)Math.ceil(snappingSize * 0.25f) + 1;
+        if (type == Type.STICK) inset += (int)(snappingSize * 3.5f * scale);
+        outRect.set(getBoundingBox());
+        outRect.inset(-inset, -inset);
+    }
+
     public Rect getBoundingBox() {
         if (boundingBoxNeedsUpdate) computeBoundingBox();
         return boundingBox;
@@ -348,6 +363,17 @@ public class ControlElement {
     }
 
     public void draw(Canvas canvas) {
+        draw(canvas, false);
+    }
+
+    // Draws the element as it looks when nobody touches it, for the cached layer of InputControlsView
+    public void drawIdle(Canvas canvas) {
+        draw(canvas, true);
+    }
+
+    private void draw(Canvas canvas, boolean idle) {
+        boolean engaged = !idle && isEngaged();
+        boolean selected = !idle && this.selected;
         int snappingSize = inputControlsView.getSnappingSize();
         Paint paint = inputControlsView.getPaint();
         int primaryColor = inputControlsView.getPrimaryColor();
@@ -365,7 +391,7 @@ public class ControlElement {
                 float cx = boundingBox.centerX();
                 float cy = boundingBox.centerY();
 
-                if (isEngaged()) {
+                if (engaged) {
                     paint.setStyle(Paint.Style.FILL);
                     paint.setColor(fillColor);
                     switch (shape) {
@@ -463,7 +489,7 @@ public class ControlElement {
                 path.close();
 
                 // -- FILL first if engaged
-                if (isEngaged()) {
+                if (engaged) {
                     paint.setStyle(Paint.Style.FILL);
                     paint.setColor(fillColor);
                     canvas.drawPath(path, paint);
@@ -481,7 +507,7 @@ public class ControlElement {
                 int oldColor = paint.getColor();
                 float radius = snappingSize * 0.75f * scale;
 
-                if (isEngaged()) {
+                if (engaged) {
                     paint.setStyle(Paint.Style.FILL);
                     paint.setColor(fillColor);
                     canvas.drawRoundRect(boundingBox.left, boundingBox.top, boundingBox.right, boundingBox.bottom, radius, radius, paint);
@@ -580,7 +606,7 @@ public class ControlElement {
                 float thumbstickY = getCurrentPosition().y;
                 short thumbRadius = (short) (snappingSize * 3.5f * scale);
 
-                int engagedAlpha = isEngaged() ? 120 : 50;
+                int engagedAlpha = engaged ? 120 : 50;
                 paint.setStyle(Paint.Style.FILL);
                 paint.setColor(ColorUtils.setAlphaComponent(primaryColor, engagedAlpha));
                 canvas.drawCircle(thumbstickX, thumbstickY, thumbRadius, paint);
@@ -594,7 +620,7 @@ public class ControlElement {
             case TRACKPAD: {
                 float radius = boundingBox.height() * 0.15f;
 
-                if (isEngaged()) {
+                if (engaged) {
                     paint.setStyle(Paint.Style.FILL);
                     paint.setColor(fillColor);
                     canvas.drawRoundRect(boundingBox.left, boundingBox.top, boundingBox.right, boundingBox.bottom, radius, radius, paint);
@@ -621,9 +647,9 @@ public class ControlElement {
         int margin = (int)(inputControlsView.getSnappingSize() * (shape == Shape.CIRCLE || shape == Shape.SQUARE ? 2.0f : 1.0f) * scale);
         int halfSize = (int)((Math.min(width, height) - margin) * 0.5f);
 
-        Rect srcRect = new Rect(0, 0, icon.getWidth(), icon.getHeight());
-        Rect dstRect = new Rect((int)(cx - halfSize), (int)(cy - halfSize), (int)(cx + halfSize), (int)(cy + halfSize));
-        canvas.drawBitmap(icon, srcRect, dstRect, paint);
+        iconSrcRect.set(0, 0, icon.getWidth(), icon.getHeight());
+        iconDstRect.set((int)(cx - halfSize), (int)(cy - halfSize), (int)(cx + halfSize), (int)(cy + halfSize));
+        canvas.drawBitmap(icon, iconSrcRect, iconDstRect, paint);
         paint.setColorFilter(null);
     }
 
@@ -680,7 +706,7 @@ public class ControlElement {
 
             if (type == Type.RANGE_BUTTON) scroller.handleTouchDown(x, y);
 
-            inputControlsView.invalidate();
+            inputControlsView.invalidateElement(this);
             return true;
         }
 
@@ -696,7 +722,7 @@ public class ControlElement {
             Rect bb = getBoundingBox();
             setCurrentPosition(bb.centerX(), bb.centerY());
 
-            inputControlsView.invalidate();
+            inputControlsView.invalidateElement(this);
             return true;
         }
 
@@ -786,7 +812,7 @@ public class ControlElement {
                     }
                 }
 
-                inputControlsView.invalidate();
+                inputControlsView.invalidateElement(this);
             }
             else if (type == Type.TRACKPAD) {
                 final boolean[] states = {deltaY <= -TRACKPAD_MIN_SPEED, deltaX >= TRACKPAD_MIN_SPEED, deltaY >= TRACKPAD_MIN_SPEED, deltaX <= -TRACKPAD_MIN_SPEED};
@@ -839,7 +865,7 @@ public class ControlElement {
                 }
             }
 
-            inputControlsView.invalidate();
+            inputControlsView.invalidateElement(this);
             return true;
         }
         else if (pointerId == currentPointerId && type == Type.RANGE_BUTTON) {
@@ -865,7 +891,7 @@ public class ControlElement {
 
                 inputControlsView.postDelayed(() -> {
                     inputControlsView.handleInputEvent(binding, false);
-                    inputControlsView.invalidate();
+                    inputControlsView.invalidateElement(this);
                 }, delay);
             } else {
                 // For toggles send release only if we were latched; otherwise always.
@@ -882,7 +908,7 @@ public class ControlElement {
             }
 
             currentPointerId = -1;
-            inputControlsView.invalidate();
+            inputControlsView.invalidateElement(this);
             return true;
         }
 
@@ -894,14 +920,14 @@ public class ControlElement {
             }
 
             if (type == Type.STICK) {
-                inputControlsView.invalidate();   // redraw knob to centre
+                inputControlsView.invalidateElement(this);   // redraw knob to centre
             }
 
             if (currentPosition != null) currentPosition = null;
         }
 
         currentPointerId = -1;
-        inputControlsView.invalidate();
+        inputControlsView.invalidateElement(this);
         return true;
     }
 
@@ -919,7 +945,7 @@ public class ControlElement {
         }
         currentPosition.set(x, y);
         // Optionally invalidate the view to trigger a redraw
-        inputControlsView.invalidate();
+        inputControlsView.invalidateElement(this);
     }
 
     private boolean anyStateActive() {
@@ -927,7 +953,7 @@ public class ControlElement {
         return false;
     }
 
-    private boolean isEngaged() {
+    public boolean isEngaged() {
         if (type == Type.BUTTON || type == Type.RANGE_BUTTON) {
             return currentPointerId != -1 || selected;   // include toggle state
         }
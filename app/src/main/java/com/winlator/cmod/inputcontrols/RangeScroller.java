@@ -115,7 +115,7 @@ public class RangeScroller {
                 if (scrollOffset < 0) scrollOffset = scrollSize + scrollOffset;
 
                 lastPosition = position;
-                inputControlsView.invalidate();
+                inputControlsView.invalidateElement(element);
             }
         }
     }
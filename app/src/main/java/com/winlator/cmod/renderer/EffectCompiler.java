@@ -0,0 +1,135 @@
+package com.winlator.cmod.renderer;
+
+import com.winlator.cmod.renderer.effects.Effect;
+import com.winlator.cmod.renderer.material.ShaderMaterial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Builds the post-processing passes for a chain of effects without touching GL, so it can run on a plain JVM.
+// Per-pixel effects are fused into the pass of the neighbouring sampling effect: the ones in front of the first
+// sampling effect are applied to every texel it reads, the ones after a sampling effect are applied to its output.
+public abstract class EffectCompiler {
+    private static final String SCREEN_SAMPLER = "uniform sampler2D screenTexture;";
+    private static final String SCREEN_SAMPLE = "texture2D\\(screenTexture,\\s*";
+    private static final String COPY_SHADER = String.join("\n", new CharSequence[]{
+            "precision highp float;",
+            SCREEN_SAMPLER,
+            "varying vec2 vUV;",
+            "void main() {",
+            "    gl_FragColor = texture2D(screenTexture, vUV);",
+            "}"
+    });
+
+    public static class Pass {
+        public final Effect samplingEffect;
+        public final ArrayList<Effect> colorEffects = new ArrayList<>();
+        private int leadingCount = 0;
+        private String fragmentShader;
+        private String[] uniformNames;
+
+        private Pass(Effect samplingEffect) {
+            this.samplingEffect = samplingEffect;
+        }
+
+        public String getFragmentShader() {
+            return fragmentShader;
+        }
+
+        public String[] getUniformNames() {
+            return uniformNames;
+        }
+
+        public String getUniformPrefix(int index) {
+            return "fx" + index + "_";
+        }
+    }
+
+    public static List<Pass> compile(List<Effect> effects) {
+        ArrayList<Pass> passes = new ArrayList<>();
+        ArrayList<Effect> leadingEffects = new ArrayList<>();
+        Pass pass = null;
+
+        for (Effect effect : effects) {
+            if (effect.isPerPixel()) {
+                if (pass != null) {
+                    pass.colorEffects.add(effect);
+                }
+                else leadingEffects.add(effect);
+            }
+            else {
+                pass = new Pass(effect);
+                if (passes.isEmpty()) {
+                    pass.colorEffects.addAll(leadingEffects);
+                    pass.leadingCount = leadingEffects.size();
+                }
+                passes.add(pass);
+            }
+        }
+
+        if (passes.isEmpty()) {
+            if (leadingEffects.isEmpty()) return Collections.emptyList();
+            pass = new Pass(null);
+            pass.colorEffects.addAll(leadingEffects);
+            passes.add(pass);
+        }
+
+        for (Pass p : passes) generateShader(p);
+        return passes;
+    }
+
+    private static void generateShader(Pass pass) {
+        String source = COPY_SHADER;
+        ArrayList<String> uniformNames = new ArrayList<>();
+        uniformNames.add("resolution");
+        uniformNames.add("screenTexture");
+
+        if (pass.samplingEffect != null) {
+            ShaderMaterial material = pass.samplingEffect.getMaterial();
+            source = material.getFragmentShaderSource();
+            for (String name : material.getUniformNames()) {
+                if (!uniformNames.contains(name)) uniformNames.add(name);
+            }
+        }
+
+        StringBuilder declarations = new StringBuilder();
+        for (int i = 0; i < pass.colorEffects.size(); i++) {
+            Effect effect = pass.colorEffects.get(i);
+            String prefix = pass.getUniformPrefix(i);
+            declarations.append(effect.getColorFunction("fxColor" + i, prefix)).append('\n');
+            for (String name : effect.getColorUniformNames()) uniformNames.add(prefix + name);
+        }
+
+        if (pass.leadingCount > 0) {
+            source = source.replaceAll(SCREEN_SAMPLE, "sampleScreen(");
+            declarations.append("vec4 sampleScreen(vec2 uv) {\n")
+                .append("    return ").append(applyColorFunctions(0, pass.leadingCount, "texture2D(screenTexture, uv)")).append(";\n")
+                .append("}\n");
+        }
+
+        if (pass.leadingCount < pass.colorEffects.size()) {
+            source = source.replace("gl_FragColor", "fragColor");
+            declarations.append("vec4 fragColor;\n");
+            int end = source.lastIndexOf('}');
+            source = source.substring(0, end) +
+                "    gl_FragColor = " + applyColorFunctions(pass.leadingCount, pass.colorEffects.size(), "fragColor") + ";\n" +
+                source.substring(end);
+        }
+
+        if (declarations.length() > 0) {
+            int index = source.indexOf(SCREEN_SAMPLER);
+            if (index == -1) throw new IllegalArgumentException("Effect shader does not declare screenTexture.");
+            index += SCREEN_SAMPLER.length();
+            source = source.substring(0, index) + "\n" + declarations + source.substring(index + 1);
+        }
+
+        pass.fragmentShader = source;
+        pass.uniformNames = uniformNames.toArray(new String[0]);
+    }
+
+    private static String applyColorFunctions(int start, int end, String color) {
+        for (int i = start; i < end; i++) color = "fxColor" + i + "(" + color + ")";
+        return color;
+    }
+}
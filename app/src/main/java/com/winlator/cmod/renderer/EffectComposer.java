@@ -5,6 +5,7 @@ import android.util.Log;
 
 import com.winlator.cmod.renderer.effects.Effect;
 import com.winlator.cmod.renderer.effects.ToonEffect;
+import com.winlator.cmod.renderer.material.ScreenMaterial;
 import com.winlator.cmod.renderer.material.ShaderMaterial;
 
 import java.util.ArrayList;
@@ -13,13 +14,15 @@ import java.util.List;
 public class EffectComposer {
     // Constants
     private static final String TAG = "EffectComposer";
-    private boolean isRendering = false;
 
     // Instance fields
     private final List<Effect> effects = new ArrayList<>();
     private RenderTarget readBuffer;
     private RenderTarget writeBuffer;
     private final GLRenderer renderer;
+    private List<EffectCompiler.Pass> passes;
+    private final ArrayList<ShaderMaterial> passMaterials = new ArrayList<>();
+    private long passCount = 0;
 
     // Constructor
     public EffectComposer(GLRenderer renderer) {
@@ -27,6 +30,22 @@ public class EffectComposer {
 //        Log.d(TAG, "EffectComposer created");
     }
 
+    // Material running the fused shader generated for one pass
+    private static class PassMaterial extends ScreenMaterial {
+        private final String fragmentShader;
+
+        private PassMaterial(EffectCompiler.Pass pass) {
+            super();
+            setUniformNames(pass.getUniformNames());
+            fragmentShader = pass.getFragmentShader();
+        }
+
+        @Override
+        protected String getFragmentShader() {
+            return fragmentShader;
+        }
+    }
+
     // Initializes the buffers if they are not already initialized
     private void initBuffers() {
 //        Log.d(TAG, "initBuffers() called");
@@ -37,7 +56,7 @@ public class EffectComposer {
 //            Log.d(TAG, "Initialized readBuffer with size: " + renderer.getSurfaceWidth() + "x" + renderer.getSurfaceHeight());
         }
 
-        if (writeBuffer == null) {
+        if (writeBuffer == null && passes != null && passes.size() > 1) {
             writeBuffer = new RenderTarget();
             writeBuffer.allocateFramebuffer(renderer.getSurfaceWidth(), renderer.getSurfaceHeight());
 //            Log.d(TAG, "Initialized writeBuffer with size: " + renderer.getSurfaceWidth() + "x" + renderer.getSurfaceHeight());
@@ -47,6 +66,7 @@ public class EffectComposer {
     public synchronized void addEffect(Effect effect) {
         if (!effects.contains(effect)) {
             effects.add(effect);
+            passes = null;
 //            Log.d(TAG, "Effect added: " + effect.getClass().getSimpleName());
         } else {
 //            Log.d(TAG, "Effect already present: " + effect.getClass().getSimpleName());
@@ -81,6 +101,7 @@ public class EffectComposer {
     // Removes a specific effect from the composer
     public synchronized void removeEffect(Effect effect) {
         if (effects.remove(effect)) {
+            passes = null;
 //            Log.d(TAG, "Effect removed: " + effect.getClass().getSimpleName());
         } else {
 //            Log.d(TAG, "Effect not found for removal: " + effect.getClass().getSimpleName());
@@ -88,93 +109,81 @@ public class EffectComposer {
         renderer.xServerView.requestRender();
     }
 
-    // Renders all the effects in the composer
-    public synchronized void render() {
-        // Check for recursive rendering
-        if (isRendering) {
-//            Log.d(TAG, "Render already in progress, skipping.");
-            return;
-        }
+    // Redirects the scene drawn by the renderer into the input buffer of the first pass
+    public synchronized void bindInputFramebuffer() {
+        initBuffers();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, readBuffer.getFramebuffer());
+    }
 
-        isRendering = true; // Set flag to true
+    // Number of post-processing passes the current effect chain compiles to
+    public synchronized int getPassCount() {
+        if (passes == null) compilePasses();
+        return passes.size();
+    }
 
-//        Log.d(TAG, "render() called");
+    // Total number of passes drawn since creation
+    public synchronized long getRenderedPassCount() {
+        return passCount;
+    }
 
-        initBuffers();
+    private void compilePasses() {
+        passes = EffectCompiler.compile(effects);
+        for (ShaderMaterial material : passMaterials) material.destroy();
+        passMaterials.clear();
+    }
 
-        // Set up framebuffer if there are effects to render
-        if (hasEffects()) {
-            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, readBuffer.getFramebuffer());
-//            Log.d(TAG, "Binding to readBuffer framebuffer: " + readBuffer.getFramebuffer());
-        } else {
-            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
-//            Log.d(TAG, "Binding to default framebuffer (0)");
-        }
+    // Applies the effect passes to the scene previously drawn into the input buffer
+    public synchronized void render() {
+        if (passes == null) compilePasses();
+        if (passes.isEmpty()) return;
 
-        // Draw the initial frame
-        renderer.drawFrame();
-//        Log.d(TAG, "Initial frame drawn");
+        if (passMaterials.isEmpty()) {
+            for (EffectCompiler.Pass pass : passes) passMaterials.add(new PassMaterial(pass));
+        }
+        initBuffers();
 
-        // Iterate through each effect and render it
-        for (Effect effect : effects) {
-            boolean renderToScreen = effect == effects.get(effects.size() - 1);
+        for (int i = 0; i < passes.size(); i++) {
+            boolean renderToScreen = i == passes.size() - 1;
             int targetFramebuffer = renderToScreen ? 0 : writeBuffer.getFramebuffer();
 
             // Bind appropriate framebuffer
             GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, targetFramebuffer);
-//            Log.d(TAG, "Binding to " + (renderToScreen ? "screen" : "writeBuffer") + " framebuffer: " + targetFramebuffer);
 
             GLES20.glViewport(0, 0, renderer.surfaceWidth, renderer.surfaceHeight);
             renderer.setViewportNeedsUpdate(true);
-//            Log.d(TAG, "Viewport updated to size: " + renderer.surfaceWidth + "x" + renderer.surfaceHeight);
 
             // Clear the buffer
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-//            Log.d(TAG, "Framebuffer cleared");
 
-            // Render the effect
-            renderEffect(effect);
-//            Log.d(TAG, "Effect rendered: " + effect.getClass().getSimpleName());
+            renderPass(passes.get(i), passMaterials.get(i));
+            passCount++;
 
             // Swap the read and write buffers
-            swapBuffers();
-//            Log.d(TAG, "Buffers swapped");
+            if (!renderToScreen) swapBuffers();
         }
-
-        isRendering = false; // Reset flag after rendering
     }
 
-    // Renders a single effect
-    private void renderEffect(Effect effect) {
-//        Log.d(TAG, "renderEffect() called for: " + effect.getClass().getSimpleName());
-
-        ShaderMaterial material = effect.getMaterial();
-        if (material == null) {
-//            Log.e(TAG, "Material is null for effect: " + effect.getClass().getSimpleName());
-            return;
-        }
-
+    // Renders a single pass
+    private void renderPass(EffectCompiler.Pass pass, ShaderMaterial material) {
         material.use();
-//        Log.d(TAG, "ShaderMaterial used: " + material.getClass().getSimpleName());
 
         // Bind the quad vertices to the shader program
         renderer.getQuadVertices().bind(material.programId);
-//        Log.d(TAG, "Quad vertices bound to program ID: " + material.programId);
 
         // Set uniform values
         material.setUniformVec2("resolution", renderer.surfaceWidth, renderer.surfaceHeight);
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, readBuffer.getTextureId());
         material.setUniformInt("screenTexture", 0);
-//        Log.d(TAG, "Uniforms set: resolution=" + renderer.surfaceWidth + "x" + renderer.surfaceHeight + ", screenTexture=" + readBuffer.getTextureId());
+        for (int i = 0; i < pass.colorEffects.size(); i++) {
+            pass.colorEffects.get(i).setColorUniforms(material, pass.getUniformPrefix(i));
+        }
 
         // Draw the quad
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, renderer.quadVertices.count());
-//        Log.d(TAG, "Quad drawn");
 
         // Unbind the texture
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-//        Log.d(TAG, "Texture unbound");
     }
 
     // Swaps the read and write buffers
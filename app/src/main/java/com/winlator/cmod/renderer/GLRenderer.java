@@ -3,6 +3,7 @@ package com.winlator.cmod.renderer;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.opengl.EGL14;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
@@ -22,15 +23,23 @@ import com.winlator.cmod.xserver.Pointer;
 import com.winlator.cmod.xserver.Window;
 import com.winlator.cmod.xserver.WindowAttributes;
 import com.winlator.cmod.xserver.WindowManager;
+import com.winlator.cmod.xserver.Atom;
+import com.winlator.cmod.xserver.Property;
 import com.winlator.cmod.xserver.XLock;
+import com.winlator.cmod.xserver.XResource;
+import com.winlator.cmod.xserver.XResourceManager;
 import com.winlator.cmod.xserver.XServer;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, Pointer.OnPointerMotionListener {
+public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, XResourceManager.OnResourceLifecycleListener, Pointer.OnPointerMotionListener {
+    private static final byte DIRTY_SCENE = 1<<0;
+    private static final byte DIRTY_CURSOR = 1<<1;
     public final XServerView xServerView;
     private final XServer xServer;
     public final VertexAttribute quadVertices = new VertexAttribute("position", 2);
@@ -40,26 +49,34 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     private final WindowMaterial windowMaterial = new WindowMaterial();
     public final ViewTransformation viewTransformation = new ViewTransformation();
     private final Drawable rootCursorDrawable;
-    private final ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
-    private String forceFullscreenWMClass = null;
+    private final WindowRenderList renderList;
+    private final ArrayList<RenderableWindow> renderableWindows;
     private boolean fullscreen = false;
     private boolean toggleFullscreen = false;
     public boolean viewportNeedsUpdate = true;
     private boolean cursorVisible = true;
     private boolean rootWindowDownsized = false;
     private boolean screenOffsetYRelativeToCursor = false;
-    private String[] unviewableWMClasses = null;
     private float magnifierZoom = 1.0f;
     private boolean magnifierEnabled = true;
     public int surfaceWidth;
     public int surfaceHeight;
     private final EffectComposer effectComposer;
+    private final AtomicInteger dirtyFlags = new AtomicInteger(DIRTY_SCENE);
+    private boolean bufferPreserved = false;
+    private final int[] cursorRect = new int[4];
+    private final int[] lastCursorRect = new int[4];
+    private final AtomicLong compositedFrameCount = new AtomicLong();
+    private final AtomicLong cursorFrameCount = new AtomicLong();
+    private final AtomicLong skippedFrameCount = new AtomicLong();
 
     public GLRenderer(XServerView xServerView, XServer xServer) {
         this.xServerView = xServerView;
         this.xServer = xServer;
         this.effectComposer = new EffectComposer(this);
         rootCursorDrawable = createRootCursorDrawable();
+        renderList = new WindowRenderList(xServer.windowManager.rootWindow, xServer.screenInfo);
+        renderableWindows = renderList.windows;
 
         quadVertices.put(new float[]{
             0.0f, 0.0f,
@@ -69,6 +86,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         });
 
         xServer.windowManager.addOnWindowModificationListener(this);
+        xServer.windowManager.addOnResourceLifecycleListener(this);
+        xServer.cursorManager.addOnResourceLifecycleListener(this);
         xServer.pointer.addOnPointerMotionListener(this);
     }
 
@@ -102,6 +121,9 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         surfaceHeight = height;
         viewTransformation.update(width, height, xServer.screenInfo.width, xServer.screenInfo.height);
         viewportNeedsUpdate = true;
+
+        bufferPreserved = magnifierEnabled && EGL14.eglSurfaceAttrib(EGL14.eglGetCurrentDisplay(), EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW), EGL14.EGL_SWAP_BEHAVIOR, EGL14.EGL_BUFFER_PRESERVED);
+        dirtyFlags.set(DIRTY_SCENE);
     }
 
     @Override
@@ -113,7 +135,54 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
         }
 
-        drawFrame();
+        int dirty = dirtyFlags.getAndSet(0);
+        if (dirty == DIRTY_CURSOR && canDrawCursorRegion()) {
+            drawCursorRegion();
+            cursorFrameCount.incrementAndGet();
+        }
+        else {
+            drawFrame();
+            compositedFrameCount.incrementAndGet();
+        }
+    }
+
+    private boolean canDrawCursorRegion() {
+        return bufferPreserved && !viewportNeedsUpdate && magnifierEnabled && magnifierZoom == 1.0f && !screenOffsetYRelativeToCursor &&
+               !rootWindowDownsized && cursorVisible && !effectComposer.hasEffects();
+    }
+
+    private void drawCursorRegion() {
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
+            getCursorImage(cursorRect);
+        }
+
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (int i = 0; i < 2; i++) {
+            int[] rect = i == 0 ? lastCursorRect : cursorRect;
+            if (rect[2] <= 0 || rect[3] <= 0) continue;
+            x0 = Math.min(x0, rect[0]);
+            y0 = Math.min(y0, rect[1]);
+            x1 = Math.max(x1, rect[0] + rect[2]);
+            y1 = Math.max(y1, rect[1] + rect[3]);
+        }
+        if (x0 >= x1 || y0 >= y1) return;
+
+        int viewX = fullscreen ? 0 : viewTransformation.viewOffsetX;
+        int viewY = fullscreen ? 0 : viewTransformation.viewOffsetY;
+        float scaleX = (float)(fullscreen ? surfaceWidth : viewTransformation.viewWidth) / xServer.screenInfo.width;
+        float scaleY = (float)(fullscreen ? surfaceHeight : viewTransformation.viewHeight) / xServer.screenInfo.height;
+        int scissorX = viewX + (int)Math.floor(x0 * scaleX) - 1;
+        int scissorY = viewY + (int)Math.floor((xServer.screenInfo.height - y1) * scaleY) - 1;
+        int scissorWidth = (int)Math.ceil((x1 - x0) * scaleX) + 2;
+        int scissorHeight = (int)Math.ceil((y1 - y0) * scaleY) + 2;
+
+        XForm.makeTransform(tmpXForm2, 0, 0, 1.0f, 1.0f, 0);
+        GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+        GLES20.glScissor(scissorX, scissorY, scissorWidth, scissorHeight);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        renderWindows(false);
+        renderCursor();
+        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
     }
 
     public void drawFrame() {
@@ -124,6 +193,10 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
             xrFrame = XrActivity.getInstance().beginFrame(xrImmersive, XrActivity.getSBS());
         }
 
+        // Draw the scene into the effect input buffer, the passes write the result to the screen
+        boolean hasEffects = effectComposer.hasEffects();
+        if (hasEffects) effectComposer.bindInputFramebuffer();
+
         // Update the viewport if necessary
         if (viewportNeedsUpdate && magnifierEnabled) {
             if (fullscreen) {
@@ -177,7 +250,10 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         renderWindows(xrImmersive);
 
         // Render cursor if enabled
-        if (cursorVisible && !rootWindowDownsized) renderCursor();
+        if (cursorVisible && !rootWindowDownsized) {
+            renderCursor();
+        }
+        else lastCursorRect[2] = lastCursorRect[3] = 0;
 
         // Disable scissor test if magnifier is disabled and not in fullscreen mode
         if (!magnifierEnabled && !fullscreen) {
@@ -185,7 +261,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         }
 
         // Apply all the effects using EffectComposer
-        if (effectComposer.hasEffects()) {
+        if (hasEffects) {
             effectComposer.render();  // <-- This line applies the effects
         }
 
@@ -198,46 +274,131 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
 
+    private void requestFrame(int flag) {
+        int flags;
+        do {
+            flags = dirtyFlags.get();
+        }
+        while (!dirtyFlags.compareAndSet(flags, flags | flag));
+        xServerView.requestRender();
+    }
+
+    public long getCompositedFrameCount() {
+        return compositedFrameCount.get();
+    }
+
+    public long getCursorFrameCount() {
+        return cursorFrameCount.get();
+    }
+
+    public long getSkippedFrameCount() {
+        return skippedFrameCount.get();
+    }
+
     @Override
     public void onMapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        queueWindowUpdate(window);
     }
 
     @Override
     public void onUnmapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        queueWindowUpdate(window);
     }
 
     @Override
     public void onChangeWindowZOrder(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        xServerView.queueEvent(() -> restackWindow(window));
+        requestFrame(DIRTY_SCENE);
     }
 
     @Override
     public void onUpdateWindowContent(Window window) {
-        xServerView.requestRender();
+        if (window.getMapState() != Window.MapState.VIEWABLE) {
+            skippedFrameCount.incrementAndGet();
+            return;
+        }
+        requestFrame(DIRTY_SCENE);
     }
 
     @Override
     public void onUpdateWindowGeometry(final Window window, boolean resized) {
         if (resized) {
-            xServerView.queueEvent(this::updateScene);
+            queueWindowUpdate(window);
+            return;
+        }
+        xServerView.queueEvent(() -> updateWindowPosition(window));
+        requestFrame(DIRTY_SCENE);
+    }
+
+    @Override
+    public void onModifyWindowProperty(Window window, Property property) {
+        if (property.name != Atom.getId("WM_CLASS") || !renderList.hasWMClassRules()) return;
+        final Window parent = window.getParent();
+        xServerView.queueEvent(() -> {
+            renderList.invalidateWMClass(window);
+            updateScene(parent);
+        });
+        requestFrame(DIRTY_SCENE);
+    }
+
+    @Override
+    public void onCreateResource(XResource resource) {
+        // the force fullscreen rules depend on the child count of the parent
+        if (resource instanceof Window && renderList.getForceFullscreenWMClass() != null) {
+            Window parent = ((Window)resource).getParent();
+            if (parent != null) queueSceneUpdate(parent.getParent());
         }
-        else xServerView.queueEvent(() -> updateWindowPosition(window));
-        xServerView.requestRender();
+    }
+
+    @Override
+    public void onFreeResource(XResource resource) {
+        if (resource instanceof Window) {
+            Window window = (Window)resource;
+            Window parent = window.getParent();
+            xServerView.queueEvent(() -> renderList.invalidateWMClass(window));
+            if (parent != null && renderList.getForceFullscreenWMClass() != null) queueSceneUpdate(parent.getParent());
+        }
+        else if (resource instanceof Cursor) {
+            Drawable cursorImage = ((Cursor)resource).cursorImage;
+            if (!xServer.cursorManager.isCursorImageShared(cursorImage)) {
+                xServerView.queueEvent(() -> cursorImage.getTexture().destroy());
+            }
+        }
+    }
+
+    private void queueWindowUpdate(final Window window) {
+        xServerView.queueEvent(() -> updateWindow(window));
+        requestFrame(DIRTY_SCENE);
+    }
+
+    private void queueSceneUpdate(final Window dirtyRoot) {
+        xServerView.queueEvent(() -> updateScene(dirtyRoot));
+        requestFrame(DIRTY_SCENE);
+    }
+
+    public int getSceneRebuildCount() {
+        return renderList.getRebuildCount();
+    }
+
+    public int getSceneUpdateCount() {
+        return renderList.getUpdateCount();
     }
 
     @Override
     public void onUpdateWindowAttributes(Window window, Bitmask mask) {
-        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) xServerView.requestRender();
+        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) requestFrame(DIRTY_CURSOR);
     }
 
     @Override
     public void onPointerMove(short x, short y) {
-        xServerView.requestRender();
+        boolean sceneFollowsPointer = magnifierZoom != 1.0f || screenOffsetYRelativeToCursor;
+        if (sceneFollowsPointer) {
+            requestFrame(DIRTY_SCENE);
+        }
+        else if (cursorVisible) {
+            requestFrame(DIRTY_CURSOR);
+        }
+        else skippedFrameCount.incrementAndGet();
     }
 
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material) {
@@ -246,25 +407,27 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material, boolean forceFullscreen) {
         if (drawable == null) return;
-        synchronized (drawable.renderLock) {
-            Texture texture = drawable.getTexture();
-            texture.updateFromDrawable(drawable);
-
-            if (forceFullscreen) {
-                short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
-                short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
-                XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
-            }
-            else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
+        try (XLock lock = drawable.lockPixels(true)) {
+            synchronized (drawable.renderLock) {
+                Texture texture = drawable.getTexture();
+                texture.updateFromDrawable(drawable);
+
+                if (forceFullscreen) {
+                    short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
+                    short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
+                    XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
+                }
+                else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
 
-            XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
+                XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
-            GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
-            GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
+                GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
+                GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+            }
         }
     }
 
@@ -274,7 +437,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         quadVertices.bind(windowMaterial.programId);
 
         boolean singleWindow = forceFullscreen;
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
             rootWindowDownsized = false;
             if (fullscreen && !renderableWindows.isEmpty()) {
                 RenderableWindow root = renderableWindows.get(0);
@@ -307,21 +470,34 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(cursorMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(cursorMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
-            Window pointWindow = xServer.inputDeviceManager.getPointWindow();
-            Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
-            short x = xServer.pointer.getClampedX();
-            short y = xServer.pointer.getClampedY();
-
-            if (cursor != null) {
-                if (cursor.isVisible()) renderDrawable(cursor.cursorImage, x - cursor.hotSpotX, y - cursor.hotSpotY, cursorMaterial);
-            }
-            else renderDrawable(rootCursorDrawable, x, y, cursorMaterial);
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
+            Drawable cursorImage = getCursorImage(lastCursorRect);
+            if (cursorImage != null) renderDrawable(cursorImage, lastCursorRect[0], lastCursorRect[1], cursorMaterial);
         }
 
         quadVertices.disable();
     }
 
+    private Drawable getCursorImage(int[] rect) {
+        Window pointWindow = xServer.inputDeviceManager.getPointWindow();
+        Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
+        short x = xServer.pointer.getClampedX();
+        short y = xServer.pointer.getClampedY();
+
+        Drawable cursorImage = rootCursorDrawable;
+        if (cursor != null) {
+            cursorImage = cursor.isVisible() ? cursor.cursorImage : null;
+            x -= cursor.hotSpotX;
+            y -= cursor.hotSpotY;
+        }
+
+        rect[0] = x;
+        rect[1] = y;
+        rect[2] = cursorImage != null ? cursorImage.width : 0;
+        rect[3] = cursorImage != null ? cursorImage.height : 0;
+        return cursorImage;
+    }
+
     public void toggleFullscreen() {
         toggleFullscreen = true;
         xServerView.requestRender();
@@ -335,79 +511,27 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         return Drawable.fromBitmap(bitmap);
     }
 
-    private void updateScene() {
+    private void updateScene(Window dirtyRoot) {
         try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-            renderableWindows.clear();
-            collectRenderableWindows(xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
+            renderList.update(dirtyRoot);
         }
     }
 
-    private void collectRenderableWindows(Window window, int x, int y) {
-        if (!window.attributes.isMapped()) return;
-        if (window != xServer.windowManager.rootWindow) {
-            boolean viewable = true;
-
-            if (unviewableWMClasses != null) {
-                String wmClass = window.getClassName();
-                for (String unviewableWMClass : unviewableWMClasses) {
-                    if (wmClass.contains(unviewableWMClass)) {
-                        if (window.attributes.isEnabled()) window.disableAllDescendants();
-                        viewable = false;
-                        break;
-                    }
-                }
-            }
-
-            if (viewable) {
-                if (forceFullscreenWMClass != null) {
-                    short width = window.getWidth();
-                    short height = window.getHeight();
-                    boolean forceFullscreen= false;
-
-                    if (width >= 320 && height >= 200 && width < xServer.screenInfo.width && height < xServer.screenInfo.height) {
-                        Window parent = window.getParent();
-                        boolean parentHasWMClass = parent.getClassName().contains(forceFullscreenWMClass);
-                        boolean hasWMClass = window.getClassName().contains(forceFullscreenWMClass);
-                        if (hasWMClass) {
-                            forceFullscreen = !parentHasWMClass && window.getChildCount() == 0;
-                        }
-                        else {
-                            short borderX = (short)(parent.getWidth() - width);
-                            short borderY = (short)(parent.getHeight() - height);
-                            if (parent.getChildCount() == 1 && borderX > 0 && borderY > 0 && borderX <= 12) {
-                                forceFullscreen = true;
-                                removeRenderableWindow(parent);
-                            }
-                        }
-                    }
-
-                    renderableWindows.add(new RenderableWindow(window.getContent(), x, y, forceFullscreen));
-                }
-                else renderableWindows.add(new RenderableWindow(window.getContent(), x, y));
-            }
-        }
-
-        for (Window child : window.getChildren()) {
-            collectRenderableWindows(child, child.getX() + x, child.getY() + y);
+    private void updateWindow(Window window) {
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            renderList.updateWindow(window);
         }
     }
 
-    private void removeRenderableWindow(Window window) {
-        for (int i = 0; i < renderableWindows.size(); i++) {
-            if (renderableWindows.get(i).content == window.getContent()) {
-                renderableWindows.remove(i);
-                break;
-            }
+    private void restackWindow(Window window) {
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            renderList.restackWindow(window);
         }
     }
 
     private void updateWindowPosition(Window window) {
-        for (RenderableWindow renderableWindow : renderableWindows) {
-            if (renderableWindow.content == window.getContent()) {
-                renderableWindow.rootX = window.getRootX();
-                renderableWindow.rootY = window.getRootY();
-                break;
-            }
+        try (XLock lock = xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
+            renderList.updatePosition(window);
         }
     }
 
@@ -430,19 +554,19 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
     public String getForceFullscreenWMClass() {
-        return forceFullscreenWMClass;
+        return renderList.getForceFullscreenWMClass();
     }
 
     public void setForceFullscreenWMClass(String forceFullscreenWMClass) {
-        this.forceFullscreenWMClass = forceFullscreenWMClass;
+        renderList.setForceFullscreenWMClass(forceFullscreenWMClass);
     }
 
     public String[] getUnviewableWMClasses() {
-        return unviewableWMClasses;
+        return renderList.getUnviewableWMClasses();
     }
 
     public void setUnviewableWMClasses(String... unviewableWMNames) {
-        this.unviewableWMClasses = unviewableWMNames;
+        renderList.setUnviewableWMClasses(unviewableWMNames);
     }
 
     public boolean isFullscreen() {
@@ -484,23 +608,25 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     private void renderWindowEffect(Drawable drawable, int x, int y, ShaderMaterial material) {
         // Implement the rendering effect logic here
-        synchronized (drawable.renderLock) {
-            Texture texture = drawable.getTexture();
-            texture.updateFromDrawable(drawable);
-
-            XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
-            XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
+        try (XLock lock = drawable.lockPixels(true)) {
+            synchronized (drawable.renderLock) {
+                Texture texture = drawable.getTexture();
+                texture.updateFromDrawable(drawable);
+
+                XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
+                XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
+
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
+                if (GLES20.glIsTexture(texture.getTextureId()) == false) {
+                    Log.e("GLRenderer", "Invalid texture binding!");
+                }
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
-            if (GLES20.glIsTexture(texture.getTextureId()) == false) {
-                Log.e("GLRenderer", "Invalid texture binding!");
+                GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
+                GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
             }
-
-            GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
-            GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
         }
     }
 
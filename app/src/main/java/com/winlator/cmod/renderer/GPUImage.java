@@ -60,6 +60,7 @@ public class GPUImage extends Texture {
     @Override
     public void updateFromDrawable(Drawable drawable) {
         if (!isAllocated()) allocateTexture(drawable.width, drawable.height, null);
+        drawable.getDamageRegion().clear();
         needsUpdate = false;
     }
 
@@ -1,19 +1,22 @@
 package com.winlator.cmod.renderer;
 
 import com.winlator.cmod.xserver.Drawable;
+import com.winlator.cmod.xserver.Window;
 
 class RenderableWindow {
+    final Window window;
     final Drawable content;
     short rootX;
     short rootY;
     final boolean forceFullscreen;
 
-    public RenderableWindow(Drawable content, int rootX, int rootY) {
-        this(content, rootX, rootY, false);
+    public RenderableWindow(Window window, int rootX, int rootY) {
+        this(window, rootX, rootY, false);
     }
 
-    public RenderableWindow(Drawable content, int rootX, int rootY, boolean forceFullscreen) {
-        this.content = content;
+    public RenderableWindow(Window window, int rootX, int rootY, boolean forceFullscreen) {
+        this.window = window;
+        this.content = window.getContent();
         this.rootX = (short)rootX;
         this.rootY = (short)rootY;
         this.forceFullscreen = forceFullscreen;
@@ -2,8 +2,10 @@ package com.winlator.cmod.renderer;
 
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 import com.winlator.cmod.XrActivity;
+import com.winlator.cmod.xserver.DamageRegion;
 import com.winlator.cmod.xserver.Drawable;
 
 import java.nio.ByteBuffer;
@@ -17,6 +19,7 @@ public class Texture {
     protected int format = GLES11Ext.GL_BGRA;
     protected boolean needsUpdate = true;
     protected byte unpackAlignment = 4; // or add a getter method
+    private static long uploadedBytes = 0;
 
 
     public void allocateTexture(short width, short height, ByteBuffer data) {
@@ -92,17 +95,45 @@ public class Texture {
         ByteBuffer data = drawable.getData();
         if (data == null) return;
 
+        DamageRegion damageRegion = drawable.getDamageRegion();
         if (!isAllocated()) {
             allocateTexture(drawable.width, drawable.height, data);
+            uploadedBytes += drawable.width * drawable.height * 4;
+            damageRegion.clear();
+            needsUpdate = false;
         }
         else if (needsUpdate) {
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
+            if (damageRegion.isEmpty() || damageRegion.isFull()) {
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
+                uploadedBytes += drawable.width * drawable.height * 4;
+            }
+            else updateDamagedRects(drawable, damageRegion, data);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+            damageRegion.clear();
             needsUpdate = false;
         }
     }
 
+    private void updateDamagedRects(Drawable drawable, DamageRegion damageRegion, ByteBuffer data) {
+        GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, drawable.width);
+        for (int i = 0, count = damageRegion.getRectCount(); i < count; i++) {
+            short x = damageRegion.getX(i);
+            short y = damageRegion.getY(i);
+            short width = damageRegion.getWidth(i);
+            short height = damageRegion.getHeight(i);
+            data.position((y * drawable.width + x) * 4);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, width, height, format, GLES20.GL_UNSIGNED_BYTE, data);
+            uploadedBytes += width * height * 4;
+        }
+        GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+        data.rewind();
+    }
+
+    public static long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
     public boolean isAllocated() {
         return textureId > 0;
     }
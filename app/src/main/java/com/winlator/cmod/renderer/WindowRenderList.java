@@ -0,0 +1,266 @@
+package com.winlator.cmod.renderer;
+
+import android.util.SparseIntArray;
+
+import com.winlator.cmod.xserver.ScreenInfo;
+import com.winlator.cmod.xserver.Window;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Paint-ordered list of the windows the renderer draws, kept in sync with the window tree by splicing only the
+// subtree a modification touched instead of walking the whole tree again.
+class WindowRenderList {
+    private static final byte WM_CLASS_CHECKED = 1<<0;
+    private static final byte WM_CLASS_UNVIEWABLE = 1<<1;
+    private static final byte WM_CLASS_FORCE_FULLSCREEN = 1<<2;
+    final ArrayList<RenderableWindow> windows = new ArrayList<>();
+    private final ArrayList<RenderableWindow> subtreeWindows = new ArrayList<>();
+    private final Set<Window> lowerSiblings = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final SparseIntArray wmClassFlags = new SparseIntArray();
+    private final Window rootWindow;
+    private final ScreenInfo screenInfo;
+    private volatile String forceFullscreenWMClass = null;
+    private volatile String[] unviewableWMClasses = null;
+    private volatile boolean wmClassRulesChanged = false;
+    private Window removedAncestor;
+    private int rebuildCount = 0;
+    private int updateCount = 0;
+
+    public WindowRenderList(Window rootWindow, ScreenInfo screenInfo) {
+        this.rootWindow = rootWindow;
+        this.screenInfo = screenInfo;
+    }
+
+    public String getForceFullscreenWMClass() {
+        return forceFullscreenWMClass;
+    }
+
+    public String[] getUnviewableWMClasses() {
+        return unviewableWMClasses;
+    }
+
+    public void setForceFullscreenWMClass(String forceFullscreenWMClass) {
+        this.forceFullscreenWMClass = forceFullscreenWMClass;
+        wmClassRulesChanged = true;
+    }
+
+    public void setUnviewableWMClasses(String[] unviewableWMClasses) {
+        this.unviewableWMClasses = unviewableWMClasses;
+        wmClassRulesChanged = true;
+    }
+
+    public boolean hasWMClassRules() {
+        return forceFullscreenWMClass != null || unviewableWMClasses != null;
+    }
+
+    public void invalidateWMClass(Window window) {
+        wmClassFlags.delete(window.id);
+    }
+
+    public int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public void rebuild() {
+        if (wmClassRulesChanged) {
+            wmClassRulesChanged = false;
+            wmClassFlags.clear();
+        }
+
+        windows.clear();
+        removedAncestor = null;
+        collectRenderableWindows(rootWindow, rootWindow.getX(), rootWindow.getY(), windows);
+        rebuildCount++;
+    }
+
+    // Re-collects the subtree of dirtyRoot and splices it into the list at its paint-order position
+    public void update(Window dirtyRoot) {
+        if (dirtyRoot == null || dirtyRoot == rootWindow || !isAttached(dirtyRoot) || wmClassRulesChanged || rebuildCount == 0) {
+            rebuild();
+            return;
+        }
+
+        removedAncestor = null;
+        if (isViewable(dirtyRoot)) {
+            collectRenderableWindows(dirtyRoot, dirtyRoot.getRootX(), dirtyRoot.getRootY(), subtreeWindows);
+        }
+
+        int size = 0;
+        for (int i = 0; i < windows.size(); i++) {
+            RenderableWindow renderableWindow = windows.get(i);
+            Window window = renderableWindow.window;
+            if (window != removedAncestor && !isDescendantOf(window, dirtyRoot) && isAttached(window)) windows.set(size++, renderableWindow);
+        }
+        while (windows.size() > size) windows.remove(windows.size() - 1);
+
+        windows.addAll(findInsertIndex(dirtyRoot), subtreeWindows);
+        subtreeWindows.clear();
+        updateCount++;
+    }
+
+    // Map, unmap and resize only touch the subtree of the window itself. The parent is collected again only when the
+    // force fullscreen rule left it out of the list because of this window, its only child.
+    public void updateWindow(Window window) {
+        Window parent = window.getParent();
+        if (forceFullscreenWMClass != null && parent != null && parent != rootWindow && isViewable(parent) && indexOf(parent) == -1 &&
+            (getWMClassFlags(parent) & WM_CLASS_UNVIEWABLE) == 0) {
+            update(parent);
+        }
+        else update(window);
+    }
+
+    // Stacking order does not feed into any window rule, so a restack moves the collected subtree as it is
+    public void restackWindow(Window window) {
+        if (window == rootWindow || !isAttached(window) || wmClassRulesChanged || rebuildCount == 0) {
+            update(window);
+            return;
+        }
+
+        int start = 0;
+        while (start < windows.size() && !isDescendantOf(windows.get(start).window, window)) start++;
+        int end = start;
+        while (end < windows.size() && isDescendantOf(windows.get(end).window, window)) end++;
+        if (start == end) return;
+
+        List<RenderableWindow> subtree = windows.subList(start, end);
+        subtreeWindows.addAll(subtree);
+        subtree.clear();
+        windows.addAll(findInsertIndex(window), subtreeWindows);
+        subtreeWindows.clear();
+        updateCount++;
+    }
+
+    public void updatePosition(Window window) {
+        for (RenderableWindow renderableWindow : windows) {
+            if (isDescendantOf(renderableWindow.window, window)) {
+                renderableWindow.rootX = renderableWindow.window.getRootX();
+                renderableWindow.rootY = renderableWindow.window.getRootY();
+            }
+        }
+    }
+
+    private boolean isViewable(Window window) {
+        for (; window != rootWindow; window = window.getParent()) {
+            if (window == null || !window.attributes.isMapped()) return false;
+        }
+        return true;
+    }
+
+    private boolean isAttached(Window window) {
+        return isDescendantOf(window, rootWindow);
+    }
+
+    private static boolean isDescendantOf(Window window, Window ancestor) {
+        while (window != null) {
+            if (window == ancestor) return true;
+            window = window.getParent();
+        }
+        return false;
+    }
+
+    private int indexOf(Window window) {
+        for (int i = 0; i < windows.size(); i++) {
+            if (windows.get(i).window == window) return i;
+        }
+        return -1;
+    }
+
+    // The subtree goes right after the last listed window painted below it: one inside the subtree of a lower sibling,
+    // or else the parent itself. If neither is listed the search continues one level up.
+    private int findInsertIndex(Window window) {
+        while (window != rootWindow) {
+            Window parent = window.getParent();
+            List<Window> siblings = parent.getChildren();
+            lowerSiblings.addAll(siblings.subList(0, siblings.indexOf(window)));
+
+            for (int i = windows.size() - 1; i >= 0; i--) {
+                Window listed = windows.get(i).window;
+                while (listed != null && listed != parent && listed.getParent() != parent) listed = listed.getParent();
+                if (listed == parent || (listed != null && lowerSiblings.contains(listed))) {
+                    lowerSiblings.clear();
+                    return i + 1;
+                }
+            }
+
+            lowerSiblings.clear();
+            window = parent;
+        }
+        return 0;
+    }
+
+    private int getWMClassFlags(Window window) {
+        int flags = wmClassFlags.get(window.id);
+        if (flags == 0) {
+            flags = WM_CLASS_CHECKED;
+            String wmClass = window.getClassName();
+            if (unviewableWMClasses != null) {
+                for (String unviewableWMClass : unviewableWMClasses) {
+                    if (wmClass.contains(unviewableWMClass)) {
+                        flags |= WM_CLASS_UNVIEWABLE;
+                        break;
+                    }
+                }
+            }
+            if (forceFullscreenWMClass != null && wmClass.contains(forceFullscreenWMClass)) flags |= WM_CLASS_FORCE_FULLSCREEN;
+            wmClassFlags.put(window.id, flags);
+        }
+        return flags;
+    }
+
+    private void collectRenderableWindows(Window window, int x, int y, ArrayList<RenderableWindow> renderableWindows) {
+        if (!window.attributes.isMapped()) return;
+        if (window != rootWindow) {
+            int flags = getWMClassFlags(window);
+            if ((flags & WM_CLASS_UNVIEWABLE) != 0) {
+                if (window.attributes.isEnabled()) window.disableAllDescendants();
+            }
+            else if (forceFullscreenWMClass != null) {
+                short width = window.getWidth();
+                short height = window.getHeight();
+                boolean forceFullscreen = false;
+
+                if (width >= 320 && height >= 200 && width < screenInfo.width && height < screenInfo.height) {
+                    Window parent = window.getParent();
+                    boolean parentHasWMClass = (getWMClassFlags(parent) & WM_CLASS_FORCE_FULLSCREEN) != 0;
+                    boolean hasWMClass = (flags & WM_CLASS_FORCE_FULLSCREEN) != 0;
+                    if (hasWMClass) {
+                        forceFullscreen = !parentHasWMClass && window.getChildCount() == 0;
+                    }
+                    else {
+                        short borderX = (short)(parent.getWidth() - width);
+                        short borderY = (short)(parent.getHeight() - height);
+                        if (parent.getChildCount() == 1 && borderX > 0 && borderY > 0 && borderX <= 12) {
+                            forceFullscreen = true;
+                            removeRenderableWindow(parent, renderableWindows);
+                        }
+                    }
+                }
+
+                renderableWindows.add(new RenderableWindow(window, x, y, forceFullscreen));
+            }
+            else renderableWindows.add(new RenderableWindow(window, x, y));
+        }
+
+        for (Window child : window.getChildren()) {
+            collectRenderableWindows(child, child.getX() + x, child.getY() + y, renderableWindows);
+        }
+    }
+
+    private void removeRenderableWindow(Window window, ArrayList<RenderableWindow> renderableWindows) {
+        for (int i = 0; i < renderableWindows.size(); i++) {
+            if (renderableWindows.get(i).window == window) {
+                renderableWindows.remove(i);
+                return;
+            }
+        }
+        removedAncestor = window;
+    }
+}
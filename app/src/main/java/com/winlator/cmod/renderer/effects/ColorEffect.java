@@ -21,6 +21,38 @@ public class ColorEffect extends Effect {
         return new ColorEffectMaterial();
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public String getColorFunction(String name, String uniformPrefix) {
+        return String.join("\n", new CharSequence[]{
+                "uniform float " + uniformPrefix + "brightness;",
+                "uniform float " + uniformPrefix + "contrast;",
+                "uniform float " + uniformPrefix + "gamma;",
+                "vec4 " + name + "(vec4 texelColor) {",
+                "    vec3 color = clamp(texelColor.rgb + " + uniformPrefix + "brightness, 0.0, 1.0);",
+                "    color = (color - 0.5) * clamp(" + uniformPrefix + "contrast + 1.0, 0.5, 2.0) + 0.5;",
+                "    color = pow(color, vec3(1.0 / " + uniformPrefix + "gamma));",
+                "    return vec4(color, texelColor.a);",
+                "}"
+        });
+    }
+
+    @Override
+    public String[] getColorUniformNames() {
+        return new String[]{"brightness", "contrast", "gamma"};
+    }
+
+    @Override
+    public void setColorUniforms(ShaderMaterial material, String uniformPrefix) {
+        material.setUniformFloat(uniformPrefix + "brightness", Math.max(-1.0f, Math.min(brightness, 1.0f)));
+        material.setUniformFloat(uniformPrefix + "contrast", Math.max(0.0f, Math.min(contrast, 2.0f)));
+        material.setUniformFloat(uniformPrefix + "gamma", Math.max(0.1f, Math.min(gamma, 5.0f)));
+    }
+
     // Getters and Setters
     public float getBrightness() {
         return brightness;
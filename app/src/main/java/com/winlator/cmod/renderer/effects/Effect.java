@@ -25,4 +25,22 @@ public abstract class Effect {
         }
         return material;
     }
+
+    // Per-pixel effects return a GLSL function "vec4 name(vec4 color)" so they can be fused into a neighbouring pass
+    public String getColorFunction(String name, String uniformPrefix) {
+        return null;
+    }
+
+    // Uniforms declared by getColorFunction(), without the prefix
+    public String[] getColorUniformNames() {
+        return new String[0];
+    }
+
+    // Sets the uniforms of a fused color function on the material of the pass it was fused into
+    public void setColorUniforms(ShaderMaterial material, String uniformPrefix) {}
+
+    // Effects that sample neighbouring pixels need their own pass
+    public boolean isPerPixel() {
+        return false;
+    }
 }
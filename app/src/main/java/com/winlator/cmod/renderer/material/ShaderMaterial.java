@@ -15,6 +15,12 @@ public class ShaderMaterial {
         for (String name : names) uniforms.put(name, -1);
     }
 
+    public String[] getUniformNames() {
+        String[] names = new String[uniforms.size()];
+        for (int i = 0; i < names.length; i++) names[i] = uniforms.keyAt(i);
+        return names;
+    }
+
     protected static int compileShaders(String vertexShader, String fragmentShader) {
         int beginIndex = vertexShader.indexOf("void main() {");
         vertexShader = vertexShader.substring(0, beginIndex) +
@@ -61,6 +67,10 @@ public class ShaderMaterial {
         return "";
     }
 
+    public String getFragmentShaderSource() {
+        return getFragmentShader();
+    }
+
     public void use() {
         if (programId == 0) programId = compileShaders(getVertexShader(), getFragmentShader());
         GLES20.glUseProgram(programId);
@@ -43,6 +43,7 @@ import com.winlator.cmod.xserver.XServer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -68,6 +69,16 @@ public class InputControlsView extends View {
     private Timer mouseMoveTimer;
     private final PointF mouseMoveOffset = new PointF();
     private boolean showTouchscreenControls = true;
+    private Bitmap layer;
+    private Canvas layerCanvas;
+    private ControlsProfile layerProfile;
+    private boolean layerDirty = true;
+    private final Rect dirtyRect = new Rect();
+    private final Rect otherDirtyRect = new Rect();
+    private int layerRebuildCount = 0;
+    private long drawCount = 0;
+    private long lastDrawTimeNanos = 0;
+    private long totalDrawTimeNanos = 0;
 
     private Handler timeoutHandler; // Reference to the activity's timeout handler
     private Runnable hideControlsRunnable; // Runnable to hide the controls
@@ -84,7 +95,7 @@ public class InputControlsView extends View {
 
     public void setFocusOnStick(boolean focus) {
         this.focusOnStick = focus;
-        invalidate(); // Redraw the view with the new focus setting
+        invalidateLayer(); // Redraw the view with the new focus setting
     }
 
 
@@ -139,18 +150,55 @@ public class InputControlsView extends View {
 
     public void setEditMode(boolean editMode) {
         this.editMode = editMode;
+        invalidateLayer();
     }
 
     public void setOverlayOpacity(float overlayOpacity) {
         this.overlayOpacity = overlayOpacity;
+        invalidateLayer();
     }
 
     public int getSnappingSize() {
         return snappingSize;
     }
 
+    // Rebuilds the cached layer of idle elements on the next draw
+    public void invalidateLayer() {
+        layerDirty = true;
+        invalidate();
+    }
+
+    // Redraws only the area a touched element covers, the cached layer stays as it is
+    public void invalidateElement(ControlElement element) {
+        element.getDirtyBounds(dirtyRect);
+        invalidate(dirtyRect);
+    }
+
+    public int getLayerRebuildCount() {
+        return layerRebuildCount;
+    }
+
+    public long getDrawCount() {
+        return drawCount;
+    }
+
+    public long getLastDrawTimeNanos() {
+        return lastDrawTimeNanos;
+    }
+
+    public long getAverageDrawTimeNanos() {
+        return drawCount > 0 ? totalDrawTimeNanos / drawCount : 0;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layerDirty = true;
+    }
+
     @Override
     protected synchronized void onDraw(Canvas canvas) {
+        long startTime = System.nanoTime();
         int width, height;
 
         if (stickElement != null && isFocusedOnStick()) {
@@ -183,13 +231,73 @@ public class InputControlsView extends View {
         }
 
         if (profile != null && showTouchscreenControls && !isFocusedOnStick()) {
-            if (!profile.isElementsLoaded()) profile.loadElements(this);
-            for (ControlElement element : profile.getElements()) {
-                element.draw(canvas);
+            if (!profile.isElementsLoaded()) {
+                profile.loadElements(this);
+                layerDirty = true;
+            }
+
+            if (editMode) {
+                for (ControlElement element : profile.getElements()) {
+                    element.draw(canvas);
+                }
             }
+            else drawElementsWithLayer(canvas, width, height);
         }
 
         super.onDraw(canvas);
+
+        lastDrawTimeNanos = System.nanoTime() - startTime;
+        totalDrawTimeNanos += lastDrawTimeNanos;
+        drawCount++;
+    }
+
+    private void drawElementsWithLayer(Canvas canvas, int width, int height) {
+        List<ControlElement> elements = profile.getElements();
+        if (layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+            if (layer != null) layer.recycle();
+            layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            layerCanvas = new Canvas(layer);
+            layerDirty = true;
+        }
+
+        if (layerDirty || layerProfile != profile) {
+            layer.eraseColor(Color.TRANSPARENT);
+            for (ControlElement element : elements) {
+                if (!element.isAnimated()) element.drawIdle(layerCanvas);
+            }
+            layerProfile = profile;
+            layerDirty = false;
+            layerRebuildCount++;
+        }
+
+        canvas.save();
+        for (ControlElement element : elements) {
+            if (!element.isAnimated() && element.isEngaged()) {
+                element.getDirtyBounds(dirtyRect);
+                canvas.clipOutRect(dirtyRect);
+            }
+        }
+        canvas.drawBitmap(layer, 0, 0, null);
+        canvas.restore();
+
+        for (ControlElement element : elements) {
+            if (element.isAnimated() || !element.isEngaged()) continue;
+            element.getDirtyBounds(dirtyRect);
+            for (ControlElement other : elements) {
+                if (other == element || other.isAnimated() || other.isEngaged()) continue;
+                other.getDirtyBounds(otherDirtyRect);
+                if (Rect.intersects(dirtyRect, otherDirtyRect)) {
+                    canvas.save();
+                    canvas.clipRect(dirtyRect);
+                    other.drawIdle(canvas);
+                    canvas.restore();
+                }
+            }
+        }
+
+        for (ControlElement element : elements) {
+            if (element.isAnimated() || element.isEngaged()) element.draw(canvas);
+        }
     }
 
 
@@ -288,7 +396,7 @@ public class InputControlsView extends View {
             profile.removeElement(selectedElement);
             selectedElement = null;
             profile.save();
-            invalidate();
+            invalidateLayer();
             return true;
         }
         else return false;
@@ -324,6 +432,7 @@ public class InputControlsView extends View {
             deselectAllElements();
         }
         else this.profile = null;
+        layerDirty = true;
     }
 
     public boolean isShowTouchscreenControls() {
@@ -332,6 +441,7 @@ public class InputControlsView extends View {
 
     public void setShowTouchscreenControls(boolean showTouchscreenControls) {
         this.showTouchscreenControls = showTouchscreenControls;
+        layerDirty = true;
     }
 
     public int getPrimaryColor() {
@@ -388,6 +498,11 @@ public class InputControlsView extends View {
     protected void onDetachedFromWindow() {
         if (mouseMoveTimer != null)
             mouseMoveTimer.cancel();
+        if (layer != null) {
+            layer.recycle();
+            layer = null;
+            layerCanvas = null;
+        }
         super.onDetachedFromWindow();
     }
 
@@ -0,0 +1,58 @@
+package com.winlator.cmod.winhandler;
+
+import android.os.Build;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * Publishes one gamepad slot into its shared mapping under a seqlock.
+ * Layout: [0..27] state, [28..31] sequence (odd while the state is being rewritten), [32..35] rumble written by the guest.
+ * Readers (evshim) sample the sequence, copy the state, sample it again and retry unless both samples are equal and even.
+ */
+final class GamepadStateBuffer {
+    public static final int STATE_SIZE = 28;
+    public static final int SEQUENCE_OFFSET = 28;
+    private static volatile int fallbackFence;
+    private final ByteBuffer buffer;
+    private final byte[] lastState = new byte[STATE_SIZE];
+    private int sequence = 0;
+    private boolean published = false;
+
+    GamepadStateBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        buffer.putInt(SEQUENCE_OFFSET, 0);
+    }
+
+    /** Copies the bytes of {@code state} that changed since the last call; does nothing if none did. */
+    void publish(byte[] state) {
+        int first = 0;
+        if (published) {
+            while (first < STATE_SIZE && state[first] == lastState[first]) first++;
+            if (first == STATE_SIZE) return;
+        }
+
+        buffer.putInt(SEQUENCE_OFFSET, ++sequence);
+        storeStoreFence();
+
+        for (int i = first; i < STATE_SIZE; i++) {
+            if (!published || state[i] != lastState[i]) buffer.put(i, state[i]);
+        }
+
+        storeStoreFence();
+        buffer.putInt(SEQUENCE_OFFSET, ++sequence);
+
+        System.arraycopy(state, first, lastState, first, STATE_SIZE - first);
+        published = true;
+    }
+
+    private static void storeStoreFence() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            VarHandle.storeStoreFence();
+        }
+        else {
+            // VarHandle fences are not exposed before API 33; ART emits a full barrier after a volatile store
+            fallbackFence = 0;
+        }
+    }
+}
@@ -84,6 +84,11 @@ public class WinHandler {
     private final ExternalController[] extraControllers   = new ExternalController[MAX_PLAYERS - 1];
     private MappedByteBuffer gamepadBuffer; // P1
 
+    // --- Gamepad SHM: see GamepadStateBuffer for the layout and the seqlock protocol
+    private final GamepadStateBuffer[] shmSlots = new GamepadStateBuffer[MAX_PLAYERS];
+    private final byte[][] shmScratch = new byte[MAX_PLAYERS][GamepadStateBuffer.STATE_SIZE];
+    private final byte[][] shmButtons = new byte[MAX_PLAYERS][BUTTON_COUNT];
+
     private ExternalController currentController; // P1
     private byte triggerType;                     // trigger mapping
     private boolean xinputDisabled;               // for exclusive mouse mode
@@ -133,6 +138,14 @@ public class WinHandler {
     private final short[] lastLow  = new short[MAX_PLAYERS];
     private final short[] lastHigh = new short[MAX_PLAYERS];
     private Thread rumblePollerThread;
+    private final Object pollerLock = new Object();
+    private boolean pollerWakeRequested = false;
+    private static final int POLL_MIN_MS  = 5;    // right after a rumble change
+    private static final int POLL_MAX_MS  = 80;   // idle backoff cap while a slot can rumble
+    private static final int POLL_IDLE_MS = 1000; // no slot can rumble and no turbo button held
+    private volatile long pollerWakeups = 0;
+    private long wakeupSampleCount = 0;
+    private long wakeupSampleTime = 0;
 
     // --- Turbo (autofire) ----------------------------------------------------
     private static final int BUTTON_COUNT = 15; // length of sdlButtons
@@ -143,10 +156,12 @@ public class WinHandler {
     // Shared on/off phase: simple and light. All slots flip together.
     private volatile boolean turboPhaseOn = true;
     private static final int TURBO_PERIOD_MS = 33;   // ~15 Hz
-    private static final int TURBO_TICK_MS   = 8;    // check often; flip every TURBO_PERIOD_MS
     private volatile long turboLastFlipMs = 0;
 
     private volatile boolean anyTurboEnabled = false;
+    // The phase only needs to tick while a turbo button is actually held
+    private final boolean[] turboHeld = new boolean[MAX_SLOTS];
+    private volatile boolean anyTurboHeld = false;
 
     // ------------------------------------------------------------------------
 
@@ -171,6 +186,7 @@ public class WinHandler {
                 raf.setLength(64);
                 gamepadBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64);
                 gamepadBuffer.order(ByteOrder.LITTLE_ENDIAN);
+                resetSlotState(0, gamepadBuffer);
                 Log.i(TAG, "Mapped SHM for Player 1");
             }
 
@@ -182,6 +198,7 @@ public class WinHandler {
                     raf.setLength(64);
                     extraGamepadBuffers[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64);
                     extraGamepadBuffers[i].order(ByteOrder.LITTLE_ENDIAN);
+                    resetSlotState(i + 1, extraGamepadBuffers[i]);
                     Log.i(TAG, "Mapped SHM for Player " + (i + 2));
                 }
             }
@@ -220,6 +237,7 @@ public class WinHandler {
 
     public void stop() {
         running = false;
+        wakeRumblePoller();
 
         if (socket != null) {
             socket.close();
@@ -324,16 +342,16 @@ public class WinHandler {
             if (s != null) {
                 lastVirtualState = s;
                 hasVirtualState = true;
-                writeStateToMappedBuffer(s, gamepadBuffer, true, 0);
+                writeStateToSlot(0, s);
             }
             return;
         }
 
         ensureP1Controller();
         if (currentController != null) {
-            writeStateToMappedBuffer(currentController.state, gamepadBuffer, true, 0);
+            writeStateToSlot(0, currentController.state);
         } else if (hasVirtualState && lastVirtualState != null) {
-            writeStateToMappedBuffer(lastVirtualState, gamepadBuffer, true, 0);
+            writeStateToSlot(0, lastVirtualState);
         }
     }
 
@@ -388,7 +406,7 @@ public class WinHandler {
                 boolean handled = currentController.updateStateFromMotionEvent(event);
                 if (handled) {
                     sendGamepadState();
-                    writeStateToMappedBuffer(currentController.state, gamepadBuffer, true, /*slot*/0);
+                    writeStateToSlot(0, currentController.state);
                 }
 
                 // Trigger button as analog (L2/R2)
@@ -418,7 +436,7 @@ public class WinHandler {
                 extra = extraControllers[idx];
             }
             if (extra != null && extra.updateStateFromMotionEvent(event)) {
-                writeStateToMappedBuffer(extra.state, extraGamepadBuffers[idx], false, /*slot*/assignedSlot);
+                writeStateToSlot(assignedSlot, extra.state);
                 return true;
             }
         }
@@ -474,17 +492,7 @@ public class WinHandler {
 
         if (assignedSlot == -1) return false;
 
-        ExternalController controller;
-        MappedByteBuffer buffer;
-
-        if (assignedSlot == 0) {
-            controller = currentController;
-            buffer     = gamepadBuffer;
-        } else {
-            int idx = assignedSlot - 1;
-            controller = extraControllers[idx];
-            buffer     = extraGamepadBuffers[idx];
-        }
+        ExternalController controller = assignedSlot == 0 ? currentController : extraControllers[assignedSlot - 1];
 
         if (controller == null || controller.getDeviceId() != deviceId) {
             controller = ExternalController.getController(deviceId);
@@ -508,7 +516,7 @@ public class WinHandler {
                 }
             }
 
-            writeStateToMappedBuffer(controller.state, buffer, assignedSlot == 0, /*slot*/assignedSlot);
+            writeStateToSlot(assignedSlot, controller.state);
             if (assignedSlot == 0) sendGamepadState();
         }
         return handled;
@@ -764,42 +772,80 @@ public class WinHandler {
 
     private void startRumblePoller() {
         rumblePollerThread = new Thread(() -> {
-            long lastTick = 0;
+            long interval = POLL_MIN_MS;
             while (running) {
+                pollerWakeups++;
+
                 // Rumble
-                pollSlotRumble(0, gamepadBuffer, currentController);
+                boolean rumbleChanged = pollSlotRumble(0, gamepadBuffer, currentController);
+                boolean canRumble = canRumble(0, gamepadBuffer);
                 for (int i = 0; i < extraGamepadBuffers.length; i++) {
-                    pollSlotRumble(i + 1, extraGamepadBuffers[i], extraControllers[i]);
+                    rumbleChanged |= pollSlotRumble(i + 1, extraGamepadBuffers[i], extraControllers[i]);
+                    canRumble |= canRumble(i + 1, extraGamepadBuffers[i]);
                 }
 
-                // Turbo tick
-                if (anyTurboEnabled) {
-                    // run at ~120 Hz check
-                    long now = android.os.SystemClock.uptimeMillis();
-                    if (now - lastTick >= TURBO_TICK_MS) {
-                        lastTick = now;
-                        if (maybeFlipTurboPhase()) {
-                            // Re-write SHM for all slots and send UDP once for P1
-                            republishForTurboPhase();
-                        }
-                    }
+                // Turbo phase flips share the wakeup with rumble polling
+                boolean turboActive = anyTurboEnabled && anyTurboHeld;
+                if (turboActive && maybeFlipTurboPhase()) {
+                    // Re-write SHM for all slots and send UDP once for P1
+                    republishForTurboPhase();
+                }
+
+                // Back off exponentially while the guest leaves rumble untouched
+                interval = rumbleChanged ? POLL_MIN_MS : Math.min(interval * 2, POLL_MAX_MS);
+                long timeout = canRumble ? interval : POLL_IDLE_MS;
+                if (turboActive) {
+                    long nextFlip = turboLastFlipMs + TURBO_PERIOD_MS - android.os.SystemClock.uptimeMillis();
+                    timeout = Math.max(1, Math.min(timeout, nextFlip));
                 }
 
-                try { Thread.sleep(5); } catch (InterruptedException ignored) { break; }
+                synchronized (pollerLock) {
+                    if (!running) break;
+                    if (!pollerWakeRequested) {
+                        try { pollerLock.wait(timeout); } catch (InterruptedException ignored) { break; }
+                    }
+                    pollerWakeRequested = false;
+                }
             }
         });
         rumblePollerThread.start();
     }
 
+    private void wakeRumblePoller() {
+        synchronized (pollerLock) {
+            pollerWakeRequested = true;
+            pollerLock.notify();
+        }
+    }
+
+    public long getRumblePollerWakeups() {
+        return pollerWakeups;
+    }
+
+    /** Average poller wakeups per second since the previous call. */
+    public float getRumblePollerWakeupsPerSecond() {
+        synchronized (pollerLock) {
+            long now = android.os.SystemClock.uptimeMillis();
+            long count = pollerWakeups;
+            float rate = wakeupSampleTime > 0 && now > wakeupSampleTime ? (count - wakeupSampleCount) * 1000f / (now - wakeupSampleTime) : 0;
+            wakeupSampleTime = now;
+            wakeupSampleCount = count;
+            return rate;
+        }
+    }
+
+    private boolean canRumble(int slot, MappedByteBuffer buf) {
+        return buf != null && controllerManager.isSlotEnabled(slot) && controllerManager.isVibrationEnabled(slot);
+    }
 
-    private void pollSlotRumble(int slot, MappedByteBuffer buf, ExternalController ctrl) {
-        if (buf == null) return;
-        if (!controllerManager.isSlotEnabled(slot) || !controllerManager.isVibrationEnabled(slot)) return;
+    /** Returns true if the guest changed the rumble values of this slot. */
+    private boolean pollSlotRumble(int slot, MappedByteBuffer buf, ExternalController ctrl) {
+        if (!canRumble(slot, buf)) return false;
 
         short low = buf.getShort(32);
         short high = buf.getShort(34);
 
-        if (low == lastLow[slot] && high == lastHigh[slot]) return;
+        if (low == lastLow[slot] && high == lastHigh[slot]) return false;
         lastLow[slot] = low; lastHigh[slot] = high;
 
         if (low == 0 && high == 0) {
@@ -807,6 +853,7 @@ public class WinHandler {
         } else {
             startVibration(slot, ctrl, low, high);
         }
+        return true;
     }
 
     private void startVibration(int slot, ExternalController ctrl, short low, short high) {
@@ -853,72 +900,90 @@ public class WinHandler {
 
     // ========================== SHM writing =================================
 
-    private void writeStateToMappedBuffer(GamepadState src,
-                                          MappedByteBuffer buffer,
-                                          boolean isP1,
-                                          int slotIndex) {
+    private MappedByteBuffer getSlotBuffer(int slot) {
+        if (slot == 0) return gamepadBuffer;
+        return slot > 0 && slot < MAX_PLAYERS ? extraGamepadBuffers[slot - 1] : null;
+    }
+
+    private void resetSlotState(int slot, MappedByteBuffer buffer) {
+        synchronized (buffer) {
+            shmSlots[slot] = new GamepadStateBuffer(buffer);
+        }
+    }
+
+    private static void putShort(byte[] data, int offset, int value) {
+        data[offset]     = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private void writeStateToSlot(int slot, GamepadState src) {
+        MappedByteBuffer buffer = getSlotBuffer(slot);
         if (buffer == null || src == null) return;
 
-        buffer.clear();
+        synchronized (buffer) {
+            byte[] state = shmScratch[slot];
 
-        // SHM writer: compute final LX/LY/RX/RY based on target
-        float lx = src.thumbLX, ly = src.thumbLY;
-        float rx = src.thumbRX, ry = src.thumbRY;
+            // SHM writer: compute final LX/LY/RX/RY based on target
+            float lx = src.thumbLX, ly = src.thumbLY;
+            float rx = src.thumbRX, ry = src.thumbRY;
 
-        if (isP1 && gyroEnabled) {
-            if (gyroToLeftStick) {
-                lx = Mathf.clamp(lx + gyroX, -1f, 1f);
-                ly = Mathf.clamp(ly + gyroY, -1f, 1f);
-            } else {
-                rx = Mathf.clamp(rx + gyroX, -1f, 1f);
-                ry = Mathf.clamp(ry + gyroY, -1f, 1f);
+            if (slot == 0 && gyroEnabled) {
+                if (gyroToLeftStick) {
+                    lx = Mathf.clamp(lx + gyroX, -1f, 1f);
+                    ly = Mathf.clamp(ly + gyroY, -1f, 1f);
+                } else {
+                    rx = Mathf.clamp(rx + gyroX, -1f, 1f);
+                    ry = Mathf.clamp(ry + gyroY, -1f, 1f);
+                }
             }
-        }
 
-        buffer.putShort((short) (lx * 32767));
-        buffer.putShort((short) (ly * 32767));
-        buffer.putShort((short) (rx * 32767));
-        buffer.putShort((short) (ry * 32767));
-
-        // Triggers (curved)
-        float rawL = Math.max(0f, Math.min(1f, src.triggerL));
-        float rawR = Math.max(0f, Math.min(1f, src.triggerR));
-
-        // Buttons & dpad (SDL-style ordering)
-        byte[] sdlButtons = new byte[15];
-        sdlButtons[0]  = src.isPressed(0)  ? (byte)1 : 0;  // A
-        sdlButtons[1]  = src.isPressed(1)  ? (byte)1 : 0;  // B
-        sdlButtons[2]  = src.isPressed(2)  ? (byte)1 : 0;  // X
-        sdlButtons[3]  = src.isPressed(3)  ? (byte)1 : 0;  // Y
-        sdlButtons[9]  = src.isPressed(4)  ? (byte)1 : 0;  // LB
-        sdlButtons[10] = src.isPressed(5)  ? (byte)1 : 0;  // RB
-        sdlButtons[4]  = src.isPressed(6)  ? (byte)1 : 0;  // Back
-        sdlButtons[6]  = src.isPressed(7)  ? (byte)1 : 0;  // Start
-        sdlButtons[7]  = src.isPressed(8)  ? (byte)1 : 0;  // LStick
-        sdlButtons[8]  = src.isPressed(9)  ? (byte)1 : 0;  // RStick
-        sdlButtons[11] = src.dpad[0]       ? (byte)1 : 0;  // Up
-        sdlButtons[12] = src.dpad[2]       ? (byte)1 : 0;  // Down
-        sdlButtons[13] = src.dpad[3]       ? (byte)1 : 0;  // Left
-        sdlButtons[14] = src.dpad[1]       ? (byte)1 : 0;  // Right
-
-        // apply turbo
-        applyTurboMask(slotIndex, sdlButtons);
-
-        // Note trigger gating uses the phase:
-        if (!turboPhaseOn && slotIndex >= 0 && slotIndex < includeTriggers.length && includeTriggers[slotIndex]) {
-            rawL = 0f; rawR = 0f;
-        }
+            putShort(state, 0, (short) (lx * 32767));
+            putShort(state, 2, (short) (ly * 32767));
+            putShort(state, 4, (short) (rx * 32767));
+            putShort(state, 6, (short) (ry * 32767));
+
+            // Triggers (curved)
+            float rawL = Math.max(0f, Math.min(1f, src.triggerL));
+            float rawR = Math.max(0f, Math.min(1f, src.triggerR));
+
+            // Buttons & dpad (SDL-style ordering)
+            byte[] sdlButtons = shmButtons[slot];
+            sdlButtons[0]  = src.isPressed(0)  ? (byte)1 : 0;  // A
+            sdlButtons[1]  = src.isPressed(1)  ? (byte)1 : 0;  // B
+            sdlButtons[2]  = src.isPressed(2)  ? (byte)1 : 0;  // X
+            sdlButtons[3]  = src.isPressed(3)  ? (byte)1 : 0;  // Y
+            sdlButtons[9]  = src.isPressed(4)  ? (byte)1 : 0;  // LB
+            sdlButtons[10] = src.isPressed(5)  ? (byte)1 : 0;  // RB
+            sdlButtons[4]  = src.isPressed(6)  ? (byte)1 : 0;  // Back
+            sdlButtons[5]  = 0;                                // Guide
+            sdlButtons[6]  = src.isPressed(7)  ? (byte)1 : 0;  // Start
+            sdlButtons[7]  = src.isPressed(8)  ? (byte)1 : 0;  // LStick
+            sdlButtons[8]  = src.isPressed(9)  ? (byte)1 : 0;  // RStick
+            sdlButtons[11] = src.dpad[0]       ? (byte)1 : 0;  // Up
+            sdlButtons[12] = src.dpad[2]       ? (byte)1 : 0;  // Down
+            sdlButtons[13] = src.dpad[3]       ? (byte)1 : 0;  // Left
+            sdlButtons[14] = src.dpad[1]       ? (byte)1 : 0;  // Right
+
+            // apply turbo
+            updateTurboHeld(slot, sdlButtons, rawL > 0f || rawR > 0f);
+            applyTurboMask(slot, sdlButtons);
+
+            // Note trigger gating uses the phase:
+            if (!turboPhaseOn && includeTriggers[slot]) {
+                rawL = 0f; rawR = 0f;
+            }
+
+            // Curve & write triggers after potential gating
+            float lCurve = (float) Math.sqrt(rawL);
+            float rCurve = (float) Math.sqrt(rawR);
+            putShort(state, 8, Math.round(lCurve * 65_534f) - 32_767);
+            putShort(state, 10, Math.round(rCurve * 65_534f) - 32_767);
 
-        // Curve & write triggers after potential gating
-        float lCurve = (float) Math.sqrt(rawL);
-        float rCurve = (float) Math.sqrt(rawR);
-        int lAxis = Math.round(lCurve * 65_534f) - 32_767;
-        int rAxis = Math.round(rCurve * 65_534f) - 32_767;
-        buffer.putShort((short) lAxis);
-        buffer.putShort((short) rAxis);
+            System.arraycopy(sdlButtons, 0, state, 12, BUTTON_COUNT);
+            state[12 + BUTTON_COUNT] = 0; // HAT ignored
 
-        buffer.put(sdlButtons);
-        buffer.put((byte) 0); // HAT ignored
+            shmSlots[slot].publish(state);
+        }
     }
 
     /** Virtual gamepad writes directly to P1 buffer, caches last state for gyro-only updates. */
@@ -926,7 +991,7 @@ public class WinHandler {
         if (gamepadBuffer == null || state == null) return;
         lastVirtualState = state;
         hasVirtualState = true;
-        writeStateToMappedBuffer(state, gamepadBuffer, true, /*slot*/0);
+        writeStateToSlot(0, state);
         updateVirtualActivator(state); // keep gyroActive in sync with virtual presses
     }
 
@@ -1233,6 +1298,7 @@ public class WinHandler {
         }
 
         anyTurboEnabled = any;
+        wakeRumblePoller();
     }
 
 
@@ -1282,6 +1348,25 @@ public class WinHandler {
         return false;
     }
 
+    private void updateTurboHeld(int slot, byte[] sdlButtons, boolean triggersPressed) {
+        boolean held = includeTriggers[slot] && triggersPressed;
+        boolean[] mask = turboEnabled[slot];
+        for (int i = 0; !held && i < BUTTON_COUNT && i < sdlButtons.length; i++) held = mask[i] && sdlButtons[i] != 0;
+        if (turboHeld[slot] == held) return;
+        turboHeld[slot] = held;
+
+        boolean any = false;
+        for (boolean h : turboHeld) any |= h;
+        if (any && !anyTurboHeld && anyTurboEnabled) {
+            // start autofire on-phase so the first press is not dropped, then let the poller tick
+            turboPhaseOn = true;
+            turboLastFlipMs = android.os.SystemClock.uptimeMillis();
+            anyTurboHeld = true;
+            wakeRumblePoller();
+        }
+        else anyTurboHeld = any;
+    }
+
     private void applyTurboMask(int slot, byte[] sdlButtons) {
         if (slot < 0 || slot >= MAX_SLOTS) return;
         if (turboPhaseOn) return; // on-phase => pass through
@@ -1303,16 +1388,16 @@ public class WinHandler {
             if (useVirtual && profile != null) {
                 lastVirtualState = profile.getGamepadState();
                 hasVirtualState = true;
-                writeStateToMappedBuffer(lastVirtualState, gamepadBuffer, true, 0);
+                writeStateToSlot(0, lastVirtualState);
             } else if (currentController != null) {
-                writeStateToMappedBuffer(currentController.state, gamepadBuffer, true, 0);
+                writeStateToSlot(0, currentController.state);
             }
         }
 
         // P2..P4
         for (int i = 0; i < extraGamepadBuffers.length; i++) {
             if (extraGamepadBuffers[i] != null && extraControllers[i] != null) {
-                writeStateToMappedBuffer(extraControllers[i].state, extraGamepadBuffers[i], false, i + 1);
+                writeStateToSlot(i + 1, extraControllers[i].state);
             }
         }
 
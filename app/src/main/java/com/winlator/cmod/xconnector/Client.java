@@ -3,6 +3,7 @@ package com.winlator.cmod.xconnector;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 
 public class Client {
     public final ClientSocket clientSocket;
@@ -13,6 +14,9 @@ public class Client {
     protected Thread pollThread;
     protected int shutdownFd;
     protected boolean connected;
+    protected boolean flushPending;
+    protected volatile boolean parked;
+    final ArrayDeque<Runnable> pendingBatches = new ArrayDeque<>();
 
     public Client(XConnectorEpoll connector, ClientSocket clientSocket) {
         this.connector = connector;
@@ -29,6 +33,30 @@ public class Client {
         outputStream = new XOutputStream(clientSocket, connector.getInitialOutputBufferCapacity());
         inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+
+        if (connector.isDeferredFlush() && !connector.isMultithreadedClients()) {
+            outputStream.setDeferredFlush(true);
+            outputStream.setOnPendingFlushListener(() -> connector.scheduleFlush(this));
+        }
+    }
+
+    public boolean park() {
+        if (!connector.canParkClients()) return false;
+        parked = true;
+        return true;
+    }
+
+    public void unpark() {
+        if (parked) connector.scheduleResume(this);
+    }
+
+    public boolean isParked() {
+        return parked;
+    }
+
+    protected void releaseIOStreams() {
+        if (inputStream != null) inputStream.release();
+        if (outputStream != null) outputStream.release();
     }
 
     public XInputStream getInputStream() {
@@ -4,6 +4,8 @@ import android.util.Log;
 
 import androidx.annotation.Keep;
 
+import com.winlator.cmod.core.NativeLibrary;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
@@ -13,7 +15,7 @@ public class ClientSocket {
     private final ArrayDeque<Integer> ancillaryFds = new ArrayDeque<>();
 
     static {
-        System.loadLibrary("winlator");
+        NativeLibrary.load("winlator");
     }
 
     public ClientSocket(int fd) {
@@ -0,0 +1,57 @@
+package com.winlator.cmod.xconnector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs request batches on a fixed pool of daemon threads. The batches of one client run one at a time in the order
+// they were submitted, batches of different clients run in parallel.
+class ClientWorkerPool {
+    private final ExecutorService executor;
+
+    ClientWorkerPool(int size) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(size, (runnable) -> {
+            Thread thread = new Thread(runnable, "XConnectorWorker-"+threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void execute(Client client, Runnable batch) {
+        synchronized (client.pendingBatches) {
+            client.pendingBatches.add(batch);
+            if (client.pendingBatches.size() > 1) return;
+        }
+        executor.execute(() -> runPendingBatches(client));
+    }
+
+    // The next batch of the same client is queued behind the other clients instead of running right away
+    private void runPendingBatches(Client client) {
+        Runnable batch;
+        synchronized (client.pendingBatches) {
+            batch = client.pendingBatches.peek();
+        }
+
+        try {
+            batch.run();
+        }
+        finally {
+            boolean hasPendingBatches;
+            synchronized (client.pendingBatches) {
+                client.pendingBatches.poll();
+                hasPendingBatches = !client.pendingBatches.isEmpty();
+            }
+            if (hasPendingBatches && !executor.isShutdown()) executor.execute(() -> runPendingBatches(client));
+        }
+    }
+
+    void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeout, unit);
+        }
+        catch (InterruptedException e) {}
+    }
+}
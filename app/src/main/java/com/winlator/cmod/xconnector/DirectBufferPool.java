@@ -0,0 +1,97 @@
+package com.winlator.cmod.xconnector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+public abstract class DirectBufferPool {
+    private static final int MIN_SIZE_CLASS = 12;
+    private static final int MAX_SIZE_CLASS = 24;
+    private static final ArrayDeque<ByteBuffer>[] freeBuffers = new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+    private static long maxPooledBytes = 32 * 1024 * 1024;
+    private static long pooledBytes = 0;
+    private static long acquiredBytes = 0;
+    private static long hitCount = 0;
+    private static long missCount = 0;
+
+    static {
+        for (int i = 0; i < freeBuffers.length; i++) freeBuffers[i] = new ArrayDeque<>();
+    }
+
+    public static int getSizeClassCapacity(int minCapacity) {
+        if (minCapacity <= (1 << MIN_SIZE_CLASS)) return 1 << MIN_SIZE_CLASS;
+        int capacity = Integer.highestOneBit(minCapacity - 1) << 1;
+        return capacity > 0 ? capacity : minCapacity;
+    }
+
+    private static int getSizeClass(int capacity) {
+        if (Integer.bitCount(capacity) != 1) return -1;
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        return sizeClass >= MIN_SIZE_CLASS && sizeClass <= MAX_SIZE_CLASS ? sizeClass - MIN_SIZE_CLASS : -1;
+    }
+
+    public static synchronized ByteBuffer acquire(int minCapacity) {
+        int capacity = getSizeClassCapacity(minCapacity);
+        int sizeClass = getSizeClass(capacity);
+        acquiredBytes += capacity;
+
+        ByteBuffer buffer = sizeClass != -1 ? freeBuffers[sizeClass].poll() : null;
+        if (buffer != null) {
+            pooledBytes -= capacity;
+            hitCount++;
+            buffer.clear();
+            return buffer.order(ByteOrder.BIG_ENDIAN);
+        }
+
+        missCount++;
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    public static synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int capacity = buffer.capacity();
+        acquiredBytes -= capacity;
+
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass == -1 || pooledBytes + capacity > maxPooledBytes) return;
+        freeBuffers[sizeClass].push(buffer);
+        pooledBytes += capacity;
+    }
+
+    public static synchronized void trim() {
+        for (ArrayDeque<ByteBuffer> buffers : freeBuffers) buffers.clear();
+        pooledBytes = 0;
+    }
+
+    public static synchronized long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public static synchronized void setMaxPooledBytes(long maxPooledBytes) {
+        DirectBufferPool.maxPooledBytes = maxPooledBytes;
+        for (int i = freeBuffers.length - 1; i >= 0 && pooledBytes > maxPooledBytes; i--) {
+            ArrayDeque<ByteBuffer> buffers = freeBuffers[i];
+            while (!buffers.isEmpty() && pooledBytes > maxPooledBytes) pooledBytes -= buffers.pop().capacity();
+        }
+    }
+
+    public static synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public static synchronized long getAcquiredBytes() {
+        return acquiredBytes;
+    }
+
+    public static synchronized long getResidentBytes() {
+        return pooledBytes + acquiredBytes;
+    }
+
+    public static synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public static synchronized long getMissCount() {
+        return missCount;
+    }
+}
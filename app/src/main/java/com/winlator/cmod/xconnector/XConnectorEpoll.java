@@ -4,8 +4,13 @@ import android.util.SparseArray;
 
 import androidx.annotation.Keep;
 
+import com.winlator.cmod.core.NativeLibrary;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class XConnectorEpoll implements Runnable {
     private final ConnectionHandler connectionHandler;
@@ -13,16 +18,30 @@ public class XConnectorEpoll implements Runnable {
     private final int epollFd;
     private final int serverFd;
     private final int shutdownFd;
+    private final int wakeupFd;
+    private final ByteBuffer wakeupData = ByteBuffer.allocateDirect(8);
+    private final ByteBuffer wakeupDrainData = ByteBuffer.allocateDirect(8);
     private Thread epollThread;
     private boolean running = false;
     private boolean multithreadedClients = false;
     private boolean canReceiveAncillaryMessages = false;
+    private boolean deferredFlush = false;
+    private int workerPoolSize = 0;
+    private ClientWorkerPool workerPool;
+    private final AtomicLong handledRequestCount = new AtomicLong();
+    private long lastRateSampleTime = 0;
+    private long lastRateSampleCount = 0;
     private int initialInputBufferCapacity = 4096;
     private int initialOutputBufferCapacity = 4096;
     private final SparseArray<Client> connectedClients = new SparseArray<>();
+    private final ArrayList<Client> pendingFlushClients = new ArrayList<>();
+    private final ArrayList<Client> flushingClients = new ArrayList<>();
+    private final ArrayList<Client> pendingKillClients = new ArrayList<>();
+    private final ArrayList<Client> pendingResumeClients = new ArrayList<>();
+    private final ArrayList<Client> resumingClients = new ArrayList<>();
 
     static {
-        System.loadLibrary("winlator");
+        NativeLibrary.load("winlator");
     }
 
     public XConnectorEpoll(UnixSocketConfig socketConfig, ConnectionHandler connectionHandler, RequestHandler requestHandler) {
@@ -54,12 +73,23 @@ public class XConnectorEpoll implements Runnable {
             throw new RuntimeException("Failed to add shutdown fd to epoll.");
         }
 
+        wakeupFd = createEventFd();
+        if (!addFdToEpoll(epollFd, wakeupFd)) {
+            closeFd(serverFd);
+            closeFd(shutdownFd);
+            closeFd(wakeupFd);
+            closeFd(epollFd);
+            throw new RuntimeException("Failed to add wakeup fd to epoll.");
+        }
+        wakeupData.asLongBuffer().put(1);
+
         epollThread = new Thread(this);
     }
 
     public synchronized void start() {
         if (running || epollThread == null) return;
         running = true;
+        if (isWorkerPoolEnabled()) workerPool = new ClientWorkerPool(workerPoolSize);
         epollThread.start();
     }
 
@@ -79,7 +109,11 @@ public class XConnectorEpoll implements Runnable {
 
     @Override
     public void run() {
-        while (running && doEpollIndefinitely(epollFd, serverFd, !multithreadedClients));
+        while (running && doEpollIndefinitely(epollFd, serverFd, !multithreadedClients)) {
+            if (workerPool != null) killPendingClients();
+            resumeParkedClients();
+            if (deferredFlush) flushPendingClients();
+        }
         shutdown();
     }
 
@@ -101,16 +135,32 @@ public class XConnectorEpoll implements Runnable {
 
     @Keep
     private void handleExistingConnection(int fd) {
+        if (fd == wakeupFd) {
+            drainWakeupFd();
+            return;
+        }
+
         Client client = connectedClients.get(fd);
         if (client == null) return;
 
         XInputStream inputStream = client.getInputStream();
         try {
-            if (inputStream != null) {
+            if (inputStream != null && workerPool != null) {
+                int bytesRead;
+                synchronized (client) {
+                    bytesRead = inputStream.readMoreData(canReceiveAncillaryMessages);
+                }
+
+                if (bytesRead > 0) {
+                    removeFdFromEpoll(epollFd, fd);
+                    workerPool.execute(client, () -> dispatchRequests(client));
+                }
+                else killConnection(client);
+            }
+            else if (inputStream != null) {
                 if (inputStream.readMoreData(canReceiveAncillaryMessages) > 0) {
-                    int activePosition = 0;
-                    while (running && requestHandler.handleRequest(client)) activePosition = inputStream.getActivePosition();
-                    inputStream.setActivePosition(activePosition);
+                    handleRequests(client);
+                    if (client.parked && !multithreadedClients) watchFdForHangup(epollFd, fd);
                 }
                 else killConnection(client);
             }
@@ -121,6 +171,41 @@ public class XConnectorEpoll implements Runnable {
         }
     }
 
+    @Keep
+    private void handleConnectionHangup(int fd) {
+        Client client = connectedClients.get(fd);
+        if (client != null && client.connected) killConnection(client);
+    }
+
+    private void handleRequests(Client client) throws IOException {
+        XInputStream inputStream = client.getInputStream();
+        int activePosition = inputStream.getActivePosition();
+        int requestCount = 0;
+        while (running && !client.parked && requestHandler.handleRequest(client)) {
+            activePosition = inputStream.getActivePosition();
+            requestCount++;
+        }
+        if (client.connected) inputStream.setActivePosition(activePosition);
+        handledRequestCount.addAndGet(requestCount);
+    }
+
+    private void dispatchRequests(Client client) {
+        try {
+            synchronized (client) {
+                handleRequests(client);
+                if (running && client.connected) {
+                    if (client.parked) {
+                        watchFdForHangup(epollFd, client.clientSocket.fd);
+                    }
+                    else addFdToEpoll(epollFd, client.clientSocket.fd);
+                }
+            }
+        }
+        catch (IOException e) {
+            scheduleKill(client);
+        }
+    }
+
     public SparseArray<Client> getConnectedClients() {
         return connectedClients;
     }
@@ -131,6 +216,12 @@ public class XConnectorEpoll implements Runnable {
 
     public void killConnection(Client client) {
         client.connected = false;
+        synchronized (pendingFlushClients) {
+            if (client.flushPending) {
+                pendingFlushClients.remove(client);
+                client.flushPending = false;
+            }
+        }
         connectionHandler.handleConnectionShutdown(client);
         if (multithreadedClients) {
             if (Thread.currentThread() != client.pollThread) {
@@ -150,9 +241,16 @@ public class XConnectorEpoll implements Runnable {
         else removeFdFromEpoll(epollFd, client.clientSocket.fd);
         closeFd(client.clientSocket.fd);
         connectedClients.remove(client.clientSocket.fd);
+        client.releaseIOStreams();
     }
 
     private void shutdown() {
+        if (workerPool != null) {
+            workerPool.shutdown(1, TimeUnit.SECONDS);
+            workerPool = null;
+            killPendingClients();
+        }
+
         while (connectedClients.size() > 0) {
             Client client = connectedClients.valueAt(connectedClients.size()-1);
             killConnection(client);
@@ -160,8 +258,10 @@ public class XConnectorEpoll implements Runnable {
 
         removeFdFromEpoll(epollFd, serverFd);
         removeFdFromEpoll(epollFd, shutdownFd);
+        removeFdFromEpoll(epollFd, wakeupFd);
         closeFd(serverFd);
         closeFd(shutdownFd);
+        closeFd(wakeupFd);
         closeFd(epollFd);
     }
 
@@ -197,6 +297,148 @@ public class XConnectorEpoll implements Runnable {
         this.canReceiveAncillaryMessages = canReceiveAncillaryMessages;
     }
 
+    public boolean isDeferredFlush() {
+        return deferredFlush;
+    }
+
+    public void setDeferredFlush(boolean deferredFlush) {
+        this.deferredFlush = deferredFlush;
+    }
+
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    public boolean isWorkerPoolEnabled() {
+        return workerPoolSize > 0 && !multithreadedClients;
+    }
+
+    public long getHandledRequestCount() {
+        return handledRequestCount.get();
+    }
+
+    public synchronized float sampleRequestRate() {
+        long time = System.nanoTime();
+        long count = handledRequestCount.get();
+        float rate = lastRateSampleTime > 0 ? (count - lastRateSampleCount) * 1000000000.0f / (time - lastRateSampleTime) : 0;
+        lastRateSampleTime = time;
+        lastRateSampleCount = count;
+        return rate;
+    }
+
+    private void wakeup() {
+        try {
+            (new ClientSocket(wakeupFd)).write(wakeupData);
+        }
+        catch (IOException e) {}
+    }
+
+    private void scheduleKill(Client client) {
+        synchronized (pendingKillClients) {
+            if (!pendingKillClients.contains(client)) pendingKillClients.add(client);
+        }
+        wakeup();
+    }
+
+    private void killPendingClients() {
+        synchronized (pendingKillClients) {
+            for (Client client : pendingKillClients) {
+                if (client.connected) killConnection(client);
+            }
+            pendingKillClients.clear();
+        }
+    }
+
+    boolean canParkClients() {
+        return !multithreadedClients;
+    }
+
+    void scheduleResume(Client client) {
+        synchronized (pendingResumeClients) {
+            if (!pendingResumeClients.contains(client)) pendingResumeClients.add(client);
+        }
+        if (Thread.currentThread() != epollThread) wakeup();
+    }
+
+    private void resumeParkedClients() {
+        synchronized (pendingResumeClients) {
+            if (pendingResumeClients.isEmpty()) return;
+            resumingClients.addAll(pendingResumeClients);
+            pendingResumeClients.clear();
+        }
+
+        for (Client client : resumingClients) {
+            if (workerPool != null) {
+                synchronized (client) {
+                    if (!client.connected || !client.parked) continue;
+                    client.parked = false;
+                    removeFdFromEpoll(epollFd, client.clientSocket.fd);
+                }
+                workerPool.execute(client, () -> dispatchRequests(client));
+            }
+            else {
+                if (!client.connected || !client.parked) continue;
+                client.parked = false;
+
+                try {
+                    handleRequests(client);
+                    if (client.parked) {
+                        watchFdForHangup(epollFd, client.clientSocket.fd);
+                    }
+                    else {
+                        removeFdFromEpoll(epollFd, client.clientSocket.fd);
+                        addFdToEpoll(epollFd, client.clientSocket.fd);
+                    }
+                }
+                catch (IOException e) {
+                    killConnection(client);
+                }
+            }
+        }
+        resumingClients.clear();
+    }
+
+    void scheduleFlush(Client client) {
+        boolean wakeup;
+        synchronized (pendingFlushClients) {
+            if (client.flushPending || !client.connected) return;
+            client.flushPending = true;
+            wakeup = pendingFlushClients.isEmpty() && Thread.currentThread() != epollThread;
+            pendingFlushClients.add(client);
+        }
+
+        if (wakeup) wakeup();
+    }
+
+    private void flushPendingClients() {
+        synchronized (pendingFlushClients) {
+            if (pendingFlushClients.isEmpty()) return;
+            for (Client client : pendingFlushClients) client.flushPending = false;
+            flushingClients.addAll(pendingFlushClients);
+            pendingFlushClients.clear();
+        }
+
+        for (Client client : flushingClients) {
+            try {
+                if (client.connected) client.getOutputStream().flushPending();
+            }
+            catch (IOException e) {}
+        }
+        flushingClients.clear();
+    }
+
+    private void drainWakeupFd() {
+        try {
+            wakeupDrainData.clear();
+            (new ClientSocket(wakeupFd)).read(wakeupDrainData);
+        }
+        catch (IOException e) {}
+    }
+
     private void requestShutdown() {
         try {
             ByteBuffer data = ByteBuffer.allocateDirect(8);
@@ -218,6 +460,8 @@ public class XConnectorEpoll implements Runnable {
 
     private native void removeFdFromEpoll(int epollFd, int fd);
 
+    private native boolean watchFdForHangup(int epollFd, int fd);
+
     private native boolean waitForSocketRead(int clientFd, int shutdownFd);
 
     private native int createAFUnixSocket(String path);
@@ -9,6 +9,7 @@ import java.nio.ByteOrder;
 public class XInputStream {
     private ByteBuffer activeBuffer;
     private ByteBuffer buffer;
+    private final int initialCapacity;
     public final ClientSocket clientSocket;
 
     public XInputStream(int initialCapacity) {
@@ -17,13 +18,15 @@ public class XInputStream {
 
     public XInputStream(ClientSocket clientSocket, int initialCapacity) {
         this.clientSocket = clientSocket;
-        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+        this.initialCapacity = initialCapacity;
+        this.buffer = DirectBufferPool.acquire(initialCapacity);
     }
 
     public int readMoreData(boolean canReceiveAncillaryMessages) throws IOException {
         if (activeBuffer != null) {
             if (!activeBuffer.hasRemaining()) {
                 buffer.clear();
+                shrinkInputBufferIfIdle();
             }
             else if (activeBuffer.position() > 0) {
                 int newLimit = buffer.position();
@@ -51,13 +54,29 @@ public class XInputStream {
 
     private void growInputBufferIfNecessary() {
         if (buffer.position() == buffer.capacity()) {
-            ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(buffer.order());
+            ByteBuffer newBuffer = DirectBufferPool.acquire(buffer.capacity() * 2).order(buffer.order());
             buffer.rewind();
             newBuffer.put(buffer);
+            DirectBufferPool.release(buffer);
             buffer = newBuffer;
         }
     }
 
+    private void shrinkInputBufferIfIdle() {
+        if (buffer.capacity() > DirectBufferPool.getSizeClassCapacity(initialCapacity)) {
+            ByteOrder byteOrder = buffer.order();
+            DirectBufferPool.release(buffer);
+            buffer = DirectBufferPool.acquire(initialCapacity).order(byteOrder);
+        }
+    }
+
+    public void release() {
+        if (buffer == null) return;
+        DirectBufferPool.release(buffer);
+        buffer = null;
+        activeBuffer = null;
+    }
+
     public void setByteOrder(ByteOrder byteOrder) {
         buffer.order(byteOrder);
         if (activeBuffer != null) activeBuffer.order(byteOrder);
@@ -5,14 +5,28 @@ import com.winlator.cmod.xserver.XServer;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class XOutputStream {
     private static final byte[] ZERO = new byte[64];
+    private static final byte EVENT_SIZE = 32;
+    private static final int SHRINK_AFTER_SMALL_FLUSHES = 64;
+    private static final AtomicLong totalMessageCount = new AtomicLong();
+    private static final AtomicLong totalFlushCount = new AtomicLong();
     public ByteBuffer buffer;
     public final ClientSocket clientSocket;
     private final ReentrantLock lock = new ReentrantLock();
+    private final OutputStreamLock streamLock = new OutputStreamLock();
     private int ancillaryFd = -1;
+    private boolean deferredFlush = false;
+    private int flushThreshold = 16384;
+    private final int initialCapacity;
+    private boolean released = false;
+    private int smallFlushCount = 0;
+    private Runnable onPendingFlushListener;
+    private int coalescePosition = -1;
+    private int coalesceKey;
 
     public XOutputStream(int initialCapacity) {
         this(null, initialCapacity);
@@ -20,7 +34,8 @@ public class XOutputStream {
 
     public XOutputStream(ClientSocket clientSocket, int initialCapacity) {
         this.clientSocket = clientSocket;
-        buffer = ByteBuffer.allocateDirect(initialCapacity);
+        this.initialCapacity = initialCapacity;
+        buffer = DirectBufferPool.acquire(initialCapacity);
     }
 
     public void setByteOrder(ByteOrder byteOrder) {
@@ -31,6 +46,34 @@ public class XOutputStream {
         this.ancillaryFd = ancillaryFd;
     }
 
+    public boolean isDeferredFlush() {
+        return deferredFlush;
+    }
+
+    public void setDeferredFlush(boolean deferredFlush) {
+        this.deferredFlush = deferredFlush;
+    }
+
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    public void setFlushThreshold(int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    public void setOnPendingFlushListener(Runnable onPendingFlushListener) {
+        this.onPendingFlushListener = onPendingFlushListener;
+    }
+
+    public static long getTotalMessageCount() {
+        return totalMessageCount.get();
+    }
+
+    public static long getTotalFlushCount() {
+        return totalFlushCount.get();
+    }
+
     public void writeByte(byte value) {
         ensureSpaceIsAvailable(1);
         buffer.put(value);
@@ -73,12 +116,22 @@ public class XOutputStream {
         buffer.put(data);
     }
 
+    public ByteBuffer reserve(int length) {
+        ensureSpaceIsAvailable(length);
+        int position = buffer.position();
+        ByteBuffer region = buffer.duplicate();
+        region.limit(position + length);
+        buffer.position(position + length);
+        return region.slice();
+    }
+
     public void writePad(int length) {
         write(ZERO, 0, length);
     }
 
     private void flush() throws IOException {
-        if (buffer.position() != 0) {
+        int length = buffer.position();
+        if (length != 0) {
             buffer.flip();
 
             if (ancillaryFd != -1) {
@@ -88,31 +141,106 @@ public class XOutputStream {
             else clientSocket.write(buffer);
 
             buffer.clear();
+            coalescePosition = -1;
+            totalFlushCount.incrementAndGet();
+            shrinkBufferIfIdle(length);
+        }
+    }
+
+    // A grown buffer goes back to the pool only after a run of flushes that would have fit the initial one, so a
+    // client that sends a large reply every few frames keeps it instead of reacquiring it each time
+    private void shrinkBufferIfIdle(int flushedLength) {
+        if (released) return;
+        int initialSizeClassCapacity = DirectBufferPool.getSizeClassCapacity(initialCapacity);
+        if (buffer.capacity() <= initialSizeClassCapacity || flushedLength > initialSizeClassCapacity) {
+            smallFlushCount = 0;
+        }
+        else if (++smallFlushCount == SHRINK_AFTER_SMALL_FLUSHES) {
+            smallFlushCount = 0;
+            ByteOrder byteOrder = buffer.order();
+            DirectBufferPool.release(buffer);
+            buffer = DirectBufferPool.acquire(initialCapacity).order(byteOrder);
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            if (released) return;
+            released = true;
+            ByteOrder byteOrder = buffer.order();
+            DirectBufferPool.release(buffer);
+            buffer = ByteBuffer.allocateDirect(0).order(byteOrder);
+        }
+        finally {
+            lock.unlock();
         }
     }
 
+    public void flushPending() throws IOException {
+        lock.lock();
+        try {
+            flush();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean rewindCoalescedEvent(int key) {
+        if (coalescePosition == -1 || coalesceKey != key || coalescePosition + EVENT_SIZE != buffer.position()) return false;
+        buffer.position(coalescePosition);
+        return true;
+    }
+
+    public void markCoalescedEvent(int key) {
+        coalescePosition = buffer.position() - EVENT_SIZE;
+        coalesceKey = key;
+    }
+
+    public void flushIfFull() throws IOException {
+        if (!lock.isHeldByCurrentThread() || buffer.position() < flushThreshold) return;
+        flush();
+        streamLock.startPosition = -1;
+    }
+
     public XStreamLock lock() {
-        return new OutputStreamLock();
+        lock.lock();
+        if (lock.getHoldCount() == 1) streamLock.startPosition = buffer.position();
+        return streamLock;
     }
 
     private void ensureSpaceIsAvailable(int length) {
         int position = buffer.position();
         if ((buffer.capacity() - position) >= length) return;
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() + length).order(buffer.order());
-        buffer.rewind();
-        newBuffer.put(buffer).position(position);
+        ByteBuffer newBuffer = released ? ByteBuffer.allocateDirect(position + length) : DirectBufferPool.acquire(position + length);
+        newBuffer.order(buffer.order());
+        buffer.flip();
+        newBuffer.put(buffer);
+        if (!released) DirectBufferPool.release(buffer);
         buffer = newBuffer;
     }
 
     private class OutputStreamLock implements XStreamLock {
-        public OutputStreamLock() {
-            lock.lock();
+        private int startPosition;
+
+        private boolean mustFlush() {
+            if (!deferredFlush || ancillaryFd != -1 || startPosition == -1 || buffer.position() >= flushThreshold) return true;
+            if (buffer.position() == startPosition) return false;
+            byte responseCode = buffer.get(startPosition);
+            return responseCode == 0 || responseCode == 1;
         }
 
         @Override
         public void close() throws IOException {
             try {
-                flush();
+                if (lock.getHoldCount() > 1) return;
+                if (buffer.position() > startPosition) totalMessageCount.incrementAndGet();
+
+                if (mustFlush()) {
+                    flush();
+                }
+                else if (buffer.position() > 0 && onPendingFlushListener != null) onPendingFlushListener.run();
             }
             finally {
                 lock.unlock();
@@ -11,6 +11,7 @@ public class XServerComponent extends EnvironmentComponent {
     private XConnectorEpoll connector;
     private final XServer xServer;
     private final UnixSocketConfig socketConfig;
+    private int workerPoolSize = 0;
 
     public XServerComponent(XServer xServer, UnixSocketConfig socketConfig) {
         this.xServer = xServer;
@@ -23,6 +24,8 @@ public class XServerComponent extends EnvironmentComponent {
         connector = new XConnectorEpoll(socketConfig, new XClientConnectionHandler(xServer), new XClientRequestHandler());
         connector.setInitialInputBufferCapacity(262144);
         connector.setCanReceiveAncillaryMessages(true);
+        connector.setDeferredFlush(true);
+        connector.setWorkerPoolSize(workerPoolSize);
         connector.start();
     }
 
@@ -37,4 +40,13 @@ public class XServerComponent extends EnvironmentComponent {
     public XServer getXServer() {
         return xServer;
     }
+
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    // Requests are handled on this many worker threads instead of the epoll thread, 0 keeps the single thread
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
 }
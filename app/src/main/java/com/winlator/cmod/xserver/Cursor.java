@@ -4,17 +4,15 @@ public class Cursor extends XResource {
     public final int hotSpotX;
     public final int hotSpotY;
     public final Drawable cursorImage;
-    public final Drawable sourceImage;
-    public final Drawable maskImage;
+    final long imageKey;
     private boolean visible = true;
 
-    public Cursor(int id, int hotSpotX, int hotSpotY, Drawable cursorImage, Drawable sourceImage, Drawable maskImage) {
+    public Cursor(int id, int hotSpotX, int hotSpotY, Drawable cursorImage, long imageKey) {
         super(id);
         this.hotSpotX = hotSpotX;
         this.hotSpotY = hotSpotY;
         this.cursorImage = cursorImage;
-        this.sourceImage = sourceImage;
-        this.maskImage = maskImage;
+        this.imageKey = imageKey;
     }
 
     public boolean isVisible() {
@@ -24,4 +22,4 @@ public class Cursor extends XResource {
     public void setVisible(boolean visible) {
         this.visible = visible;
     }
-}
+}
\ No newline at end of file
@@ -1,12 +1,50 @@
 package com.winlator.cmod.xserver;
 
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 public class CursorManager extends XResourceManager {
     private final SparseArray<Cursor> cursors = new SparseArray<>();
+    private final LongSparseArray<CursorImage> cursorImages = new LongSparseArray<>();
     private final DrawableManager drawableManager;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    // Composed cursor image shared by every cursor created from the same source, mask and colours. The hash only
+    // selects the bucket, so each image keeps a copy of its inputs to tell colliding cursors apart.
+    static class CursorImage {
+        private final short width;
+        private final short height;
+        private final byte depth;
+        private final int foreColor;
+        private final int backColor;
+        private final byte[] sourceData;
+        private final byte[] maskData;
+        private Drawable drawable;
+        private boolean visible = true;
+        private int refCount = 0;
+        private CursorImage next;
+
+        CursorImage(short width, short height, byte depth, int foreColor, int backColor, ByteBuffer sourceData, ByteBuffer maskData) {
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.foreColor = foreColor;
+            this.backColor = backColor;
+            this.sourceData = copyData(sourceData);
+            this.maskData = maskData != null ? copyData(maskData) : null;
+        }
+
+        boolean matches(short width, short height, byte depth, int foreColor, int backColor, ByteBuffer sourceData, ByteBuffer maskData) {
+            return this.width == width && this.height == height && this.depth == depth &&
+                   this.foreColor == foreColor && this.backColor == backColor &&
+                   equalsData(this.sourceData, sourceData) &&
+                   (this.maskData != null ? maskData != null && equalsData(this.maskData, maskData) : maskData == null);
+        }
+    }
 
     public CursorManager(DrawableManager drawableManager) {
         this.drawableManager = drawableManager;
@@ -16,18 +54,133 @@ public class CursorManager extends XResourceManager {
         return cursors.get(id);
     }
 
-    public Cursor createCursor(int id, short x, short y, Pixmap sourcePixmap, Pixmap maskPixmap) {
+    public Cursor createCursor(int id, short x, short y, Pixmap sourcePixmap, Pixmap maskPixmap, byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue) {
         if (cursors.indexOfKey(id) >= 0) return null;
-        Drawable drawable = drawableManager.createDrawable(0, sourcePixmap.drawable.width, sourcePixmap.drawable.height, sourcePixmap.drawable.visual);
-        Cursor cursor = new Cursor(id, x, y, drawable, sourcePixmap.drawable, maskPixmap != null ? maskPixmap.drawable : null);
+        Drawable sourceImage = sourcePixmap.drawable;
+        Drawable maskImage = maskPixmap != null ? maskPixmap.drawable : null;
+        int foreColor = ((foreRed & 0xff) << 16) | ((foreGreen & 0xff) << 8) | (foreBlue & 0xff);
+        int backColor = ((backRed & 0xff) << 16) | ((backGreen & 0xff) << 8) | (backBlue & 0xff);
+        ByteBuffer sourceData = sourceImage.getData();
+        ByteBuffer maskData = maskImage != null ? maskImage.getData() : null;
+        byte depth = sourceImage.visual.depth;
+        long key = hashCursorImage(sourceImage.width, sourceImage.height, depth, foreColor, backColor, sourceData, maskData);
+
+        CursorImage head = cursorImages.get(key);
+        CursorImage cursorImage = head;
+        while (cursorImage != null && !cursorImage.matches(sourceImage.width, sourceImage.height, depth, foreColor, backColor, sourceData, maskData)) {
+            cursorImage = cursorImage.next;
+        }
+
+        if (cursorImage != null) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+            cursorImage = new CursorImage(sourceImage.width, sourceImage.height, depth, foreColor, backColor, sourceData, maskData);
+            cursorImage.drawable = drawableManager.createDrawable(0, sourceImage.width, sourceImage.height, sourceImage.visual);
+            if (maskImage != null) {
+                cursorImage.visible = !isEmptyMaskImage(maskImage);
+                if (cursorImage.visible) cursorImage.drawable.drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, sourceImage, maskImage);
+            }
+            cursorImage.next = head;
+            cursorImages.put(key, cursorImage);
+        }
+
+        cursorImage.refCount++;
+        Cursor cursor = new Cursor(id, x, y, cursorImage.drawable, key);
+        cursor.setVisible(cursorImage.visible);
         cursors.put(id, cursor);
         triggerOnCreateResourceListener(cursor);
         return cursor;
     }
 
     public void freeCursor(int id) {
-        triggerOnFreeResourceListener(cursors.get(id));
+        Cursor cursor = cursors.get(id);
+        if (cursor == null) return;
         cursors.remove(id);
+
+        CursorImage previous = null;
+        CursorImage cursorImage = cursorImages.get(cursor.imageKey);
+        while (cursorImage != null && cursorImage.drawable != cursor.cursorImage) {
+            previous = cursorImage;
+            cursorImage = cursorImage.next;
+        }
+
+        if (cursorImage != null && --cursorImage.refCount == 0) {
+            if (previous != null) {
+                previous.next = cursorImage.next;
+            }
+            else if (cursorImage.next != null) {
+                cursorImages.put(cursor.imageKey, cursorImage.next);
+            }
+            else cursorImages.remove(cursor.imageKey);
+        }
+        triggerOnFreeResourceListener(cursor);
+    }
+
+    // True while another live cursor still shares the image, so its texture must be kept
+    public boolean isCursorImageShared(Drawable cursorImage) {
+        for (int i = 0; i < cursorImages.size(); i++) {
+            for (CursorImage image = cursorImages.valueAt(i); image != null; image = image.next) {
+                if (image.drawable == cursorImage) return true;
+            }
+        }
+        return false;
+    }
+
+    public int getCursorImageCount() {
+        int count = 0;
+        for (int i = 0; i < cursorImages.size(); i++) {
+            for (CursorImage image = cursorImages.valueAt(i); image != null; image = image.next) count++;
+        }
+        return count;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public float getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? (float)hitCount / total : 0;
+    }
+
+    static long hashCursorImage(short width, short height, byte depth, int foreColor, int backColor, ByteBuffer sourceData, ByteBuffer maskData) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + width;
+        hash = 31 * hash + height;
+        hash = 31 * hash + depth;
+        hash = 31 * hash + foreColor;
+        hash = 31 * hash + backColor;
+        hash = hashData(hash, sourceData);
+        return maskData != null ? hashData(31 * hash + 1, maskData) : hash;
+    }
+
+    private static long hashData(long hash, ByteBuffer data) {
+        int limit = data.limit();
+        int i = 0;
+        for (; i + 8 <= limit; i += 8) hash = 31 * hash + data.getLong(i);
+        for (; i < limit; i++) hash = 31 * hash + data.get(i);
+        return hash ^ (hash >>> 29);
+    }
+
+    private static byte[] copyData(ByteBuffer data) {
+        byte[] bytes = new byte[data.limit()];
+        ByteBuffer source = data.duplicate();
+        source.position(0);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static boolean equalsData(byte[] bytes, ByteBuffer data) {
+        if (data.limit() != bytes.length) return false;
+        ByteBuffer source = data.duplicate();
+        source.position(0);
+        return source.equals(ByteBuffer.wrap(bytes));
     }
 
     private static boolean isEmptyMaskImage(Drawable maskImage) {
@@ -41,12 +194,4 @@ public class CursorManager extends XResourceManager {
         }
         return result;
     }
-
-    public void recolorCursor(Cursor cursor, byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue) {
-        if (cursor.maskImage != null) {
-            boolean visible = !isEmptyMaskImage(cursor.maskImage);
-            cursor.setVisible(visible);
-            if (visible) cursor.cursorImage.drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, cursor.sourceImage, cursor.maskImage);
-        }
-    }
 }
\ No newline at end of file
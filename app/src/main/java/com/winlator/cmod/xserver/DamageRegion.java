@@ -0,0 +1,123 @@
+package com.winlator.cmod.xserver;
+
+public class DamageRegion {
+    public static final byte MAX_RECTS = 16;
+    public final short width;
+    public final short height;
+    private final int[] rects = new int[MAX_RECTS * 4];
+    private int rectCount = 0;
+    private boolean full = false;
+
+    public DamageRegion(int width, int height) {
+        this.width = (short)width;
+        this.height = (short)height;
+    }
+
+    public void add(int x, int y, int width, int height) {
+        if (full) return;
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + width, this.width);
+        int y1 = Math.min(y + height, this.height);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        if (x0 == 0 && y0 == 0 && x1 == this.width && y1 == this.height) {
+            setFull();
+            return;
+        }
+
+        int i = 0;
+        while (i < rectCount) {
+            int offset = i * 4;
+            int rx0 = rects[offset+0];
+            int ry0 = rects[offset+1];
+            int rx1 = rects[offset+2];
+            int ry1 = rects[offset+3];
+
+            if (x0 >= rx0 && y0 >= ry0 && x1 <= rx1 && y1 <= ry1) return;
+
+            int ux0 = Math.min(x0, rx0);
+            int uy0 = Math.min(y0, ry0);
+            int ux1 = Math.max(x1, rx1);
+            int uy1 = Math.max(y1, ry1);
+            int unionArea = (ux1 - ux0) * (uy1 - uy0);
+            if (unionArea <= (x1 - x0) * (y1 - y0) + (rx1 - rx0) * (ry1 - ry0)) {
+                removeRect(i);
+                x0 = ux0;
+                y0 = uy0;
+                x1 = ux1;
+                y1 = uy1;
+                i = 0;
+            }
+            else i++;
+        }
+
+        if (rectCount == MAX_RECTS) {
+            for (i = 0; i < rectCount; i++) {
+                int offset = i * 4;
+                x0 = Math.min(x0, rects[offset+0]);
+                y0 = Math.min(y0, rects[offset+1]);
+                x1 = Math.max(x1, rects[offset+2]);
+                y1 = Math.max(y1, rects[offset+3]);
+            }
+            rectCount = 0;
+        }
+
+        int offset = rectCount * 4;
+        rects[offset+0] = x0;
+        rects[offset+1] = y0;
+        rects[offset+2] = x1;
+        rects[offset+3] = y1;
+        rectCount++;
+    }
+
+    private void removeRect(int index) {
+        rectCount--;
+        if (index != rectCount) System.arraycopy(rects, rectCount * 4, rects, index * 4, 4);
+    }
+
+    public void setFull() {
+        full = true;
+        rectCount = 0;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public boolean isEmpty() {
+        return !full && rectCount == 0;
+    }
+
+    public void clear() {
+        full = false;
+        rectCount = 0;
+    }
+
+    public int getRectCount() {
+        return full ? 1 : rectCount;
+    }
+
+    public short getX(int index) {
+        return (short)(full ? 0 : rects[index * 4 + 0]);
+    }
+
+    public short getY(int index) {
+        return (short)(full ? 0 : rects[index * 4 + 1]);
+    }
+
+    public short getWidth(int index) {
+        return (short)(full ? width : rects[index * 4 + 2] - rects[index * 4 + 0]);
+    }
+
+    public short getHeight(int index) {
+        return (short)(full ? height : rects[index * 4 + 3] - rects[index * 4 + 1]);
+    }
+
+    public int getArea() {
+        if (full) return width * height;
+        int area = 0;
+        for (int i = 0; i < rectCount; i++) area += getWidth(i) * getHeight(i);
+        return area;
+    }
+}
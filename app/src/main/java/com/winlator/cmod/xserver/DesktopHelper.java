@@ -2,6 +2,7 @@ package com.winlator.cmod.xserver;
 
 import androidx.collection.ArrayMap;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 public abstract class DesktopHelper {
@@ -65,6 +66,6 @@ public abstract class DesktopHelper {
         }
 
         byte[] data = sb.toString().getBytes(XServer.LATIN1_CHARSET);
-        xServer.windowManager.rootWindow.modifyProperty(atom, type, Property.Format.BYTE_ARRAY, Property.Mode.APPEND, data);
+        xServer.windowManager.rootWindow.modifyProperty(atom, type, Property.Format.BYTE_ARRAY, Property.Mode.APPEND, ByteBuffer.wrap(data));
     }
 }
\ No newline at end of file
@@ -3,25 +3,38 @@ package com.winlator.cmod.xserver;
 import android.graphics.Bitmap;
 
 import com.winlator.cmod.core.Callback;
+import com.winlator.cmod.core.NativeLibrary;
 import com.winlator.cmod.math.Mathf;
 import com.winlator.cmod.renderer.GPUImage;
 import com.winlator.cmod.renderer.Texture;
+import com.winlator.cmod.xconnector.XOutputStream;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Drawable extends XResource {
+    public enum Type {WINDOW, PIXMAP, OTHER}
+    private static final int IMAGE_CHUNK_SIZE = 1024 * 1024;
     public final short width;
     public final short height;
     public final Visual visual;
     private Texture texture = new Texture();
     private ByteBuffer data;
+    private Type type = Type.OTHER;
+    private int residentBytes = 0;
+    private boolean detached = false;
+    private volatile boolean evictable = false;
+    private final DamageRegion damageRegion;
     private Runnable onDrawListener;
     private Callback<Drawable> onDestroyListener;
     public final Object renderLock = new Object();
+    private final ReentrantReadWriteLock pixelLock = new ReentrantReadWriteLock();
 
     static {
-        System.loadLibrary("winlator");
+        NativeLibrary.load("winlator");
     }
 
     public Drawable(int id, int width, int height, Visual visual) {
@@ -29,36 +42,148 @@ public class Drawable extends XResource {
         this.width = (short)width;
         this.height = (short)height;
         this.visual = visual;
-        this.data = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
-        if (this.data == null) {
-            throw new IllegalStateException("Drawable.data initialized as null!");
-        }
+        this.damageRegion = new DamageRegion(width, height);
     }
 
     public static Drawable fromBitmap(Bitmap bitmap) {
         Drawable drawable = new Drawable(0, bitmap.getWidth(), bitmap.getHeight(), null);
-        fromBitmap(bitmap, drawable.data);
+        fromBitmap(bitmap, drawable.getData());
         return drawable;
     }
 
+    // The backing store is allocated on first use, callers must hold renderLock. The pixel lock is always taken
+    // before renderLock, never while holding it.
+    private ByteBuffer ensureData() {
+        if (data == null) {
+            data = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+            if (!detached) {
+                residentBytes = data.capacity();
+                DrawableMemory.addResident(type, residentBytes);
+                if (evictable) DrawableMemory.setEvictable(this, true);
+            }
+        }
+        else if (evictable) DrawableMemory.touch(this);
+        return data;
+    }
+
+    private void releaseResidentBytes() {
+        if (residentBytes > 0) {
+            DrawableMemory.addResident(type, -residentBytes);
+            residentBytes = 0;
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        synchronized (renderLock) {
+            if (residentBytes > 0) {
+                DrawableMemory.addResident(this.type, -residentBytes);
+                DrawableMemory.addResident(type, residentBytes);
+            }
+            this.type = type;
+        }
+    }
+
+    public int getResidentBytes() {
+        return residentBytes;
+    }
+
+    public boolean hasData() {
+        return data != null;
+    }
+
+    // Unmapped window contents may lose their pixels under memory pressure, the client redraws them on Expose
+    public void setEvictable(boolean evictable) {
+        synchronized (renderLock) {
+            this.evictable = evictable && !detached;
+            DrawableMemory.setEvictable(this, this.evictable && residentBytes > 0);
+        }
+    }
+
+    // Pixel contents are read under the shared side (GetImage, CopyArea source, texture upload) and written under
+    // the exclusive side, so readers of the same drawable do not wait for each other
+    public XLock lockPixels(boolean shared) {
+        if (!shared) LockManager.checkNotUpgrading(pixelLock);
+        Lock lock = shared ? pixelLock.readLock() : pixelLock.writeLock();
+        lock.lock();
+        return lock::unlock;
+    }
+
+    // A busy drawable stays queued, an evicted one is queued again once its data is reallocated
+    long evictData() {
+        if (!pixelLock.writeLock().tryLock()) return 0;
+        try {
+            synchronized (renderLock) {
+                DrawableMemory.setEvictable(this, false);
+                if (!evictable || residentBytes == 0) return 0;
+                int bytes = residentBytes;
+                releaseResidentBytes();
+                data = null;
+                return bytes;
+            }
+        }
+        finally {
+            pixelLock.writeLock().unlock();
+        }
+    }
+
+    // Stops accounting this drawable once it is removed, the buffer itself is reclaimed with the object
+    public void detachBackingStore() {
+        synchronized (renderLock) {
+            detached = true;
+            releaseResidentBytes();
+        }
+        setEvictable(false);
+    }
+
     public Texture getTexture() {
         return texture;
     }
 
     public void setTexture(Texture texture) {
-        if (texture instanceof GPUImage) data = ((GPUImage)texture).getVirtualData();
+        if (texture instanceof GPUImage) {
+            try (XLock lock = lockPixels(false)) {
+                synchronized (renderLock) {
+                    releaseResidentBytes();
+                    data = ((GPUImage)texture).getVirtualData();
+                }
+            }
+        }
         this.texture = texture;
     }
 
     public ByteBuffer getData() {
-        return data;
+        synchronized (renderLock) {
+            return ensureData();
+        }
     }
 
     public void setData(ByteBuffer data) {
         if (data == null) {
             throw new IllegalArgumentException("Attempting to set Drawable.data to null!");
         }
-        this.data = data;
+        try (XLock lock = lockPixels(false)) {
+            synchronized (renderLock) {
+                releaseResidentBytes();
+                this.data = data;
+            }
+        }
+    }
+
+    public DamageRegion getDamageRegion() {
+        return damageRegion;
+    }
+
+    public void markDamaged(int x, int y, int width, int height) {
+        synchronized (renderLock) {
+            damageRegion.add(x, y, width, height);
+        }
+        if (texture != null) texture.setNeedsUpdate(true);
+        if (onDrawListener != null) onDrawListener.run();
+        DrawableMemory.trimIfOverBudget();
     }
 
     private short getStride() {
@@ -81,39 +206,64 @@ public class Drawable extends XResource {
         this.onDestroyListener = onDestroyListener;
     }
 
-    public void drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight) {
-        if (depth == 1) {
-            drawBitmap(width, height, data, this.data);
+    // Returns the number of image bytes read from data
+    public int drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight) {
+        int length = 0;
+        try (XLock lock = lockPixels(false)) {
+            ByteBuffer dstData = getData();
+            if (depth == 1) {
+                drawBitmap(width, height, data, dstData);
+                length = (((width + 31) >> 5) << 2) * height;
+            }
+            else if (depth == 24 || depth == 32) {
+                dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
+                dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
+                if ((dstX + width) > this.width) width = (short)((this.width - dstX));
+                if ((dstY + height) > this.height) height = (short)((this.height - dstY));
+
+                copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, dstData);
+                if (width > 0 && height > 0) length = width * height * 4;
+            }
+
+            dstData.rewind();
+            data.rewind();
         }
-        else if (depth == 24 || depth == 32) {
-            dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
-            dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
-            if ((dstX + width) > this.width) width = (short)((this.width - dstX));
-            if ((dstY + height) > this.height) height = (short)((this.height - dstY));
 
-            copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
+        if (depth == 1) {
+            markDamaged(0, 0, width, height);
         }
-
-        this.data.rewind();
-        data.rewind();
-
-        texture.setNeedsUpdate(true);
-        if (onDrawListener != null) onDrawListener.run();
+        else markDamaged(dstX, dstY, width, height);
+        return length;
     }
 
-    public ByteBuffer getImage(short x, short y, short width, short height) {
-        ByteBuffer dstData = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+    public void writeImage(short x, short y, short width, short height, XOutputStream outputStream) throws IOException {
+        int length = width * height * 4;
 
         x = (short)Mathf.clamp(x, 0, this.width-1);
         y = (short)Mathf.clamp(y, 0, this.height-1);
         if ((x + width) > this.width) width = (short)(this.width - x);
         if ((y + height) > this.height) height = (short)(this.height - y);
 
-        copyArea(x, y, (short)0, (short)0, width, height, this.getStride(), width, this.data, dstData);
+        int written = 0;
+        if (width > 0 && height > 0) {
+            int rowLength = width * 4;
+            int rowsPerChunk = Math.max(1, IMAGE_CHUNK_SIZE / rowLength);
+            for (int row = 0; row < height; row += rowsPerChunk) {
+                short rows = (short)Math.min(rowsPerChunk, height - row);
+                ByteBuffer region = outputStream.reserve(rows * rowLength);
+                try (XLock lock = lockPixels(true)) {
+                    copyArea(x, (short)(y + row), (short)0, (short)0, width, rows, this.getStride(), width, getData(), region);
+                }
+                written += rows * rowLength;
+                outputStream.flushIfFull();
+            }
+        }
 
-        this.data.rewind();
-        dstData.rewind();
-        return dstData;
+        while (written < length) {
+            int padding = Math.min(length - written, 64);
+            outputStream.writePad(padding);
+            written += padding;
+        }
     }
 
     public void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, Drawable drawable) {
@@ -126,16 +276,20 @@ public class Drawable extends XResource {
         if ((dstX + width) > this.width) width = (short)(this.width - dstX);
         if ((dstY + height) > this.height) height = (short)(this.height - dstY);
 
-        if (gcFunction == GraphicsContext.Function.COPY) {
-            copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
+        // Pixel locks are taken in drawable id order, the source only needs the shared side
+        Drawable first = id <= drawable.id ? this : drawable;
+        Drawable second = first == this ? drawable : this;
+        try (XLock firstLock = first.lockPixels(first != this);
+             XLock secondLock = second != first ? second.lockPixels(second != this) : null) {
+            ByteBuffer srcData = drawable.getData();
+            ByteBuffer dstData = getData();
+            if (gcFunction == GraphicsContext.Function.COPY) {
+                copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), srcData, dstData);
+            }
+            else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), srcData, dstData, gcFunction.ordinal());
         }
-        else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
-
-        this.data.rewind();
-        drawable.data.rewind();
 
-        texture.setNeedsUpdate(true);
-        if (onDrawListener != null) onDrawListener.run();
+        markDamaged(dstX, dstY, width, height);
     }
 
     public void fillColor(int color) {
@@ -148,11 +302,11 @@ public class Drawable extends XResource {
         if ((x + width) > this.width) width = (short)((this.width - x));
         if ((y + height) > this.height) height = (short)((this.height - y));
 
-        fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
-        this.data.rewind();
+        try (XLock lock = lockPixels(false)) {
+            fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), getData());
+        }
 
-        texture.setNeedsUpdate(true);
-        if (onDrawListener != null) onDrawListener.run();
+        markDamaged(x, y, width, height);
     }
 
     public void drawLines(int color, int lineWidth, short... points) {
@@ -167,20 +321,19 @@ public class Drawable extends XResource {
         x1 = Mathf.clamp(x1, 0, width-lineWidth);
         y1 = Mathf.clamp(y1, 0, height-lineWidth);
 
-        drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
-
-        this.data.rewind();
+        try (XLock lock = lockPixels(false)) {
+            drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), getData());
+        }
 
-        texture.setNeedsUpdate(true);
-        if (onDrawListener != null) onDrawListener.run();
+        markDamaged(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + lineWidth, Math.abs(y1 - y0) + lineWidth);
     }
 
     public void drawAlphaMaskedBitmap(byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue, Drawable srcDrawable, Drawable maskDrawable) {
-        drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, srcDrawable.data, maskDrawable.data, this.data);
-        this.data.rewind();
+        try (XLock lock = lockPixels(false)) {
+            drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, srcDrawable.getData(), maskDrawable.getData(), getData());
+        }
 
-        texture.setNeedsUpdate(true);
-        if (onDrawListener != null) onDrawListener.run();
+        markDamaged(0, 0, width, height);
     }
 
     private static native void drawBitmap(short width, short height, ByteBuffer srcData, ByteBuffer dstData);
@@ -15,11 +15,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
     }
 
     public Drawable getDrawable(int id) {
-        Drawable drawable = drawables.get(id);
-        if (drawable != null && drawable.getData() == null) {
-            throw new IllegalStateException("Drawable with id " + id + " has null data when fetched.");
-        }
-        return drawable;
+        return drawables.get(id);
     }
 
 
@@ -28,18 +24,9 @@ public class DrawableManager extends XResourceManager implements XResourceManage
     }
 
     public Drawable createDrawable(int id, short width, short height, Visual visual) {
-        if (id == 0) {
-            Drawable drawable = new Drawable(id, width, height, visual);
-            if (drawable.getData() == null) {
-                throw new IllegalStateException("Drawable with id 0 has null data at creation.");
-            }
-            return drawable;
-        }
+        if (id == 0) return new Drawable(id, width, height, visual);
         if (drawables.indexOfKey(id) >= 0) return null;
         Drawable drawable = new Drawable(id, width, height, visual);
-        if (drawable.getData() == null) {
-            throw new IllegalStateException("Drawable with id " + id + " has null data at creation.");
-        }
         drawables.put(id, drawable);
         return drawable;
     }
@@ -49,9 +36,6 @@ public class DrawableManager extends XResourceManager implements XResourceManage
         if (drawable == null) {
             throw new IllegalStateException("Attempting to remove non-existent Drawable with id " + id);
         }
-        if (drawable.getData() == null) {
-            throw new IllegalStateException("Drawable with id " + id + " has null data during removal.");
-        }
 
         final Texture texture = drawable.getTexture();
         if (texture != null) xServer.getRenderer().xServerView.queueEvent(texture::destroy);
@@ -59,6 +43,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
         Callback<Drawable> onDestroyListener = drawable.getOnDestroyListener();
         if (onDestroyListener != null) onDestroyListener.call(drawable);
 
+        drawable.detachBackingStore();
         drawable.setOnDrawListener(null);
         drawables.remove(id);
     }
@@ -68,11 +53,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
     public void onFreeResource(XResource resource) {
         if (resource instanceof Pixmap) {
             Pixmap pixmap = (Pixmap) resource;
-            Drawable drawable = pixmap.drawable;
-            if (drawable.getData() == null) {
-                throw new IllegalStateException("Drawable for Pixmap with id " + pixmap.drawable.id + " has null data during free.");
-            }
-            removeDrawable(drawable.id);
+            removeDrawable(pixmap.drawable.id);
         }
     }
 
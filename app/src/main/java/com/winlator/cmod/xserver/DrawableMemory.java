@@ -0,0 +1,90 @@
+package com.winlator.cmod.xserver;
+
+import java.util.LinkedHashSet;
+
+public abstract class DrawableMemory {
+    private static final Drawable.Type[] TYPES = Drawable.Type.values();
+    private static final long[] residentBytes = new long[TYPES.length];
+    private static final LinkedHashSet<Drawable> evictableDrawables = new LinkedHashSet<>();
+    private static volatile long totalResidentBytes = 0;
+    private static volatile long maxResidentBytes = 384L * 1024 * 1024;
+    private static long evictedBytes = 0;
+    private static long evictionCount = 0;
+
+    static synchronized void addResident(Drawable.Type type, long bytes) {
+        residentBytes[type.ordinal()] += bytes;
+        totalResidentBytes += bytes;
+    }
+
+    static synchronized void setEvictable(Drawable drawable, boolean evictable) {
+        evictableDrawables.remove(drawable);
+        if (evictable) evictableDrawables.add(drawable);
+    }
+
+    static synchronized void touch(Drawable drawable) {
+        if (evictableDrawables.remove(drawable)) evictableDrawables.add(drawable);
+    }
+
+    static void trimIfOverBudget() {
+        if (totalResidentBytes > maxResidentBytes) trim();
+    }
+
+    // Releases the pixel data of the least recently used unmapped windows until the budget fits again
+    public static void trim() {
+        Drawable[] drawables;
+        synchronized (DrawableMemory.class) {
+            if (totalResidentBytes <= maxResidentBytes || evictableDrawables.isEmpty()) return;
+            drawables = evictableDrawables.toArray(new Drawable[0]);
+        }
+
+        for (Drawable drawable : drawables) {
+            if (totalResidentBytes <= maxResidentBytes) return;
+            long bytes = drawable.evictData();
+            if (bytes > 0) {
+                synchronized (DrawableMemory.class) {
+                    evictedBytes += bytes;
+                    evictionCount++;
+                }
+            }
+        }
+    }
+
+    public static long getMaxResidentBytes() {
+        return maxResidentBytes;
+    }
+
+    public static void setMaxResidentBytes(long maxResidentBytes) {
+        DrawableMemory.maxResidentBytes = maxResidentBytes;
+        trimIfOverBudget();
+    }
+
+    public static long getResidentBytes() {
+        return totalResidentBytes;
+    }
+
+    public static synchronized long getResidentBytes(Drawable.Type type) {
+        return residentBytes[type.ordinal()];
+    }
+
+    public static synchronized long getEvictableBytes() {
+        long bytes = 0;
+        for (Drawable drawable : evictableDrawables) bytes += drawable.getResidentBytes();
+        return bytes;
+    }
+
+    public static synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    public static synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public static synchronized String getBreakdown() {
+        StringBuilder sb = new StringBuilder();
+        for (Drawable.Type type : TYPES) {
+            sb.append(type.name().toLowerCase()).append('=').append(residentBytes[type.ordinal()] / 1024).append("K ");
+        }
+        return sb.append("total=").append(totalResidentBytes / 1024).append("K max=").append(maxResidentBytes / 1024).append('K').toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.winlator.cmod.xserver;
 
 import com.winlator.cmod.xserver.events.Event;
+import com.winlator.cmod.xserver.events.InputDeviceEvent;
+import com.winlator.cmod.xserver.events.MotionNotify;
+import com.winlator.cmod.xserver.events.PointerWindowEvent;
 
 import java.io.IOException;
 
@@ -23,6 +26,17 @@ public class EventListener {
 
     public void sendEvent(Event event) {
         try {
+            if (event instanceof MotionNotify && eventMask.isSet(Event.POINTER_MOTION_HINT)) {
+                if (client.isMotionHintSent()) {
+                    MotionNotify.suppress();
+                    return;
+                }
+                client.setMotionHintSent(true);
+                ((MotionNotify)event).sendHint(client.getSequenceNumber(), client.getOutputStream());
+                return;
+            }
+
+            if (event instanceof InputDeviceEvent || event instanceof PointerWindowEvent) client.setMotionHintSent(false);
             event.send(client.getSequenceNumber(), client.getOutputStream());
         }
         catch (IOException e) {
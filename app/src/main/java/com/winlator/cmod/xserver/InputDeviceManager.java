@@ -17,6 +17,17 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
     private static final byte MOUSE_WHEEL_DELTA = 120;
     private Window pointWindow;
     private final XServer xServer;
+    // Refilled for every delivery instead of allocated. Only valid while delivery is serialized under the
+    // INPUT_DEVICE write lock: every caller holds it, and send() has encoded the event into the client's
+    // output stream before it returns, so no instance is read after the next set(). Never queue these.
+    private final Bitmask pointerEventMask = new Bitmask();
+    private final MotionNotify motionNotify = new MotionNotify();
+    private final ButtonPress buttonPress = new ButtonPress();
+    private final ButtonRelease buttonRelease = new ButtonRelease();
+    private final KeyPress keyPress = new KeyPress();
+    private final KeyRelease keyRelease = new KeyRelease();
+    private final EnterNotify enterNotify = new EnterNotify();
+    private final LeaveNotify leaveNotify = new LeaveNotify();
 
     public InputDeviceManager(XServer xServer) {
         this.xServer = xServer;
@@ -103,8 +114,6 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
         short x = xServer.pointer.getX();
         short y = xServer.pointer.getY();
 
-        short[] localPointA = windowA.rootPointToLocal(x, y);
-        short[] localPointB = windowB.rootPointToLocal(x, y);
 
         boolean sameScreenAndFocus = windowB.isAncestorOf(xServer.windowManager.getFocusedWindow());
         PointerWindowEvent.Detail detailA = PointerWindowEvent.Detail.NONLINEAR;
@@ -119,9 +128,11 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
             detailA = PointerWindowEvent.Detail.INFERIOR;
         }
 
-        Bitmask keyButMask = getKeyButMask();
-        sendEvent(windowA, Event.LEAVE_WINDOW, new LeaveNotify(detailA, xServer.windowManager.rootWindow, windowA, null, x, y, localPointA[0], localPointA[1], keyButMask, mode, sameScreenAndFocus));
-        sendEvent(windowB, Event.ENTER_WINDOW, new EnterNotify(detailB, xServer.windowManager.rootWindow, windowB, null, x, y, localPointB[0], localPointB[1], keyButMask, mode, sameScreenAndFocus));
+        int keyButMask = getKeyButBits();
+        leaveNotify.set(detailA, xServer.windowManager.rootWindow, windowA, null, x, y, windowA.rootXToLocal(x), windowA.rootYToLocal(y), keyButMask, mode, sameScreenAndFocus);
+        sendEvent(windowA, Event.LEAVE_WINDOW, leaveNotify);
+        enterNotify.set(detailB, xServer.windowManager.rootWindow, windowB, null, x, y, windowB.rootXToLocal(x), windowB.rootYToLocal(y), keyButMask, mode, sameScreenAndFocus);
+        sendEvent(windowB, Event.ENTER_WINDOW, enterNotify);
     }
 
     @Override
@@ -144,10 +155,9 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
                 short x = xServer.pointer.getX();
                 short y = xServer.pointer.getY();
-                short[] localPoint = grabWindow.rootPointToLocal(x, y);
-
                 Window child = grabWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-                grabWindow.sendEvent(Event.BUTTON_PRESS, new ButtonPress(button.code(), xServer.windowManager.rootWindow, grabWindow, child, x, y, localPoint[0], localPoint[1], eventMask));
+                buttonPress.set(button.code(), xServer.windowManager.rootWindow, grabWindow, child, x, y, grabWindow.rootXToLocal(x), grabWindow.rootYToLocal(y), eventMask.getBits());
+                grabWindow.sendEvent(Event.BUTTON_PRESS, buttonPress);
             }
         }
     }
@@ -168,10 +178,8 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
                 short x = xServer.pointer.getX();
                 short y = xServer.pointer.getY();
-                short[] localPoint = eventWindow.rootPointToLocal(x, y);
-
                 Window child = eventWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-                ButtonRelease buttonRelease = new ButtonRelease(button.code(), xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], eventMask);
+                buttonRelease.set(button.code(), xServer.windowManager.rootWindow, eventWindow, child, x, y, eventWindow.rootXToLocal(x), eventWindow.rootYToLocal(y), eventMask.getBits());
                 sendEvent(window, eventMask, buttonRelease);
             }
 
@@ -190,10 +198,9 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
         if (grabWindow != null || window != null) {
             Window eventWindow = window != null ? window : grabWindow;
-            short[] localPoint = eventWindow.rootPointToLocal(x, y);
-
             Window child = eventWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-            sendEvent(window, eventMask, new MotionNotify(false, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], getKeyButMask()));
+            motionNotify.set((byte)0, xServer.windowManager.rootWindow, eventWindow, child, x, y, eventWindow.rootXToLocal(x), eventWindow.rootYToLocal(y), getKeyButBits());
+            sendEvent(window, eventMask, motionNotify);
         }
     }
 
@@ -216,17 +223,16 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
         if (!eventWindow.attributes.isEnabled()) return;
 
-        Bitmask keyButMask = getKeyButMask();
         short x = xServer.pointer.getX();
         short y = xServer.pointer.getY();
-        short[] localPoint = eventWindow.rootPointToLocal(x, y);
 
         if (keysym != 0 && !xServer.keyboard.hasKeysym(keycode, keysym)) {
             xServer.keyboard.setKeysyms(keycode, keysym, keysym);
             eventWindow.sendEvent(new MappingNotify(MappingNotify.Request.KEYBOARD, keycode, 1));
         }
 
-        eventWindow.sendEvent(Event.KEY_PRESS, new KeyPress(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask));
+        keyPress.set(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, eventWindow.rootXToLocal(x), eventWindow.rootYToLocal(y), getKeyButBits());
+        eventWindow.sendEvent(Event.KEY_PRESS, keyPress);
     }
 
     @Override
@@ -248,16 +254,15 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
         if (!eventWindow.attributes.isEnabled()) return;
 
-        Bitmask keyButMask = getKeyButMask();
         short x = xServer.pointer.getX();
         short y = xServer.pointer.getY();
-        short[] localPoint = eventWindow.rootPointToLocal(x, y);
-
-        eventWindow.sendEvent(Event.KEY_RELEASE, new KeyRelease(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask));
+        keyRelease.set(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, eventWindow.rootXToLocal(x), eventWindow.rootYToLocal(y), getKeyButBits());
+        eventWindow.sendEvent(Event.KEY_RELEASE, keyRelease);
     }
 
     private Bitmask createPointerEventMask() {
-        Bitmask eventMask = new Bitmask();
+        Bitmask eventMask = pointerEventMask;
+        eventMask.clear();
         eventMask.set(Event.POINTER_MOTION);
 
         Bitmask buttonMask = xServer.pointer.getButtonMask();
@@ -284,9 +289,10 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
     }
 
     public Bitmask getKeyButMask() {
-        Bitmask keyButMask = new Bitmask();
-        keyButMask.join(xServer.pointer.getButtonMask());
-        keyButMask.join(xServer.keyboard.getModifiersMask());
-        return keyButMask;
+        return new Bitmask(getKeyButBits());
+    }
+
+    private int getKeyButBits() {
+        return xServer.pointer.getButtonMask().getBits() | xServer.keyboard.getModifiersMask().getBits();
     }
 }
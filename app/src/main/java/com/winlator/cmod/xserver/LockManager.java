@@ -0,0 +1,91 @@
+package com.winlator.cmod.xserver;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Read/write locks of the X server managers. Locks are always taken in Lockable order, so callers listing the same
+// lockables in a different order cannot deadlock each other. A shared lock is never upgraded: the write side of a
+// ReentrantReadWriteLock waits for every reader, including the calling thread, so that would hang forever.
+public class LockManager {
+    private static final XServer.Lockable[] LOCKABLES = XServer.Lockable.values();
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCKABLES.length];
+
+    public LockManager() {
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantReadWriteLock();
+    }
+
+    private class SingleXLock implements XLock {
+        private final Lock lock;
+
+        private SingleXLock(XServer.Lockable lockable, boolean shared) {
+            ReentrantReadWriteLock rwLock = locks[lockable.ordinal()];
+            if (!shared) checkNotUpgrading(rwLock);
+            lock = shared ? rwLock.readLock() : rwLock.writeLock();
+            lock.lock();
+        }
+
+        @Override
+        public void close() {
+            lock.unlock();
+        }
+    }
+
+    private class MultiXLock implements XLock {
+        private final Lock[] heldLocks;
+
+        private MultiXLock(XServer.Lockable[] lockables, boolean shared) {
+            int mask = 0;
+            for (XServer.Lockable lockable : lockables) mask |= 1 << lockable.ordinal();
+
+            if (!shared) {
+                for (int i = 0; i < locks.length; i++) {
+                    if ((mask & (1 << i)) != 0) checkNotUpgrading(locks[i]);
+                }
+            }
+
+            heldLocks = new Lock[Integer.bitCount(mask)];
+            int count = 0;
+            for (int i = 0; i < locks.length; i++) {
+                if ((mask & (1 << i)) == 0) continue;
+                Lock lock = shared ? locks[i].readLock() : locks[i].writeLock();
+                lock.lock();
+                heldLocks[count++] = lock;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (int i = heldLocks.length - 1; i >= 0; i--) heldLocks[i].unlock();
+        }
+    }
+
+    static void checkNotUpgrading(ReentrantReadWriteLock rwLock) {
+        if (rwLock.getReadHoldCount() > 0 && !rwLock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("Cannot take an exclusive lock while holding it shared.");
+        }
+    }
+
+    public XLock lock(XServer.Lockable lockable) {
+        return new SingleXLock(lockable, false);
+    }
+
+    public XLock lock(XServer.Lockable... lockables) {
+        return new MultiXLock(lockables, false);
+    }
+
+    public XLock lockShared(XServer.Lockable lockable) {
+        return new SingleXLock(lockable, true);
+    }
+
+    public XLock lockShared(XServer.Lockable... lockables) {
+        return new MultiXLock(lockables, true);
+    }
+
+    public XLock lockAll() {
+        return new MultiXLock(LOCKABLES, false);
+    }
+
+    int getWriteHoldCount(XServer.Lockable lockable) {
+        return locks[lockable.ordinal()].getWriteHoldCount();
+    }
+}
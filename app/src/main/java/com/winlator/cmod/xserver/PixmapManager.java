@@ -27,6 +27,7 @@ public class PixmapManager extends XResourceManager {
     public Pixmap createPixmap(Drawable drawable) {
         if (pixmaps.indexOfKey(drawable.id) >= 0) return null;
         Pixmap pixmap = new Pixmap(drawable);
+        drawable.setType(Drawable.Type.PIXMAP);
         pixmaps.put(drawable.id, pixmap);
         triggerOnCreateResourceListener(pixmap);
         return pixmap;
@@ -2,12 +2,13 @@ package com.winlator.cmod.xserver;
 
 import androidx.annotation.NonNull;
 
-import com.winlator.cmod.core.ArrayUtils;
 import com.winlator.cmod.core.StringUtils;
+import com.winlator.cmod.xconnector.XOutputStream;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Property {
     public enum Mode {REPLACE, PREPEND, APPEND}
@@ -28,10 +29,14 @@ public class Property {
             return null;
         }
     }
+    private static final byte[] EMPTY = new byte[0];
     public final int name;
     public final int type;
     public final Format format;
-    public ByteBuffer data;
+    private byte[] buffer = EMPTY;
+    private int size = 0;
+    private ByteBuffer data;
+    private boolean shared = false;
 
     public Property(int name, int type, Format format, byte[] data) {
         this.name = name;
@@ -40,33 +45,104 @@ public class Property {
         replace(data);
     }
 
+    public Property(int name, int type, Format format, ByteBuffer data) {
+        this.name = name;
+        this.type = type;
+        this.format = format;
+        replace(data);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns a little endian view of the value; the bytes it covers are never overwritten afterwards
+    public ByteBuffer getData() {
+        shared = true;
+        return view().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private ByteBuffer view() {
+        if (data == null) data = ByteBuffer.wrap(buffer, 0, size).slice().order(ByteOrder.LITTLE_ENDIAN);
+        return data;
+    }
+
+    public void write(XOutputStream outputStream, int offset, int length) {
+        outputStream.write(buffer, offset, length);
+    }
+
     public void replace(byte[] data) {
-        this.data = ByteBuffer.wrap(data != null ? data : new byte[0]).order(ByteOrder.LITTLE_ENDIAN);
+        replace(data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    public void replace(ByteBuffer values) {
+        int length = values != null ? values.remaining() : 0;
+        if (shared || length > buffer.length) {
+            buffer = length > 0 ? new byte[length] : EMPTY;
+            shared = false;
+        }
+        if (length > 0) values.get(buffer, 0, length);
+        size = length;
+        data = null;
     }
 
     public void prepend(byte[] values) {
-        replace(ArrayUtils.concat(values, this.data.array()));
+        prepend(values != null ? ByteBuffer.wrap(values) : null);
+    }
+
+    public void prepend(ByteBuffer values) {
+        int length = values != null ? values.remaining() : 0;
+        if (length == 0) return;
+        int newSize = size + length;
+        if (shared || newSize > buffer.length) {
+            byte[] newBuffer = new byte[growCapacity(newSize)];
+            System.arraycopy(buffer, 0, newBuffer, length, size);
+            buffer = newBuffer;
+            shared = false;
+        }
+        else System.arraycopy(buffer, 0, buffer, length, size);
+        values.get(buffer, 0, length);
+        size = newSize;
+        data = null;
     }
 
     public void append(byte[] values) {
-        replace(ArrayUtils.concat(this.data.array(), values));
+        append(values != null ? ByteBuffer.wrap(values) : null);
+    }
+
+    // Appending only writes past the end of any view handed out by getData, so the buffer can be shared
+    public void append(ByteBuffer values) {
+        int length = values != null ? values.remaining() : 0;
+        if (length == 0) return;
+        int newSize = size + length;
+        if (newSize > buffer.length) {
+            buffer = Arrays.copyOf(buffer, growCapacity(newSize));
+            shared = false;
+        }
+        values.get(buffer, size, length);
+        size = newSize;
+        data = null;
+    }
+
+    private int growCapacity(int minCapacity) {
+        return Math.max(minCapacity, buffer.length + (buffer.length >> 1));
     }
 
     @NonNull
     @Override
     public String toString() {
         String type = Atom.getName(this.type);
-        data.rewind();
+        ByteBuffer data = view().duplicate().order(ByteOrder.LITTLE_ENDIAN);
         switch (type) {
             case "UTF8_STRING":
-                return StringUtils.fromANSIString(data.array(), StandardCharsets.UTF_8);
+                return StringUtils.fromANSIString(Arrays.copyOf(buffer, size), StandardCharsets.UTF_8);
             case "STRING":
-                return StringUtils.fromANSIString(data.array(), XServer.LATIN1_CHARSET);
+                return StringUtils.fromANSIString(Arrays.copyOf(buffer, size), XServer.LATIN1_CHARSET);
             case "ATOM":
                 return Atom.getName(data.getInt(0));
             default:
                 StringBuilder sb = new StringBuilder();
-                for (int i = 0, size = data.capacity() / (format.value >> 3); i < size; i++) {
+                for (int i = 0, size = this.size / (format.value >> 3); i < size; i++) {
                     if (i > 0) sb.append(",");
                     switch (format) {
                         case BYTE_ARRAY:
@@ -80,17 +156,20 @@ public class Property {
                             break;
                     }
                 }
-                data.rewind();
                 return sb.toString();
         }
     }
 
+    public byte getByte(int index) {
+        return buffer[index];
+    }
+
     public int getInt(int index) {
-        return data.getInt(index * 4);
+        return view().getInt(index * 4);
     }
 
     public long getLong(int index) {
-        return data.getLong(index * 8);
+        return view().getLong(index * 8);
     }
 
     public String nameAsString() {
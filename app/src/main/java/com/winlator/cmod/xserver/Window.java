@@ -6,6 +6,7 @@ import android.util.SparseArray;
 import com.winlator.cmod.xserver.events.Event;
 import com.winlator.cmod.xserver.events.PropertyNotify;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -22,6 +23,9 @@ public class Window extends XResource {
     public enum StackMode {ABOVE, BELOW, TOP_IF, BOTTOM_IF, OPPOSITE}
     public enum MapState {UNMAPPED, UNVIEWABLE, VIEWABLE}
     public enum WMHints {FLAGS, INPUT, INITIAL_STATE, ICON_PIXMAP, ICON_WINDOW, ICON_X, ICON_Y, ICON_MASK, WINDOW_GROUP}
+    private static final int WM_NAME = Atom.getId("WM_NAME");
+    private static final int WM_CLASS = Atom.getId("WM_CLASS");
+    private static final int WM_HINTS = Atom.getId("WM_HINTS");
     private Drawable content;
     private short x;
     private short y;
@@ -35,6 +39,14 @@ public class Window extends XResource {
     private final ArrayList<Window> children = new ArrayList<>();
     private final List<Window> immutableChildren = Collections.unmodifiableList(children);
     private final ArrayList<EventListener> eventListeners = new ArrayList<>();
+    private OnProcessIdChangeListener onProcessIdChangeListener;
+    private String name;
+    private String className;
+    private int processId = 0;
+
+    public interface OnProcessIdChangeListener {
+        void onProcessIdChange(Window window, int oldProcessId, int newProcessId);
+    }
 
     public Window(int id, Drawable content, int x, int y, int width, int height, XClient originClient) {
         super(id);
@@ -108,14 +120,16 @@ public class Window extends XResource {
 
     public void addProperty(Property property) {
         properties.put(property.name, property);
+        invalidateMetadata(property.name);
     }
 
     public void removeProperty(int id) {
         properties.remove(id);
+        invalidateMetadata(id);
         sendEvent(Event.PROPERTY_CHANGE, new PropertyNotify(this, id, true));
     }
 
-    public Property modifyProperty(int atom, int type, Property.Format format, Property.Mode mode, byte[] data) {
+    public Property modifyProperty(int atom, int type, Property.Format format, Property.Mode mode, ByteBuffer data) {
         Property property = getProperty(atom);
         boolean modified = false;
         if (property == null) {
@@ -126,7 +140,7 @@ public class Window extends XResource {
             if (property.format == format) {
                 property.replace(data);
             }
-            else properties.put(atom, new Property(atom, type, format, data));
+            else properties.put(atom, (property = new Property(atom, type, format, data)));
             modified = true;
         }
         else if (property.format == format && property.type == type) {
@@ -140,35 +154,65 @@ public class Window extends XResource {
         }
 
         if (modified) {
+            invalidateMetadata(atom);
             sendEvent(Event.PROPERTY_CHANGE, new PropertyNotify(this, atom, false));
             return property;
         }
         else return null;
     }
 
+    // Decoded values of the properties read on hot paths are kept until the property is modified or removed
+    private void invalidateMetadata(int atom) {
+        if (atom == WM_NAME) {
+            name = null;
+        }
+        else if (atom == WM_CLASS) {
+            className = null;
+        }
+        else if (atom == Atom.getId("_NET_WM_PID")) {
+            Property property = getProperty(atom);
+            int oldProcessId = processId;
+            processId = property != null && property.size() >= 4 ? property.getInt(0) : 0;
+            if (processId != oldProcessId && onProcessIdChangeListener != null) {
+                onProcessIdChangeListener.onProcessIdChange(this, oldProcessId, processId);
+            }
+        }
+    }
+
+    public void setOnProcessIdChangeListener(OnProcessIdChangeListener onProcessIdChangeListener) {
+        this.onProcessIdChangeListener = onProcessIdChangeListener;
+    }
+
     public String getName() {
-        Property property = getProperty(Atom.getId("WM_NAME"));
-        return property != null ? property.toString() : "";
+        String name = this.name;
+        if (name == null) {
+            Property property = getProperty(WM_NAME);
+            this.name = name = property != null ? property.toString() : "";
+        }
+        return name;
     }
 
     public String getClassName() {
-        Property property = getProperty(Atom.getId("WM_CLASS"));
-        return property != null ? property.toString() : "";
+        String className = this.className;
+        if (className == null) {
+            Property property = getProperty(WM_CLASS);
+            this.className = className = property != null ? property.toString() : "";
+        }
+        return className;
     }
 
     public int getWMHintsValue(WMHints wmHints) {
-        Property property = getProperty(Atom.getId("WM_HINTS"));
+        Property property = getProperty(WM_HINTS);
         return property != null ? property.getInt(wmHints.ordinal()) : 0;
     }
 
     public int getProcessId() {
-        Property property = getProperty(Atom.getId("_NET_WM_PID"));
-        return property != null ? property.getInt(0) : 0;
+        return processId;
     }
 
     public boolean isWoW64() {
         Property property = getProperty(Atom.getId("_NET_WM_WOW64"));
-        return property != null && property.data.get(0) == 1;
+        return property != null && property.size() > 0 && property.getByte(0) == 1;
     }
 
     public long getHandle() {
@@ -238,21 +282,24 @@ public class Window extends XResource {
     }
 
     public boolean hasEventListenerFor(int eventId) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventId)) return true;
         }
         return false;
     }
 
     public boolean hasEventListenerFor(Bitmask mask) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(mask)) return true;
         }
         return false;
     }
 
     public void sendEvent(int eventId, Event event) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventId)) {
                 eventListener.sendEvent(event);
             }
@@ -260,7 +307,8 @@ public class Window extends XResource {
     }
 
     public void sendEvent(Bitmask eventMask, Event event) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventMask)) {
                 eventListener.sendEvent(event);
             }
@@ -268,7 +316,8 @@ public class Window extends XResource {
     }
 
     public void sendEvent(int eventId, Event event, XClient client) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventId) && eventListener.client == client) {
                 eventListener.sendEvent(event);
             }
@@ -276,7 +325,8 @@ public class Window extends XResource {
     }
 
     public void sendEvent(Bitmask eventMask, Event event, XClient client) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventMask) && eventListener.client == client) {
                 eventListener.sendEvent(event);
             }
@@ -284,12 +334,21 @@ public class Window extends XResource {
     }
 
     public void sendEvent(Event event) {
-        for (EventListener eventListener : eventListeners) eventListener.sendEvent(event);
+        for (int i = 0; i < eventListeners.size(); i++) eventListeners.get(i).sendEvent(event);
     }
 
     public boolean containsPoint(short rootX, short rootY) {
-        short[] localPoint = rootPointToLocal(rootX, rootY);
-        return localPoint[0] >= 0 && localPoint[1] >= 0 && localPoint[0] < width && localPoint[1] < height;
+        short localX = rootXToLocal(rootX);
+        short localY = rootYToLocal(rootY);
+        return localX >= 0 && localY >= 0 && localX < width && localY < height;
+    }
+
+    public short rootXToLocal(short x) {
+        return (short)(x - getRootX());
+    }
+
+    public short rootYToLocal(short y) {
+        return (short)(y - getRootY());
     }
 
     public short[] rootPointToLocal(short x, short y) {
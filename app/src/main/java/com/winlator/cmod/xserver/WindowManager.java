@@ -27,6 +27,12 @@ public class WindowManager extends XResourceManager {
     private Window focusedWindow;
     private FocusRevertTo focusRevertTo = FocusRevertTo.NONE;
     private final ArrayList<OnWindowModificationListener> onWindowModificationListeners = new ArrayList<>();
+    private final WindowPointIndex pointIndex; // updated ahead of the listeners, which may hit-test from their callbacks
+    private final SparseArray<ArrayList<Window>> processIdIndex = new SparseArray<>();
+    private final Window.OnProcessIdChangeListener onProcessIdChangeListener = (window, oldProcessId, newProcessId) -> {
+        removeFromProcessIdIndex(window, oldProcessId);
+        addToProcessIdIndex(window, newProcessId);
+    };
 
     public interface OnWindowModificationListener {
         default void onMapWindow(Window window) {}
@@ -48,9 +54,13 @@ public class WindowManager extends XResourceManager {
         this.drawableManager = drawableManager;
         int id = IDGenerator.generate();
         Drawable drawable = drawableManager.createDrawable(id, screenInfo.width, screenInfo.height, drawableManager.getVisual());
+        drawable.setType(Drawable.Type.WINDOW);
         rootWindow = new Window(id, drawable, 0, 0, screenInfo.width, screenInfo.height, null);
         rootWindow.attributes.setMapped(true);
+        rootWindow.setOnProcessIdChangeListener(onProcessIdChangeListener);
         windows.put(id, rootWindow);
+
+        pointIndex = new WindowPointIndex(rootWindow);
     }
 
     public Window getWindow(int id) {
@@ -58,11 +68,34 @@ public class WindowManager extends XResourceManager {
     }
 
     public Window findWindowWithProcessId(int processId) {
-        for (int i = 0; i < windows.size(); i++) {
-            Window window = windows.valueAt(i);
-            if (window != null && window.getProcessId() == processId) return window;
+        ArrayList<Window> windows = processIdIndex.get(processId);
+        if (windows == null) return null;
+
+        Window result = null;
+        for (Window window : windows) {
+            if (result == null || window.id < result.id) result = window;
         }
-        return null;
+        return result;
+    }
+
+    public List<Window> getWindowsWithProcessId(int processId) {
+        ArrayList<Window> windows = processIdIndex.get(processId);
+        return windows != null ? new ArrayList<>(windows) : new ArrayList<>();
+    }
+
+    private void addToProcessIdIndex(Window window, int processId) {
+        if (processId == 0) return;
+        ArrayList<Window> windows = processIdIndex.get(processId);
+        if (windows == null) processIdIndex.put(processId, (windows = new ArrayList<>()));
+        windows.add(window);
+    }
+
+    private void removeFromProcessIdIndex(Window window, int processId) {
+        if (processId == 0) return;
+        ArrayList<Window> windows = processIdIndex.get(processId);
+        if (windows == null) return;
+        windows.remove(window);
+        if (windows.isEmpty()) processIdIndex.remove(processId);
     }
 
     public void destroyWindow(int id) {
@@ -81,7 +114,10 @@ public class WindowManager extends XResourceManager {
         window.sendEvent(Event.STRUCTURE_NOTIFY, new DestroyNotify(window, window));
         parent.sendEvent(Event.SUBSTRUCTURE_NOTIFY, new DestroyNotify(parent, window));
         windows.remove(window.id);
+        window.setOnProcessIdChangeListener(null);
+        removeFromProcessIdIndex(window, window.getProcessId());
         if (window.isInputOutput()) drawableManager.removeDrawable(window.getContent().id);
+        pointIndex.onDetachWindow(window);
         triggerOnFreeResourceListener(window);
         if (window == focusedWindow) revertFocus();
         parent.removeChild(window);
@@ -92,6 +128,7 @@ public class WindowManager extends XResourceManager {
             Window parent = window.getParent();
             if (!parent.hasEventListenerFor(Event.SUBSTRUCTURE_REDIRECT) || window.attributes.isOverrideRedirect()) {
                 window.attributes.setMapped(true);
+                if (window.isInputOutput()) window.getContent().setEvictable(false);
                 window.sendEvent(Event.STRUCTURE_NOTIFY, new MapNotify(window, window));
                 parent.sendEvent(Event.SUBSTRUCTURE_NOTIFY, new MapNotify(parent, window));
                 window.sendEvent(Event.EXPOSURE, new Expose(window));
@@ -104,6 +141,7 @@ public class WindowManager extends XResourceManager {
     public void unmapWindow(Window window) {
         if (rootWindow.id != window.id && window.attributes.isMapped()) {
             window.attributes.setMapped(false);
+            if (window.isInputOutput()) window.getContent().setEvictable(true);
             Window parent = window.getParent();
             window.sendEvent(Event.STRUCTURE_NOTIFY, new UnmapNotify(window, window));
             parent.sendEvent(Event.SUBSTRUCTURE_NOTIFY, new UnmapNotify(parent, window));
@@ -168,11 +206,14 @@ public class WindowManager extends XResourceManager {
         if (isInputOutput) {
             drawable = drawableManager.createDrawable(id, width, height, visual);
             if (drawable == null) throw new BadIdChoice(id);
+            drawable.setType(Drawable.Type.WINDOW);
+            drawable.setEvictable(true);
         }
 
         final Window window = new Window(id, drawable, x, y, width, height, client);
         window.attributes.setWindowClass(windowClass);
         if (drawable != null) drawable.setOnDrawListener(() -> triggerOnUpdateWindowContent(window));
+        window.setOnProcessIdChangeListener(onProcessIdChangeListener);
         windows.put(id, window);
         parent.addChild(window);
         triggerOnCreateResourceListener(window);
@@ -193,6 +234,8 @@ public class WindowManager extends XResourceManager {
             drawableManager.removeDrawable(oldContent.id);
             Drawable newContent = drawableManager.createDrawable(oldContent.id, width, height, oldContent.visual);
             newContent.setOnDrawListener(() -> triggerOnUpdateWindowContent(window));
+            newContent.setType(Drawable.Type.WINDOW);
+            newContent.setEvictable(!window.attributes.isMapped());
             window.setContent(newContent);
         }
 
@@ -274,18 +317,18 @@ public class WindowManager extends XResourceManager {
 
     public void reparentWindow(Window window, Window newParent) {
         Window oldParent = window.getParent();
+        pointIndex.onDetachWindow(window);
         if (oldParent != null) oldParent.removeChild(window);
         newParent.addChild(window);
+        pointIndex.onAttachWindow(window);
     }
 
     public Window findPointWindow(short rootX, short rootY) {
-        return findPointWindow(rootWindow, rootX, rootY);
+        return pointIndex.findPointWindow(rootX, rootY);
     }
 
-    private Window findPointWindow(Window window, short rootX, short rootY) {
-        if (!(window.attributes.isMapped() && window.containsPoint(rootX, rootY))) return null;
-        Window child = window.getChildByCoords(rootX, rootY);
-        return child != null ? findPointWindow(child, rootX, rootY) : window;
+    public WindowPointIndex getPointIndex() {
+        return pointIndex;
     }
 
     public void addOnWindowModificationListener(OnWindowModificationListener onWindowModificationListener) {
@@ -297,18 +340,21 @@ public class WindowManager extends XResourceManager {
     }
 
     private void triggerOnMapWindow(Window window) {
+        pointIndex.onMapWindow(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onMapWindow(window);
         }
     }
 
     private void triggerOnUnmapWindow(Window window) {
+        pointIndex.onUnmapWindow(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onUnmapWindow(window);
         }
     }
 
     private void triggerOnChangeWindowZOrder(Window window) {
+        pointIndex.onChangeWindowZOrder(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onChangeWindowZOrder(window);
         }
@@ -321,6 +367,7 @@ public class WindowManager extends XResourceManager {
     }
 
     protected void triggerOnUpdateWindowGeometry(Window window, boolean resized) {
+        pointIndex.onUpdateWindowGeometry(window, resized);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onUpdateWindowGeometry(window, resized);
         }
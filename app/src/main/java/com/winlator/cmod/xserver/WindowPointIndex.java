@@ -0,0 +1,246 @@
+package com.winlator.cmod.xserver;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+public class WindowPointIndex implements WindowManager.OnWindowModificationListener {
+    private static final byte GRID_SIZE = 16;
+    private final Window rootWindow;
+    private final IdentityHashMap<Window, Entry> entries = new IdentityHashMap<>();
+    private final Entry[][] cells = new Entry[GRID_SIZE * GRID_SIZE][];
+    private final int[] cellSizes = new int[GRID_SIZE * GRID_SIZE];
+    private int cellWidth;
+    private int cellHeight;
+    private boolean dirty = true;
+    private int rebuildCount = 0;
+    private int updateCount = 0;
+
+    private static class Entry {
+        private final Window window;
+        private final Entry parent;
+        private final int depth;
+        private int stackIndex;
+        private int x0;
+        private int y0;
+        private int x1;
+        private int y1;
+
+        private Entry(Window window, Entry parent, int stackIndex) {
+            this.window = window;
+            this.parent = parent;
+            this.depth = parent != null ? parent.depth + 1 : 0;
+            this.stackIndex = stackIndex;
+        }
+
+        private boolean contains(int x, int y) {
+            return x >= x0 && y >= y0 && x < x1 && y < y1;
+        }
+
+        /** Both entries contain the query point, so one is an ancestor of the other or they diverge at two siblings. */
+        private boolean isAbove(Entry other) {
+            Entry a = this, b = other;
+            while (a.depth > b.depth) {
+                if (a.parent == b) return true;
+                a = a.parent;
+            }
+            while (b.depth > a.depth) {
+                if (b.parent == a) return false;
+                b = b.parent;
+            }
+            while (a.parent != b.parent) {
+                a = a.parent;
+                b = b.parent;
+            }
+            return a.stackIndex > b.stackIndex;
+        }
+    }
+
+    public WindowPointIndex(Window rootWindow) {
+        this.rootWindow = rootWindow;
+    }
+
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    public synchronized Window findPointWindow(short rootX, short rootY) {
+        if (dirty) rebuild();
+        if (rootX < 0 || rootY < 0 || rootX >= rootWindow.getWidth() || rootY >= rootWindow.getHeight()) return null;
+
+        int cell = (rootY / cellHeight) * GRID_SIZE + (rootX / cellWidth);
+        Entry[] candidates = cells[cell];
+        Entry topmost = null;
+        for (int i = cellSizes[cell] - 1; i >= 0; i--) {
+            Entry entry = candidates[i];
+            if (entry.contains(rootX, rootY) && (topmost == null || entry.isAbove(topmost))) topmost = entry;
+        }
+        return topmost != null ? topmost.window : null;
+    }
+
+    public synchronized int getWindowCount() {
+        if (dirty) rebuild();
+        return entries.size();
+    }
+
+    public synchronized int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    public synchronized int getUpdateCount() {
+        return updateCount;
+    }
+
+    @Override
+    public synchronized void onMapWindow(Window window) {
+        if (dirty) return;
+        insertSubtree(window, 0);
+        updateStackIndices(window.getParent());
+        updateCount++;
+    }
+
+    @Override
+    public synchronized void onUnmapWindow(Window window) {
+        if (dirty) return;
+        removeSubtree(window);
+        updateCount++;
+    }
+
+    @Override
+    public synchronized void onChangeWindowZOrder(Window window) {
+        if (dirty) return;
+        updateStackIndices(window.getParent());
+        updateCount++;
+    }
+
+    @Override
+    public synchronized void onUpdateWindowGeometry(Window window, boolean resized) {
+        if (dirty) return;
+        if (window == rootWindow) {
+            dirty = true;
+            return;
+        }
+
+        Entry entry = entries.get(window);
+        removeSubtree(window);
+        insertSubtree(window, entry != null ? entry.stackIndex : 0);
+        if (entry == null) updateStackIndices(window.getParent());
+        updateCount++;
+    }
+
+    /** Drops a window and its descendants before it is destroyed or moved to another parent. */
+    public synchronized void onDetachWindow(Window window) {
+        if (dirty) return;
+        removeSubtree(window);
+        updateCount++;
+    }
+
+    /** Indexes a window and its descendants after it was moved to another parent. */
+    public synchronized void onAttachWindow(Window window) {
+        if (dirty) return;
+        insertSubtree(window, 0);
+        updateStackIndices(window.getParent());
+        updateCount++;
+    }
+
+    private void rebuild() {
+        entries.clear();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null) Arrays.fill(cells[i], 0, cellSizes[i], null);
+            cellSizes[i] = 0;
+        }
+        cellWidth = Math.max(1, (rootWindow.getWidth() + GRID_SIZE - 1) / GRID_SIZE);
+        cellHeight = Math.max(1, (rootWindow.getHeight() + GRID_SIZE - 1) / GRID_SIZE);
+
+        if (rootWindow.attributes.isMapped()) {
+            addEntry(rootWindow, null, 0, 0, 0, 0, 0, rootWindow.getWidth(), rootWindow.getHeight());
+        }
+
+        dirty = false;
+        rebuildCount++;
+    }
+
+    /** Sibling positions only matter relative to each other, so they are refreshed whenever a child joins or moves. */
+    private void updateStackIndices(Window parent) {
+        if (!entries.containsKey(parent)) return;
+        List<Window> children = parent.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Entry entry = entries.get(children.get(i));
+            if (entry != null) entry.stackIndex = i;
+        }
+    }
+
+    private void insertSubtree(Window window, int stackIndex) {
+        if (entries.containsKey(window)) return;
+        Entry parent = entries.get(window.getParent());
+        if (parent == null || !window.attributes.isMapped()) return;
+
+        int rootX = window.getRootX();
+        int rootY = window.getRootY();
+        addEntry(window, parent, stackIndex, rootX, rootY, parent.x0, parent.y0, parent.x1, parent.y1);
+    }
+
+    private void addEntry(Window window, Entry parent, int stackIndex, int rootX, int rootY, int clipX0, int clipY0, int clipX1, int clipY1) {
+        int x0 = Math.max(rootX, clipX0);
+        int y0 = Math.max(rootY, clipY0);
+        int x1 = Math.min(rootX + window.getWidth(), clipX1);
+        int y1 = Math.min(rootY + window.getHeight(), clipY1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        Entry entry = new Entry(window, parent, stackIndex);
+        entry.x0 = x0;
+        entry.y0 = y0;
+        entry.x1 = x1;
+        entry.y1 = y1;
+        entries.put(window, entry);
+
+        int cellX1 = (x1 - 1) / cellWidth;
+        int cellY1 = (y1 - 1) / cellHeight;
+        for (int cellY = y0 / cellHeight; cellY <= cellY1; cellY++) {
+            for (int cellX = x0 / cellWidth; cellX <= cellX1; cellX++) addToCell(cellY * GRID_SIZE + cellX, entry);
+        }
+
+        List<Window> children = window.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Window child = children.get(i);
+            if (child.attributes.isMapped()) addEntry(child, entry, i, rootX + child.getX(), rootY + child.getY(), x0, y0, x1, y1);
+        }
+    }
+
+    private void removeSubtree(Window window) {
+        Entry entry = entries.remove(window);
+        if (entry == null) return;
+
+        int cellX1 = (entry.x1 - 1) / cellWidth;
+        int cellY1 = (entry.y1 - 1) / cellHeight;
+        for (int cellY = entry.y0 / cellHeight; cellY <= cellY1; cellY++) {
+            for (int cellX = entry.x0 / cellWidth; cellX <= cellX1; cellX++) removeFromCell(cellY * GRID_SIZE + cellX, entry);
+        }
+
+        for (Window child : window.getChildren()) removeSubtree(child);
+    }
+
+    private void addToCell(int cell, Entry entry) {
+        Entry[] cellEntries = cells[cell];
+        int size = cellSizes[cell];
+        if (cellEntries == null) {
+            cellEntries = cells[cell] = new Entry[16];
+        }
+        else if (size == cellEntries.length) cellEntries = cells[cell] = Arrays.copyOf(cellEntries, size * 2);
+        cellEntries[size] = entry;
+        cellSizes[cell] = size + 1;
+    }
+
+    private void removeFromCell(int cell, Entry entry) {
+        Entry[] cellEntries = cells[cell];
+        int size = cellSizes[cell];
+        for (int i = size - 1; i >= 0; i--) {
+            if (cellEntries[i] == entry) {
+                cellEntries[i] = cellEntries[size - 1];
+                cellEntries[size - 1] = null;
+                cellSizes[cell] = size - 1;
+                return;
+            }
+        }
+    }
+}
@@ -2,9 +2,11 @@ package com.winlator.cmod.xserver;
 
 import androidx.collection.ArrayMap;
 
+import com.winlator.cmod.xconnector.Client;
 import com.winlator.cmod.xconnector.XInputStream;
 import com.winlator.cmod.xconnector.XOutputStream;
 import com.winlator.cmod.xserver.events.Event;
+import com.winlator.cmod.xserver.extensions.SyncExtension;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -12,6 +14,7 @@ import java.util.ArrayList;
 public class XClient implements XResourceManager.OnResourceLifecycleListener {
     public final XServer xServer;
     private boolean authenticated = false;
+    private boolean motionHintSent = false;
     public final Integer resourceIDBase;
     private short sequenceNumber = 0;
     private int requestLength;
@@ -19,13 +22,15 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     private int initialLength;
     private final XInputStream inputStream;
     private final XOutputStream outputStream;
+    private final Client connection;
     private final ArrayMap<Window, EventListener> eventListeners = new ArrayMap<>();
     private final ArrayList<XResource> resources = new ArrayList<>();
 
-    public XClient(XServer xServer, XInputStream inputStream, XOutputStream outputStream) {
+    public XClient(XServer xServer, Client connection) {
         this.xServer = xServer;
-        this.inputStream = inputStream;
-        this.outputStream = outputStream;
+        this.connection = connection;
+        this.inputStream = connection.getInputStream();
+        this.outputStream = connection.getOutputStream();
 
         try (XLock lock = xServer.lockAll()) {
             resourceIDBase = xServer.resourceIDs.get();
@@ -71,6 +76,14 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
         this.authenticated = authenticated;
     }
 
+    public boolean isMotionHintSent() {
+        return motionHintSent;
+    }
+
+    public void setMotionHintSent(boolean motionHintSent) {
+        this.motionHintSent = motionHintSent;
+    }
+
     public void freeResources() {
         try (XLock lock = xServer.lockAll()) {
             while (!resources.isEmpty()) {
@@ -100,6 +113,9 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
             xServer.cursorManager.removeOnResourceLifecycleListener(this);
             xServer.resourceIDs.free(resourceIDBase);
         }
+
+        SyncExtension syncExtension = xServer.getExtension(SyncExtension.MAJOR_OPCODE);
+        if (syncExtension != null) syncExtension.removeWaiters(this);
     }
 
     public void generateSequenceNumber() {
@@ -144,6 +160,14 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
         return outputStream;
     }
 
+    public boolean park() {
+        return connection.park();
+    }
+
+    public void unpark() {
+        connection.unpark();
+    }
+
     public Bitmask getEventMaskForWindow(Window window) {
         EventListener eventListener = eventListeners.get(window);
         return eventListener != null ? eventListener.eventMask : new Bitmask();
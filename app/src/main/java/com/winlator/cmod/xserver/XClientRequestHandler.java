@@ -181,7 +181,7 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_WINDOW_ATTRIBUTES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.getWindowAttributes(client, inputStream, outputStream);
                     }
                     break;
@@ -220,12 +220,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_GEOMETRY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
                         WindowRequests.getGeometry(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.QUERY_TREE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.queryTree(client, inputStream, outputStream);
                     }
                     break;
@@ -234,7 +234,7 @@ public class XClientRequestHandler implements RequestHandler {
                     break;
                 /* This seems to also link to UnmapWindow */
                 case ClientOpcodes.GET_ATOM_NAME:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
                         AtomRequests.getAtomName(client, inputStream, outputStream);
                     }
                     break;
@@ -284,7 +284,7 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.TRANSLATE_COORDINATES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.translateCoordinates(client, inputStream, outputStream);
                     }
                     break;
@@ -299,12 +299,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_INPUT_FOCUS:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.getInputFocus(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.QUERY_KEYMAP:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                         outputStream.writeByte((byte) 0);
                         outputStream.writeShort(client.getSequenceNumber());
@@ -347,12 +347,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.COPY_AREA:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.copyArea(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.POLY_LINE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.polyLine(client, inputStream, outputStream);
                     }
                     break;
@@ -363,17 +363,17 @@ public class XClientRequestHandler implements RequestHandler {
                     client.skipRequest();
                     break;
                 case ClientOpcodes.POLY_FILL_RECTANGLE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.polyFillRectangle(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.PUT_IMAGE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.putImage(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.GET_IMAGE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
                         DrawRequests.getImage(client, inputStream, outputStream);
                     }
                     break;
@@ -400,7 +400,7 @@ public class XClientRequestHandler implements RequestHandler {
                     ExtensionRequests.queryExtension(client, inputStream, outputStream);
                     break;
                 case ClientOpcodes.GET_KEYBOARD_MAPPING:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.INPUT_DEVICE)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.INPUT_DEVICE)) {
                         KeyboardRequests.getKeyboardMapping(client, inputStream, outputStream);
                     }
                     break;
@@ -13,8 +13,6 @@ import com.winlator.cmod.xserver.extensions.PresentExtension;
 import com.winlator.cmod.xserver.extensions.SyncExtension;
 
 import java.nio.charset.Charset;
-import java.util.EnumMap;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class XServer {
     public enum Lockable {WINDOW_MANAGER, PIXMAP_MANAGER, DRAWABLE_MANAGER, GRAPHIC_CONTEXT_MANAGER, INPUT_DEVICE, CURSOR_MANAGER, SHMSEGMENT_MANAGER}
@@ -38,7 +36,7 @@ public class XServer {
     private SHMSegmentManager shmSegmentManager;
     private GLRenderer renderer;
     private WinHandler winHandler;
-    private final EnumMap<Lockable, ReentrantLock> locks = new EnumMap<>(Lockable.class);
+    private final LockManager lockManager = new LockManager();
     private boolean relativeMouseMovement = false;
     private boolean simulateTouchScreen = false;
     private boolean isGrabbed = false;
@@ -47,7 +45,6 @@ public class XServer {
     public XServer(ScreenInfo screenInfo) {
         this.screenInfo = screenInfo;
         cursorLocker = new CursorLocker(this);
-        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantLock());
 
         pixmapManager = new PixmapManager();
         drawableManager = new DrawableManager(this);
@@ -100,46 +97,24 @@ public class XServer {
         this.shmSegmentManager = shmSegmentManager;
     }
 
-    private class SingleXLock implements XLock {
-        private final ReentrantLock lock;
-
-        private SingleXLock(Lockable lockable) {
-            this.lock = locks.get(lockable);
-            lock.lock();
-        }
-
-        @Override
-        public void close() {
-            lock.unlock();
-        }
+    public XLock lock(Lockable lockable) {
+        return lockManager.lock(lockable);
     }
 
-    private class MultiXLock implements XLock {
-        private final Lockable[] lockables;
-
-        private MultiXLock(Lockable[] lockables) {
-            this.lockables = lockables;
-            for (Lockable lockable : lockables) locks.get(lockable).lock();
-        }
-
-        @Override
-        public void close() {
-            for (int i = lockables.length - 1; i >= 0; i--) {
-                locks.get(lockables[i]).unlock();
-            }
-        }
+    public XLock lock(Lockable... lockables) {
+        return lockManager.lock(lockables);
     }
 
-    public XLock lock(Lockable lockable) {
-        return new SingleXLock(lockable);
+    public XLock lockShared(Lockable lockable) {
+        return lockManager.lockShared(lockable);
     }
 
-    public XLock lock(Lockable... lockables) {
-        return new MultiXLock(lockables);
+    public XLock lockShared(Lockable... lockables) {
+        return lockManager.lockShared(lockables);
     }
 
     public XLock lockAll() {
-        return new MultiXLock(Lockable.values());
+        return lockManager.lockAll();
     }
 
     public Extension getExtensionByName(String name) {
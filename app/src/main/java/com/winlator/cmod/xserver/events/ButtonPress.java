@@ -4,6 +4,10 @@ import com.winlator.cmod.xserver.Bitmask;
 import com.winlator.cmod.xserver.Window;
 
 public class ButtonPress extends InputDeviceEvent {
+    public ButtonPress() {
+        super(4);
+    }
+
     public ButtonPress(byte detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
         super(4, detail, root, event, child, rootX, rootY, eventX, eventY, state);
     }
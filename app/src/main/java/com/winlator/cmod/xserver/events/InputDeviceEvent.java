@@ -8,19 +8,27 @@ import com.winlator.cmod.xserver.Window;
 import java.io.IOException;
 
 public class InputDeviceEvent extends Event {
-    private final byte detail;
-    private final int timestamp;
-    private final Window root;
-    private final Window event;
-    private final Window child;
-    private final short eventX;
-    private final short eventY;
-    private final short rootX;
-    private final short rootY;
-    private final Bitmask state;
+    private byte detail;
+    private int timestamp;
+    private Window root;
+    private Window event;
+    private Window child;
+    private short eventX;
+    private short eventY;
+    private short rootX;
+    private short rootY;
+    private short state;
+
+    protected InputDeviceEvent(int code) {
+        super(code);
+    }
 
     public InputDeviceEvent(int code, byte detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
         super(code);
+        set(detail, root, event, child, rootX, rootY, eventX, eventY, state.getBits());
+    }
+
+    public InputDeviceEvent set(byte detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, int state) {
         this.detail = detail;
         this.timestamp = (int)System.currentTimeMillis();
         this.root = root;
@@ -30,11 +38,20 @@ public class InputDeviceEvent extends Event {
         this.rootY = rootY;
         this.eventX = eventX;
         this.eventY = eventY;
-        this.state = state;
+        this.state = (short)state;
+        return this;
+    }
+
+    protected int getEventWindowId() {
+        return event.id;
     }
 
     @Override
     public void send(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        send(sequenceNumber, outputStream, detail);
+    }
+
+    protected void send(short sequenceNumber, XOutputStream outputStream, byte detail) throws IOException {
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(code);
             outputStream.writeByte(detail);
@@ -47,7 +64,7 @@ public class InputDeviceEvent extends Event {
             outputStream.writeShort(rootY);
             outputStream.writeShort(eventX);
             outputStream.writeShort(eventY);
-            outputStream.writeShort((short)state.getBits());
+            outputStream.writeShort(state);
             outputStream.writeByte((byte)1);
             outputStream.writeByte((byte)0);
         }
@@ -1,10 +1,53 @@
 package com.winlator.cmod.xserver.events;
 
+import com.winlator.cmod.xconnector.XOutputStream;
+import com.winlator.cmod.xconnector.XStreamLock;
 import com.winlator.cmod.xserver.Bitmask;
 import com.winlator.cmod.xserver.Window;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class MotionNotify extends InputDeviceEvent {
+    private static final AtomicLong sentCount = new AtomicLong();
+    private static final AtomicLong suppressedCount = new AtomicLong();
+
+    public MotionNotify() {
+        super(6);
+    }
+
     public MotionNotify(boolean detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
         super(6, (byte)(detail ? 1 : 0), root, event, child, rootX, rootY, eventX, eventY, state);
     }
+
+    @Override
+    public void send(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        int key = getEventWindowId();
+        try (XStreamLock lock = outputStream.lock()) {
+            if (outputStream.rewindCoalescedEvent(key)) {
+                suppressedCount.incrementAndGet();
+            }
+            else sentCount.incrementAndGet();
+
+            super.send(sequenceNumber, outputStream);
+            outputStream.markCoalescedEvent(key);
+        }
+    }
+
+    public void sendHint(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        sentCount.incrementAndGet();
+        send(sequenceNumber, outputStream, (byte)1);
+    }
+
+    public static void suppress() {
+        suppressedCount.incrementAndGet();
+    }
+
+    public static long getSentCount() {
+        return sentCount.get();
+    }
+
+    public static long getSuppressedCount() {
+        return suppressedCount.get();
+    }
 }
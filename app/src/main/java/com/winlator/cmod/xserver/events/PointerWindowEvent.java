@@ -10,21 +10,29 @@ import java.io.IOException;
 public abstract class PointerWindowEvent extends Event {
     public enum Detail {ANCESTOR, VIRTUAL, INFERIOR, NONLINEAR, NONLINEAR_VIRTUAL}
     public enum Mode {NORMAL, GRAB, UNGRAB}
-    private final Detail detail;
-    private final int timestamp;
-    private final Window root;
-    private final Window event;
-    private final Window child;
-    private final short rootX;
-    private final short rootY;
-    private final short eventX;
-    private final short eventY;
-    private final Bitmask state;
-    private final Mode mode;
-    private final boolean sameScreenAndFocus;
+    private Detail detail;
+    private int timestamp;
+    private Window root;
+    private Window event;
+    private Window child;
+    private short rootX;
+    private short rootY;
+    private short eventX;
+    private short eventY;
+    private short state;
+    private Mode mode;
+    private boolean sameScreenAndFocus;
+
+    protected PointerWindowEvent(int code) {
+        super(code);
+    }
 
     public PointerWindowEvent(int code, Detail detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state, Mode mode, boolean sameScreenAndFocus) {
         super(code);
+        set(detail, root, event, child, rootX, rootY, eventX, eventY, state.getBits(), mode, sameScreenAndFocus);
+    }
+
+    public PointerWindowEvent set(Detail detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, int state, Mode mode, boolean sameScreenAndFocus) {
         this.detail = detail;
         this.timestamp = (int)System.currentTimeMillis();
         this.root = root;
@@ -34,9 +42,10 @@ public abstract class PointerWindowEvent extends Event {
         this.rootY = rootY;
         this.eventX = eventX;
         this.eventY = eventY;
-        this.state = state;
+        this.state = (short)state;
         this.mode = mode;
         this.sameScreenAndFocus = sameScreenAndFocus;
+        return this;
     }
 
     @Override
@@ -53,7 +62,7 @@ public abstract class PointerWindowEvent extends Event {
             outputStream.writeShort(rootY);
             outputStream.writeShort(eventX);
             outputStream.writeShort(eventY);
-            outputStream.writeShort((short)state.getBits());
+            outputStream.writeShort(state);
             outputStream.writeByte((byte)mode.ordinal());
             outputStream.writeByte((byte)(sameScreenAndFocus ? 1 : 0));
         }
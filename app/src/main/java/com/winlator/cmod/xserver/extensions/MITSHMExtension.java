@@ -2,6 +2,7 @@ package com.winlator.cmod.xserver.extensions;
 
 import static com.winlator.cmod.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 
+import com.winlator.cmod.renderer.GPUImage;
 import com.winlator.cmod.xconnector.XInputStream;
 import com.winlator.cmod.xconnector.XOutputStream;
 import com.winlator.cmod.xconnector.XStreamLock;
@@ -18,9 +19,12 @@ import com.winlator.cmod.xserver.errors.XRequestError;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MITSHMExtension implements Extension {
     public static final byte MAJOR_OPCODE = -101;
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong gpuDirectBytes = new AtomicLong();
 
     private static abstract class ClientOpcodes {
         private static final byte QUERY_VERSION = 0;
@@ -74,7 +78,15 @@ public class MITSHMExtension implements Extension {
         client.xServer.getSHMSegmentManager().detach(inputStream.readInt());
     }
 
-    private static void putImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    public long getGPUDirectBytes() {
+        return gpuDirectBytes.get();
+    }
+
+    private void putImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int drawableId = inputStream.readInt();
         int gcId = inputStream.readInt();
         short totalWidth = inputStream.readShort();
@@ -103,7 +115,11 @@ public class MITSHMExtension implements Extension {
             throw new UnsupportedOperationException("GC Function other than COPY is not supported.");
         }
 
-        drawable.drawImage(srcX, srcY, dstX, dstY, srcWidth, srcHeight, depth, data, totalWidth, totalHeight);
+        // The client may reuse the segment as soon as the request completes, so the pixels are copied now.
+        // For GPUImage-backed drawables the data is the mapped hardware buffer, making this the only copy.
+        int length = drawable.drawImage(srcX, srcY, dstX, dstY, srcWidth, srcHeight, depth, data, totalWidth, totalHeight);
+        copiedBytes.addAndGet(length);
+        if (drawable.getTexture() instanceof GPUImage) gpuDirectBytes.addAndGet(length);
     }
 
     @Override
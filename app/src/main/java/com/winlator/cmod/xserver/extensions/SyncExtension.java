@@ -1,6 +1,6 @@
 package com.winlator.cmod.xserver.extensions;
 
-import android.util.SparseBooleanArray;
+import androidx.collection.SparseArrayCompat;
 
 import com.winlator.cmod.xconnector.XInputStream;
 import com.winlator.cmod.xconnector.XOutputStream;
@@ -12,10 +12,27 @@ import com.winlator.cmod.xserver.errors.BadMatch;
 import com.winlator.cmod.xserver.errors.XRequestError;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 public class SyncExtension implements Extension {
     public static final byte MAJOR_OPCODE = -104;
-    private final SparseBooleanArray fences = new SparseBooleanArray();
+    private final SparseArrayCompat<Boolean> fences = new SparseArrayCompat<>();
+    private final ArrayList<FenceWaiter> waiters = new ArrayList<>();
+
+    private static class FenceWaiter {
+        private final XClient client;
+        private final int[] ids;
+
+        private FenceWaiter(XClient client, int[] ids) {
+            this.client = client;
+            this.ids = ids;
+        }
+
+        private boolean isWaitingFor(int id) {
+            for (int fenceId : ids) if (fenceId == id) return true;
+            return false;
+        }
+    }
 
     private static abstract class ClientOpcodes {
         private static final byte CREATE_FENCE = 14;
@@ -47,7 +64,31 @@ public class SyncExtension implements Extension {
 
     public void setTriggered(int id) {
         synchronized (fences) {
-            if (fences.indexOfKey(id) >= 0) fences.put(id, true);
+            if (fences.indexOfKey(id) >= 0) {
+                fences.put(id, true);
+                wakeWaiters(id);
+            }
+        }
+    }
+
+    private void wakeWaiters(int id) {
+        for (int i = waiters.size() - 1; i >= 0; i--) {
+            FenceWaiter waiter = waiters.get(i);
+            if (waiter.isWaitingFor(id)) {
+                waiters.remove(i);
+                waiter.client.unpark();
+            }
+        }
+        fences.notifyAll();
+    }
+
+    // Called when the client's connection is shut down, a request waiting in thread-per-client mode returns as well
+    public void removeWaiters(XClient client) {
+        synchronized (fences) {
+            for (int i = waiters.size() - 1; i >= 0; i--) {
+                if (waiters.get(i).client == client) waiters.remove(i);
+            }
+            fences.notifyAll();
         }
     }
 
@@ -70,6 +111,7 @@ public class SyncExtension implements Extension {
             int id = inputStream.readInt();
             if (fences.indexOfKey(id) < 0) throw new BadFence(id);
             fences.put(id, true);
+            wakeWaiters(id);
         }
     }
 
@@ -78,7 +120,7 @@ public class SyncExtension implements Extension {
             int id = inputStream.readInt();
             if (fences.indexOfKey(id) < 0) throw new BadFence(id);
 
-            boolean triggered = fences.get(id);
+            boolean triggered = fences.get(id, false);
             if (!triggered) throw new BadMatch();
 
             fences.put(id, false);
@@ -89,7 +131,8 @@ public class SyncExtension implements Extension {
         synchronized (fences) {
             int id = inputStream.readInt();
             if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-            fences.delete(id);
+            fences.remove(id);
+            wakeWaiters(id);
         }
     }
 
@@ -104,16 +147,33 @@ public class SyncExtension implements Extension {
                 length -= 4;
             }
 
-            boolean anyTriggered = false;
-            do {
-                for (int id : ids) {
-                    if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-                    anyTriggered = fences.get(id);
-                    if (anyTriggered) break;
-                }
+            if (isAnyTriggered(ids)) return;
+
+            if (client.park()) {
+                waiters.add(new FenceWaiter(client, ids));
+                return;
+            }
+
+            FenceWaiter waiter = new FenceWaiter(client, ids);
+            waiters.add(waiter);
+            try {
+                while (waiters.contains(waiter) && !isAnyTriggered(ids)) fences.wait();
             }
-            while (!anyTriggered);
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                waiters.remove(waiter);
+            }
+        }
+    }
+
+    private boolean isAnyTriggered(int[] ids) throws BadFence {
+        for (int id : ids) {
+            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
+            if (fences.get(id, false)) return true;
         }
+        return false;
     }
 
     @Override
@@ -78,8 +78,7 @@ public abstract class DrawRequests {
         Drawable drawable =  client.xServer.drawableManager.getDrawable(drawableId);
         if (drawable == null) throw new BadDrawable(drawableId);
         int visualId = client.xServer.pixmapManager.getPixmap(drawableId) == null ? drawable.visual.id : 0;
-        ByteBuffer data = drawable.getImage(x, y, width, height);
-        int length = data.limit();
+        int length = width * height * 4;
 
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
@@ -88,8 +87,7 @@ public abstract class DrawRequests {
             outputStream.writeInt((length + 3) / 4);
             outputStream.writeInt(visualId);
             outputStream.writePad(20);
-            outputStream.write(data);
-            if ((-length & 3) > 0) outputStream.writePad(-length & 3);
+            drawable.writeImage(x, y, width, height, outputStream);
         }
     }
 
@@ -106,15 +104,9 @@ public abstract class DrawRequests {
 
         Drawable srcDrawable = client.xServer.drawableManager.getDrawable(srcDrawableId);
         if (srcDrawable == null) throw new BadDrawable(srcDrawableId);
-        if (srcDrawable.getData() == null) {
-            throw new IllegalStateException("srcDrawable has null data!");
-        }
 
         Drawable dstDrawable = client.xServer.drawableManager.getDrawable(dstDrawableId);
         if (dstDrawable == null) throw new BadDrawable(dstDrawableId);
-        if (dstDrawable.getData() == null) {
-            throw new IllegalStateException("dstDrawable has null data!");
-        }
 
 
         GraphicsContext graphicsContext =  client.xServer.graphicsContextManager.getGraphicsContext(gcId);
@@ -25,6 +25,7 @@ import com.winlator.cmod.xserver.errors.XRequestError;
 import com.winlator.cmod.xserver.events.RawEvent;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public abstract class WindowRequests {
@@ -172,10 +173,9 @@ public abstract class WindowRequests {
         int length  = inputStream.readInt();
         int totalSize = length * (format >> 3);
 
-        byte[] data = null;
+        ByteBuffer data = null;
         if (totalSize > 0) {
-            data = new byte[totalSize];
-            inputStream.read(data);
+            data = inputStream.readByteBuffer(totalSize);
             inputStream.skip(-totalSize & 3);
         }
 
@@ -228,11 +228,11 @@ public abstract class WindowRequests {
                 outputStream.writePad(12);
             }
             else {
-                byte[] data = property.data.array();
+                int size = property.size();
                 int offset = longOffset * 4;
-                int length = Math.min(data.length - offset, longLength * 4);
+                int length = Math.min(size - offset, longLength * 4);
                 if (length < 0) throw new BadValue(longOffset);
-                bytesAfter = data.length - (offset + length);
+                bytesAfter = size - (offset + length);
 
                 outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                 outputStream.writeByte(property.format.value);
@@ -242,7 +242,7 @@ public abstract class WindowRequests {
                 outputStream.writeInt(bytesAfter);
                 outputStream.writeInt(length / (property.format.value / 8));
                 outputStream.writePad(12);
-                outputStream.write(data, offset, length);
+                property.write(outputStream, offset, length);
                 if ((-length & 3) > 0) outputStream.writePad(-length & 3);
             }
         }
@@ -260,6 +260,7 @@ public abstract class WindowRequests {
         short rootY = client.xServer.pointer.getClampedY();
         Window child = window.getChildByCoords(rootX, rootY);
         short[] localPoint = window.rootPointToLocal(rootX, rootY);
+        client.setMotionHintSent(false);
 
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
@@ -0,0 +1,269 @@
+package com.winlator.cmod.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TarCompressorUtilsTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /** One archive entry: a directory when the name ends with a slash, a symlink when linkName is set. */
+    private static class Entry {
+        private final String name;
+        private final byte[] data;
+        private final String linkName;
+
+        private Entry(String name, byte[] data, String linkName) {
+            this.name = name;
+            this.data = data;
+            this.linkName = linkName;
+        }
+    }
+
+    private static Entry file(String name, byte[] data) {
+        return new Entry(name, data, null);
+    }
+
+    private static Entry directory(String name) {
+        return new Entry(name + "/", null, null);
+    }
+
+    private static Entry symlink(String name, String linkName) {
+        return new Entry(name, null, linkName);
+    }
+
+    private static byte[] content(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private File writeArchive(ArrayList<Entry> entries, boolean compressed) throws IOException {
+        File archive = tempFolder.newFile();
+        OutputStream outStream = new BufferedOutputStream(new FileOutputStream(archive));
+        if (compressed) outStream = new XZCompressorOutputStream(outStream, 0);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(outStream)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+            for (Entry entry : entries) {
+                TarArchiveEntry tarEntry;
+                if (entry.linkName != null) {
+                    tarEntry = new TarArchiveEntry(entry.name, TarConstants.LF_SYMLINK);
+                    tarEntry.setLinkName(entry.linkName);
+                }
+                else tarEntry = new TarArchiveEntry(entry.name);
+
+                if (entry.data != null) tarEntry.setSize(entry.data.length);
+                tar.putArchiveEntry(tarEntry);
+                if (entry.data != null) tar.write(entry.data);
+                tar.closeArchiveEntry();
+            }
+            tar.finish();
+        }
+        return archive;
+    }
+
+    private boolean extract(ArrayList<Entry> entries, File destination) throws IOException {
+        return TarCompressorUtils.extract(TarCompressorUtils.Type.XZ, writeArchive(entries, true), destination);
+    }
+
+    private static void assertContent(byte[] expected, File file) throws IOException {
+        assertTrue(file.getPath(), file.isFile());
+        assertArrayEquals(file.getPath(), expected, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void directoriesAreCreatedBeforeTheirChildren() throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>();
+        entries.add(directory("root"));
+        for (int i = 0; i < 40; i++) {
+            entries.add(directory("root/dir" + i));
+            for (int j = 0; j < 20; j++) entries.add(file("root/dir" + i + "/file" + j, content(i * 100 + j, 64 + j * 16)));
+            entries.add(directory("root/dir" + i + "/sub"));
+            entries.add(file("root/dir" + i + "/sub/file", content(i, 32)));
+        }
+
+        File destination = tempFolder.newFolder();
+        assertTrue(extract(entries, destination));
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 20; j++) assertContent(content(i * 100 + j, 64 + j * 16), new File(destination, "root/dir" + i + "/file" + j));
+            assertContent(content(i, 32), new File(destination, "root/dir" + i + "/sub/file"));
+        }
+    }
+
+    @Test
+    public void laterEntryReplacesEarlierFileAtSamePath() throws IOException {
+        // Many paths so the first writes are likely still queued when the replacing entry comes
+        ArrayList<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            entries.add(file("file" + i, content(i, 4096)));
+            entries.add(file("dir" + i, content(i, 4096)));
+            entries.add(file("link" + i, content(i, 4096)));
+        }
+        for (int i = 0; i < 200; i++) {
+            entries.add(file("file" + i, content(i + 1000, 100)));
+            entries.add(directory("dir" + i));
+            entries.add(file("dir" + i + "/child", content(i + 2000, 100)));
+            entries.add(symlink("link" + i, "file" + i));
+        }
+
+        File destination = tempFolder.newFolder();
+        assertTrue(extract(entries, destination));
+        for (int i = 0; i < 200; i++) {
+            assertContent(content(i + 1000, 100), new File(destination, "file" + i));
+            assertTrue(new File(destination, "dir" + i).isDirectory());
+            assertContent(content(i + 2000, 100), new File(destination, "dir" + i + "/child"));
+
+            // The earlier file must not come back after the link replaced it
+            File link = new File(destination, "link" + i);
+            assertTrue(link.getPath(), FileUtils.isSymlink(link) || !link.exists());
+        }
+    }
+
+    @Test
+    public void writeFailureMakesExtractReturnFalse() throws IOException {
+        File destination = tempFolder.newFolder();
+        assertTrue(new File(destination, "blocked").createNewFile());
+
+        ArrayList<Entry> entries = new ArrayList<>();
+        entries.add(file("ok", content(1, 100)));
+        entries.add(file("blocked/small", content(2, 100)));
+        entries.add(file("after", content(3, 100)));
+        assertFalse(extract(entries, destination));
+
+        entries.clear();
+        entries.add(file("blocked/large", content(4, 2 * 1024 * 1024)));
+        assertFalse(extract(entries, destination));
+    }
+
+    private static void assertSameTree(File expected, File actual) throws IOException {
+        String[] names = expected.list();
+        assertTrue(actual.getPath(), actual.isDirectory());
+        assertEquals(actual.getPath(), names.length, actual.list().length);
+        for (String name : names) {
+            File file = new File(expected, name);
+            if (file.isDirectory()) {
+                assertSameTree(file, new File(actual, name));
+            }
+            else assertContent(Files.readAllBytes(file.toPath()), new File(actual, name));
+        }
+    }
+
+    /** Counts frame or stream headers, each compressed block starts a new one. */
+    private static int countMagic(File file, byte[] magic) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        int count = 0;
+        for (int i = 0; i + magic.length <= data.length; i++) {
+            int j = 0;
+            while (j < magic.length && data[i + j] == magic[j]) j++;
+            if (j == magic.length) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void multiBlockOutputRoundTrips() throws IOException {
+        // 20 MiB of incompressible data next to many small files, three 8 MiB compression blocks
+        File source = tempFolder.newFolder("source");
+        for (int i = 0; i < 4; i++) Files.write(new File(source, "big" + i).toPath(), content(i, 5 * 1024 * 1024));
+        File small = new File(source, "small");
+        assertTrue(small.mkdir());
+        for (int i = 0; i < 1000; i++) Files.write(new File(small, "file" + i).toPath(), content(i + 10, 64 + (i % 50) * 64));
+
+        int compressionWorkerCount = TarCompressorUtils.getCompressionWorkerCount();
+        TarCompressorUtils.setCompressionWorkerCount(4);
+        try {
+            File archive = new File(tempFolder.getRoot(), "archive.tzst");
+            TarCompressorUtils.compress(TarCompressorUtils.Type.ZSTD, source, archive, 1);
+            assertTrue(countMagic(archive, new byte[]{0x28, (byte)0xb5, 0x2f, (byte)0xfd}) >= 3);
+            File destination = tempFolder.newFolder();
+            assertTrue(TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, archive, destination));
+            assertSameTree(source, new File(destination, "source"));
+
+            archive = new File(tempFolder.getRoot(), "archive.txz");
+            TarCompressorUtils.compress(TarCompressorUtils.Type.XZ, source, archive, 0);
+            assertTrue(countMagic(archive, new byte[]{(byte)0xfd, '7', 'z', 'X', 'Z', 0}) >= 3);
+            destination = tempFolder.newFolder();
+            assertTrue(TarCompressorUtils.extract(TarCompressorUtils.Type.XZ, archive, destination));
+            assertSameTree(source, new File(destination, "source"));
+        }
+        finally {
+            TarCompressorUtils.setCompressionWorkerCount(compressionWorkerCount);
+        }
+    }
+
+    /** What extractTar did before writes were queued: every file written inline, one after another. */
+    private static void extractSequentially(File archive, File destination) throws IOException {
+        try (InputStream inStream = new BufferedInputStream(new FileInputStream(archive), StreamUtils.BUFFER_SIZE);
+             TarArchiveInputStream tar = new TarArchiveInputStream(inStream)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                File file = new File(destination, entry.getName());
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                }
+                else {
+                    try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
+                        StreamUtils.copy(tar, outStream);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkImagefsSizedArchive() throws IOException {
+        final int directoryCount = 100;
+        final int filesPerDirectory = 40;
+        Random random = new Random(3);
+        ArrayList<Entry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        entries.add(directory("imagefs"));
+        for (int i = 0; i < directoryCount; i++) {
+            entries.add(directory("imagefs/usr/lib" + i));
+            for (int j = 0; j < filesPerDirectory; j++) {
+                byte[] data = content(i * filesPerDirectory + j, 256 + random.nextInt(16 * 1024));
+                entries.add(file("imagefs/usr/lib" + i + "/lib" + j + ".so", data));
+                totalBytes += data.length;
+            }
+        }
+        File archive = writeArchive(entries, false);
+
+        File sequentialDestination = tempFolder.newFolder();
+        long startTime = System.nanoTime();
+        extractSequentially(archive, sequentialDestination);
+        long sequentialTime = System.nanoTime() - startTime;
+
+        File destination = tempFolder.newFolder();
+        startTime = System.nanoTime();
+        assertTrue(TarCompressorUtils.extractTar(archive, destination, null));
+        long parallelTime = System.nanoTime() - startTime;
+
+        for (int i = 0; i < directoryCount; i += 7) {
+            assertContent(Files.readAllBytes(new File(sequentialDestination, "imagefs/usr/lib" + i + "/lib0.so").toPath()), new File(destination, "usr/lib" + i + "/lib0.so"));
+        }
+        System.out.printf("TarCompressorUtils (%d files, %.1f MB): sequential %.2f ms, parallel writer %.2f ms%n", directoryCount * filesPerDirectory, totalBytes / (1024.0 * 1024.0), sequentialTime / 1e6, parallelTime / 1e6);
+    }
+}
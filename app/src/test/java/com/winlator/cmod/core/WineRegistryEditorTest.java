@@ -0,0 +1,184 @@
+package com.winlator.cmod.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class WineRegistryEditorTest {
+    private static final String HEADER = "WINE REGISTRY Version 2\n;; All keys relative to \\\\User\\\\S-1-5-21-0-0-0-1000\n\n#arch=win64\n\n";
+    private static final String DESKTOP = "[Control Panel\\\\Desktop] 1700000000\n#time=1da0000aaaaaaaa\n\"FontSmoothing\"=\"2\"\n" +
+            "\"UserPreferencesMask\"=hex:9e,1e,07,80,12,00,00,00,00,00,00,00,00,00,00,00,00,00,00,00,\\\n  00,00,00,00\n";
+    private static final String DIRECT3D = "[Software\\\\Wine\\\\Direct3D] 1700000001\n#time=1da0000bbbbbbbb\n\"csmt\"=dword:00000001\n\"renderer\"=\"gl\"\n";
+    private static final String DRIVERS = "[Software\\\\Wine\\\\Drivers] 1700000002\n#time=1da0000cccccccc\n\"Audio\"=\"alsa\"\n";
+    private static final String X11_DRIVER = "[Software\\\\Wine\\\\X11 Driver] 1700000003\n#time=1da0000dddddddd\n\"Decorated\"=\"Y\"\n";
+    private static final String X11_DRIVER_SUB = "[Software\\\\Wine\\\\X11 Driver\\\\Sub] 1700000004\n#time=1da0000eeeeeeee\n@=\"default\"\n";
+    private static final String SAMPLE = HEADER + DESKTOP + "\n" + DIRECT3D + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File writeFile(String content) throws IOException {
+        File file = tempFolder.newFile("user.reg");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /** Created keys carry the current time, this replaces every key time so the output can be compared. */
+    private static String withoutCreationTime(String content) {
+        return content.replaceAll("\\] \\d+\\n#time=[0-9a-f]+\\n", "] 0\n#time=0\n");
+    }
+
+    private static String createdKey(String name, String values) {
+        return "[" + name + "] 0\n#time=0\n" + values;
+    }
+
+    @Test
+    public void untouchedSectionsStayByteIdentical() throws IOException {
+        File file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            editor.setDwordValue("Software\\Wine\\Direct3D", "csmt", 0);
+            editor.setStringValue("Software\\Wine\\Direct3D", "VideoMemorySize", "2048");
+        }
+
+        String direct3D = "[Software\\\\Wine\\\\Direct3D] 1700000001\n#time=1da0000bbbbbbbb\n\"csmt\"=dword:00000000\n\"renderer\"=\"gl\"\n\"VideoMemorySize\"=\"2048\"\n";
+        assertEquals(HEADER + DESKTOP + "\n" + direct3D + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB, readFile(file));
+    }
+
+    @Test
+    public void readOnlyUseLeavesTheFileAlone() throws IOException {
+        File file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            assertEquals("alsa", editor.getStringValue("Software\\Wine\\Drivers", "Audio"));
+            assertEquals(Integer.valueOf(1), editor.getDwordValue("Software\\Wine\\Direct3D", "csmt"));
+            assertNull(editor.getStringValue("Software\\Wine\\Missing", "Audio"));
+        }
+        assertEquals(SAMPLE, readFile(file));
+        assertEquals(1, tempFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void newSubkeyLandsAfterFirstKeyWithParentPrefix() throws IOException {
+        File file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            editor.setStringValue("Software\\Wine\\AppDefaults\\game.exe\\DllOverrides", "d3d9", "native");
+            editor.setStringValue("Software\\Wine\\X11 Driver\\Sub\\Deeper", "a", "1");
+            editor.setStringValue("Environment", "PATH", "C:\\windows");
+        }
+
+        String dllOverrides = createdKey("Software\\\\Wine\\\\AppDefaults\\\\game.exe\\\\DllOverrides", "\"d3d9\"=\"native\"\n");
+        String deeper = createdKey("Software\\\\Wine\\\\X11 Driver\\\\Sub\\\\Deeper", "\"a\"=\"1\"\n");
+        String environment = createdKey("Environment", "\"PATH\"=\"C:\\\\windows\"\n");
+        assertEquals(withoutCreationTime(HEADER + DESKTOP + "\n" + DIRECT3D + "\n" + dllOverrides + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" +
+                X11_DRIVER_SUB + "\n" + deeper + "\n" + environment), withoutCreationTime(readFile(file)));
+    }
+
+    @Test
+    public void multiLineHexValuesParse() throws IOException {
+        File file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            // Continuation lines belong to the value, they neither end the key nor read as values of their own
+            editor.setStringValue("Control Panel\\Desktop", "FontSmoothing", "0");
+            editor.setStringValue("Control Panel\\Desktop", "CursorBlinkRate", "530");
+        }
+        String desktop = "[Control Panel\\\\Desktop] 1700000000\n#time=1da0000aaaaaaaa\n\"FontSmoothing\"=\"0\"\n" +
+                "\"UserPreferencesMask\"=hex:9e,1e,07,80,12,00,00,00,00,00,00,00,00,00,00,00,00,00,00,00,\\\n  00,00,00,00\n\"CursorBlinkRate\"=\"530\"\n";
+        assertEquals(HEADER + desktop + "\n" + DIRECT3D + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB, readFile(file));
+
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            editor.setHexValue("Control Panel\\Desktop", "UserPreferencesMask", new byte[]{(byte)0x90, 0x12});
+        }
+        desktop = "[Control Panel\\\\Desktop] 1700000000\n#time=1da0000aaaaaaaa\n\"FontSmoothing\"=\"0\"\n" +
+                "\"UserPreferencesMask\"=hex:90,12\n\"CursorBlinkRate\"=\"530\"\n";
+        assertEquals(HEADER + desktop + "\n" + DIRECT3D + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB, readFile(file));
+
+        file.delete();
+        file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            editor.removeValue("Control Panel\\Desktop", "UserPreferencesMask");
+        }
+        desktop = "[Control Panel\\\\Desktop] 1700000000\n#time=1da0000aaaaaaaa\n\"FontSmoothing\"=\"2\"\n";
+        assertEquals(HEADER + desktop + "\n" + DIRECT3D + "\n" + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB, readFile(file));
+    }
+
+    @Test
+    public void removeKeyTree() throws IOException {
+        File file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            assertFalse(editor.removeKey("Software\\Wine\\Missing", true));
+            assertTrue(editor.removeKey("Software\\Wine\\X11 Driver", true));
+            assertNull(editor.getStringValue("Software\\Wine\\X11 Driver\\Sub", null));
+        }
+        // The line break in front of the removed keys goes with them
+        assertEquals(HEADER + DESKTOP + "\n" + DIRECT3D + "\n" + DRIVERS, readFile(file));
+
+        file.delete();
+        file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            assertTrue(editor.removeKey("Software\\Wine\\Direct3D", true));
+            assertTrue(editor.removeKey("Control Panel\\Desktop"));
+        }
+        assertEquals(HEADER + DRIVERS + "\n" + X11_DRIVER + "\n" + X11_DRIVER_SUB, readFile(file));
+
+        file.delete();
+        file = writeFile(SAMPLE);
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            assertTrue(editor.removeKey("Software", true));
+            assertTrue(editor.removeKey("Control Panel", true));
+        }
+        assertEquals("WINE REGISTRY Version 2\n;; All keys relative to \\\\User\\\\S-1-5-21-0-0-0-1000\n\n#arch=win64\n", readFile(file));
+    }
+
+    @Test
+    public void benchmarkHundredEditsOnFiveMegabyteFile() throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER);
+        int keyCount = 0;
+        while (sb.length() < 5 * 1024 * 1024) {
+            sb.append("[Software\\\\Classes\\\\CLSID\\\\{").append(String.format("%08x", keyCount)).append("-0000-0000-c000-000000000046}] 1700000000\n");
+            sb.append("#time=1da0000aaaaaaaa\n@=\"PSFactoryBuffer\"\n\"ThreadingModel\"=\"Both\"\n\"Index\"=dword:").append(String.format("%08x", keyCount)).append("\n\n");
+            keyCount++;
+        }
+        File file = writeFile(sb.toString());
+
+        Random random = new Random(7);
+        String[] keys = new String[100];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "Software\\Classes\\CLSID\\{" + String.format("%08x", random.nextInt(keyCount)) + "-0000-0000-c000-000000000046}";
+        }
+
+        long startTime = System.nanoTime();
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            for (int i = 0; i < keys.length; i++) {
+                if (i % 4 == 3) {
+                    editor.setStringValue(keys[i] + "\\InprocServer32", null, "ole32.dll");
+                }
+                else editor.setDwordValue(keys[i], "Edit", i);
+            }
+        }
+        long elapsedTime = System.nanoTime() - startTime;
+
+        try (WineRegistryEditor editor = new WineRegistryEditor(file)) {
+            for (int i = 0; i < keys.length; i++) {
+                if (i % 4 == 3) {
+                    assertEquals("ole32.dll", editor.getStringValue(keys[i] + "\\InprocServer32", null));
+                }
+                else assertTrue(editor.getDwordValue(keys[i], "Edit") >= i);
+            }
+        }
+        System.out.printf("WineRegistryEditor (%d edits on a %.1f MB file, %d keys): %.2f ms%n", keys.length, sb.length() / (1024.0 * 1024.0), keyCount, elapsedTime / 1e6);
+    }
+}
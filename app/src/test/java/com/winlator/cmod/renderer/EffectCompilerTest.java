@@ -0,0 +1,119 @@
+package com.winlator.cmod.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.winlator.cmod.renderer.effects.ColorEffect;
+import com.winlator.cmod.renderer.effects.Effect;
+import com.winlator.cmod.renderer.effects.FXAAEffect;
+import com.winlator.cmod.renderer.effects.ToonEffect;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class EffectCompilerTest {
+    private static int countOccurrences(String source, String pattern) {
+        int count = 0;
+        for (int index = source.indexOf(pattern); index != -1; index = source.indexOf(pattern, index + 1)) count++;
+        return count;
+    }
+
+    private static void assertWellFormed(String shader) {
+        assertEquals(countOccurrences(shader, "{"), countOccurrences(shader, "}"));
+        assertEquals(1, countOccurrences(shader, "void main()"));
+        assertEquals(1, countOccurrences(shader, "uniform sampler2D screenTexture;"));
+        assertTrue(shader.indexOf("uniform sampler2D screenTexture;") < shader.indexOf("fxColor"));
+    }
+
+    @Test
+    public void emptyChainHasNoPasses() {
+        assertTrue(EffectCompiler.compile(Collections.<Effect>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void samplingEffectsKeepTheirOwnShader() {
+        FXAAEffect fxaa = new FXAAEffect();
+        List<EffectCompiler.Pass> passes = EffectCompiler.compile(Collections.<Effect>singletonList(fxaa));
+        assertEquals(1, passes.size());
+        assertSame(fxaa, passes.get(0).samplingEffect);
+        assertEquals(fxaa.getMaterial().getFragmentShaderSource(), passes.get(0).getFragmentShader());
+        assertArrayEquals(new String[]{"resolution", "screenTexture"}, passes.get(0).getUniformNames());
+    }
+
+    @Test
+    public void colorOnlyChainBecomesOneCopyPass() {
+        List<EffectCompiler.Pass> passes = EffectCompiler.compile(Arrays.<Effect>asList(new ColorEffect(), new ColorEffect()));
+        assertEquals(1, passes.size());
+
+        EffectCompiler.Pass pass = passes.get(0);
+        assertNull(pass.samplingEffect);
+        assertEquals(2, pass.colorEffects.size());
+
+        String shader = pass.getFragmentShader();
+        assertWellFormed(shader);
+        assertTrue(shader.contains("uniform float fx0_brightness;"));
+        assertTrue(shader.contains("uniform float fx1_gamma;"));
+        assertFalse(shader.contains("sampleScreen"));
+        assertTrue(shader.contains("vec4 fragColor;"));
+        assertTrue(shader.contains("fragColor = texture2D(screenTexture, vUV);"));
+        assertTrue(shader.contains("gl_FragColor = fxColor1(fxColor0(fragColor));"));
+        assertArrayEquals(new String[]{"resolution", "screenTexture",
+            "fx0_brightness", "fx0_contrast", "fx0_gamma",
+            "fx1_brightness", "fx1_contrast", "fx1_gamma"}, pass.getUniformNames());
+    }
+
+    @Test
+    public void leadingColorEffectIsAppliedToEverySample() {
+        FXAAEffect fxaa = new FXAAEffect();
+        List<EffectCompiler.Pass> passes = EffectCompiler.compile(Arrays.<Effect>asList(new ColorEffect(), fxaa));
+        assertEquals(1, passes.size());
+
+        String shader = passes.get(0).getFragmentShader();
+        int sampleCount = countOccurrences(fxaa.getMaterial().getFragmentShaderSource(), "texture2D(screenTexture");
+        assertWellFormed(shader);
+        assertTrue(shader.contains("return fxColor0(texture2D(screenTexture, uv));"));
+        assertEquals(1, countOccurrences(shader, "texture2D(screenTexture"));
+        assertEquals(sampleCount + 1, countOccurrences(shader, "sampleScreen("));
+        assertFalse(shader.contains("fragColor"));
+    }
+
+    @Test
+    public void trailingColorEffectIsAppliedToTheOutput() {
+        List<EffectCompiler.Pass> passes = EffectCompiler.compile(Arrays.<Effect>asList(new FXAAEffect(), new ColorEffect()));
+        assertEquals(1, passes.size());
+
+        String shader = passes.get(0).getFragmentShader();
+        assertWellFormed(shader);
+        assertFalse(shader.contains("sampleScreen"));
+        assertTrue(shader.contains("vec4 fragColor;"));
+        assertEquals(1, countOccurrences(shader, "gl_FragColor"));
+        assertTrue(shader.trim().endsWith("gl_FragColor = fxColor0(fragColor);\n}"));
+    }
+
+    @Test
+    public void colorEffectsBetweenSamplingEffectsJoinThePreviousPass() {
+        ColorEffect first = new ColorEffect();
+        ColorEffect second = new ColorEffect();
+        ToonEffect toon = new ToonEffect();
+        List<EffectCompiler.Pass> passes = EffectCompiler.compile(Arrays.<Effect>asList(new FXAAEffect(), first, toon, second));
+        assertEquals(2, passes.size());
+
+        assertEquals(Collections.singletonList(first), passes.get(0).colorEffects);
+        assertSame(toon, passes.get(1).samplingEffect);
+        assertEquals(Collections.singletonList(second), passes.get(1).colorEffects);
+
+        for (EffectCompiler.Pass pass : passes) {
+            String shader = pass.getFragmentShader();
+            assertWellFormed(shader);
+            assertTrue(shader.contains("uniform float fx0_contrast;"));
+            assertFalse(shader.contains("fx1_"));
+        }
+    }
+}
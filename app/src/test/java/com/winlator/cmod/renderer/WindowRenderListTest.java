@@ -0,0 +1,177 @@
+package com.winlator.cmod.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.winlator.cmod.xserver.ScreenInfo;
+import com.winlator.cmod.xserver.Window;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class WindowRenderListTest {
+    private static final ScreenInfo SCREEN_INFO = new ScreenInfo(1280, 720);
+    private int nextId = 1;
+
+    private Window createRoot() {
+        Window root = new Window(nextId++, null, 0, 0, SCREEN_INFO.width, SCREEN_INFO.height, null);
+        root.attributes.setMapped(true);
+        return root;
+    }
+
+    private Window createChild(Window parent, int x, int y, int width, int height) {
+        Window window = new Window(nextId++, null, x, y, width, height, null);
+        window.attributes.setMapped(true);
+        parent.addChild(window);
+        return window;
+    }
+
+    private static void assertMatchesRebuild(Window root, WindowRenderList renderList) {
+        WindowRenderList rebuilt = new WindowRenderList(root, SCREEN_INFO);
+        rebuilt.setForceFullscreenWMClass(renderList.getForceFullscreenWMClass());
+        rebuilt.rebuild();
+
+        assertEquals(rebuilt.windows.size(), renderList.windows.size());
+        for (int i = 0; i < rebuilt.windows.size(); i++) {
+            RenderableWindow expected = rebuilt.windows.get(i);
+            RenderableWindow actual = renderList.windows.get(i);
+            assertSame(expected.window, actual.window);
+            assertEquals(expected.rootX, actual.rootX);
+            assertEquals(expected.rootY, actual.rootY);
+            assertEquals(expected.forceFullscreen, actual.forceFullscreen);
+        }
+    }
+
+    /** A desktop holding top-level windows, some of them frames around a single client window. */
+    private ArrayList<Window> createScene(Window root, Random random, int windowCount) {
+        ArrayList<Window> windows = new ArrayList<>();
+        Window desktop = createChild(root, 0, 0, SCREEN_INFO.width, SCREEN_INFO.height);
+        windows.add(desktop);
+        while (windows.size() < windowCount) {
+            int width = 320 + random.nextInt(600);
+            int height = 200 + random.nextInt(400);
+            Window parent = random.nextInt(4) == 0 ? windows.get(random.nextInt(windows.size())) : desktop;
+            Window window = createChild(parent, random.nextInt(800), random.nextInt(500), width, height);
+            windows.add(window);
+            if (random.nextInt(3) == 0) windows.add(createChild(window, 4, 20, width - 8, height - 24));
+            if (random.nextInt(5) == 0) window.attributes.setMapped(false);
+        }
+        return windows;
+    }
+
+    /** Applies one random edit, then the render list update GLRenderer queues for it. */
+    private static void applyRandomEdit(ArrayList<Window> windows, WindowRenderList renderList, Random random) {
+        Window window = windows.get(1 + random.nextInt(windows.size() - 1));
+        Window parent = window.getParent();
+        switch (random.nextInt(3)) {
+            case 0:
+                window.attributes.setMapped(!window.attributes.isMapped());
+                renderList.updateWindow(window);
+                break;
+            case 1: {
+                Window sibling = parent.getChildren().get(random.nextInt(parent.getChildCount()));
+                if (random.nextBoolean()) {
+                    parent.moveChildAbove(window, sibling);
+                }
+                else parent.moveChildBelow(window, sibling);
+                renderList.restackWindow(window);
+                break;
+            }
+            case 2:
+                window.setWidth((short)(parent.getWidth() - random.nextInt(16)));
+                window.setHeight((short)(parent.getHeight() - random.nextInt(40)));
+                renderList.updateWindow(window);
+                break;
+        }
+    }
+
+    @Test
+    public void restackMovesSubtreeWithoutCollecting() {
+        Window root = createRoot();
+        Window bottom = createChild(root, 0, 0, 100, 100);
+        Window bottomChild = createChild(bottom, 10, 10, 20, 20);
+        Window top = createChild(root, 50, 50, 100, 100);
+        WindowRenderList renderList = new WindowRenderList(root, SCREEN_INFO);
+        renderList.rebuild();
+        RenderableWindow bottomEntry = renderList.windows.get(0);
+
+        root.moveChildAbove(bottom, top);
+        renderList.restackWindow(bottom);
+
+        assertEquals(3, renderList.windows.size());
+        assertSame(top, renderList.windows.get(0).window);
+        assertSame(bottomEntry, renderList.windows.get(1));
+        assertSame(bottomChild, renderList.windows.get(2).window);
+        assertEquals(1, renderList.getRebuildCount());
+    }
+
+    @Test
+    public void mapAndUnmapSpliceOnlyTheWindowSubtree() {
+        Window root = createRoot();
+        Window first = createChild(root, 0, 0, 100, 100);
+        Window second = createChild(root, 10, 10, 100, 100);
+        Window third = createChild(root, 20, 20, 100, 100);
+        WindowRenderList renderList = new WindowRenderList(root, SCREEN_INFO);
+        renderList.rebuild();
+        RenderableWindow firstEntry = renderList.windows.get(0);
+        RenderableWindow thirdEntry = renderList.windows.get(2);
+
+        second.attributes.setMapped(false);
+        renderList.updateWindow(second);
+        assertEquals(2, renderList.windows.size());
+
+        second.attributes.setMapped(true);
+        renderList.updateWindow(second);
+        assertSame(firstEntry, renderList.windows.get(0));
+        assertSame(second, renderList.windows.get(1).window);
+        assertSame(thirdEntry, renderList.windows.get(2));
+        assertEquals(1, renderList.getRebuildCount());
+    }
+
+    @Test
+    public void forceFullscreenFrameReturnsWhenItsClientUnmaps() {
+        Window root = createRoot();
+        Window frame = createChild(root, 100, 100, 808, 628);
+        Window client = createChild(frame, 4, 24, 800, 600);
+        WindowRenderList renderList = new WindowRenderList(root, SCREEN_INFO);
+        renderList.setForceFullscreenWMClass("game.exe");
+        renderList.rebuild();
+
+        assertEquals(1, renderList.windows.size());
+        assertTrue(renderList.windows.get(0).forceFullscreen);
+
+        client.attributes.setMapped(false);
+        renderList.updateWindow(client);
+        assertEquals(1, renderList.windows.size());
+        assertSame(frame, renderList.windows.get(0).window);
+        assertFalse(renderList.windows.get(0).forceFullscreen);
+
+        client.attributes.setMapped(true);
+        renderList.updateWindow(client);
+        assertEquals(1, renderList.windows.size());
+        assertSame(client, renderList.windows.get(0).window);
+        assertMatchesRebuild(root, renderList);
+    }
+
+    @Test
+    public void incrementalUpdatesMatchFullRebuild() {
+        for (String forceFullscreenWMClass : new String[]{null, "game.exe"}) {
+            Random random = new Random(19);
+            Window root = createRoot();
+            ArrayList<Window> windows = createScene(root, random, 200);
+            WindowRenderList renderList = new WindowRenderList(root, SCREEN_INFO);
+            renderList.setForceFullscreenWMClass(forceFullscreenWMClass);
+            renderList.rebuild();
+
+            for (int i = 0; i < 2000; i++) {
+                applyRandomEdit(windows, renderList, random);
+                assertMatchesRebuild(root, renderList);
+            }
+            assertEquals(1, renderList.getRebuildCount());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.winlator.cmod.winhandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class GamepadStateBufferTest {
+    private static ByteBuffer allocateMapping() {
+        return ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] uniformState(int value) {
+        byte[] state = new byte[GamepadStateBuffer.STATE_SIZE];
+        Arrays.fill(state, (byte)value);
+        return state;
+    }
+
+    /** Same protocol as read_gamepad_state() in evshim.c. */
+    private static boolean readSnapshot(ByteBuffer buffer, byte[] out) {
+        int before = buffer.getInt(GamepadStateBuffer.SEQUENCE_OFFSET);
+        if ((before & 1) != 0) return false;
+        VarHandle.acquireFence();
+        for (int i = 0; i < out.length; i++) out[i] = buffer.get(i);
+        VarHandle.loadLoadFence();
+        return buffer.getInt(GamepadStateBuffer.SEQUENCE_OFFSET) == before;
+    }
+
+    @Test
+    public void publishWritesStateWithEvenSequence() {
+        ByteBuffer buffer = allocateMapping();
+        GamepadStateBuffer slot = new GamepadStateBuffer(buffer);
+        byte[] state = uniformState(7);
+        state[3] = 42;
+        slot.publish(state);
+
+        byte[] snapshot = new byte[GamepadStateBuffer.STATE_SIZE];
+        assertTrue(readSnapshot(buffer, snapshot));
+        assertArrayEquals(state, snapshot);
+        assertEquals(2, buffer.getInt(GamepadStateBuffer.SEQUENCE_OFFSET));
+    }
+
+    @Test
+    public void unchangedStateIsNotRepublished() {
+        ByteBuffer buffer = allocateMapping();
+        GamepadStateBuffer slot = new GamepadStateBuffer(buffer);
+        slot.publish(uniformState(1));
+        slot.publish(uniformState(1));
+        assertEquals(2, buffer.getInt(GamepadStateBuffer.SEQUENCE_OFFSET));
+
+        slot.publish(uniformState(2));
+        assertEquals(4, buffer.getInt(GamepadStateBuffer.SEQUENCE_OFFSET));
+    }
+
+    @Test
+    public void leavesRumbleBytesUntouched() {
+        ByteBuffer buffer = allocateMapping();
+        buffer.putInt(32, 0x12345678);
+        GamepadStateBuffer slot = new GamepadStateBuffer(buffer);
+        slot.publish(uniformState(9));
+        assertEquals(0x12345678, buffer.getInt(32));
+    }
+
+    @Test
+    public void concurrentReaderNeverSeesTornState() throws InterruptedException {
+        final ByteBuffer buffer = allocateMapping();
+        final GamepadStateBuffer slot = new GamepadStateBuffer(buffer);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final byte[][] states = new byte[256][];
+        for (int i = 0; i < states.length; i++) states[i] = uniformState(i);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2_000_000; i++) slot.publish(states[i & 0xff]);
+            running.set(false);
+        });
+        writer.start();
+
+        byte[] snapshot = new byte[GamepadStateBuffer.STATE_SIZE];
+        long snapshots = 0, torn = 0;
+        while (running.get()) {
+            if (!readSnapshot(buffer, snapshot)) continue;
+            snapshots++;
+            for (int i = 1; i < snapshot.length; i++) {
+                if (snapshot[i] != snapshot[0]) {
+                    torn++;
+                    break;
+                }
+            }
+        }
+        writer.join();
+
+        System.out.printf("GamepadStateBuffer: %d consistent snapshots, %d torn%n", snapshots, torn);
+        assertEquals(0, torn);
+    }
+}
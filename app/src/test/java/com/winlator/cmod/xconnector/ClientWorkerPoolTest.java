@@ -0,0 +1,134 @@
+package com.winlator.cmod.xconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientWorkerPoolTest {
+    private static final int WORKER_COUNT = 4;
+
+    /** A connected client as the epoll thread sees it, recording the order its batches ran in. */
+    private static class StandInClient extends Client {
+        private final ArrayList<Integer> handledBatches = new ArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger overlaps = new AtomicInteger();
+
+        private StandInClient(int fd) {
+            super(null, new ClientSocket(fd));
+        }
+
+        private Runnable batch(int sequenceNumber, int requestCount, CountDownLatch done) {
+            return () -> {
+                if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+                for (int i = 0; i < requestCount; i++) handleRequest(sequenceNumber + i);
+                handledBatches.add(sequenceNumber);
+                running.decrementAndGet();
+                done.countDown();
+            };
+        }
+    }
+
+    /** Stands in for decoding and handling one small request. */
+    private static int handleRequest(int value) {
+        int hash = value;
+        for (int i = 0; i < 64; i++) hash = hash * 31 + i;
+        return hash;
+    }
+
+    private static ArrayList<StandInClient> createClients(int count) {
+        ArrayList<StandInClient> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) clients.add(new StandInClient(100 + i));
+        return clients;
+    }
+
+    /** Submits batchCount batches per client from one thread, as the epoll thread does, and waits for all of them. */
+    private static long submitBatches(ClientWorkerPool workerPool, ArrayList<StandInClient> clients, int batchCount, int requestsPerBatch) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(clients.size() * batchCount);
+        Random random = new Random(5);
+        int[] nextBatch = new int[clients.size()];
+        long startTime = System.nanoTime();
+        for (int submitted = 0; submitted < clients.size() * batchCount;) {
+            int index = random.nextInt(clients.size());
+            if (nextBatch[index] == batchCount) continue;
+            StandInClient client = clients.get(index);
+            workerPool.execute(client, client.batch(nextBatch[index]++, requestsPerBatch, done));
+            submitted++;
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return System.nanoTime() - startTime;
+    }
+
+    @Test
+    public void batchesOfOneClientRunInOrderAndNeverOverlap() throws InterruptedException {
+        ClientWorkerPool workerPool = new ClientWorkerPool(WORKER_COUNT);
+        ArrayList<StandInClient> clients = createClients(16);
+        submitBatches(workerPool, clients, 2000, 4);
+        workerPool.shutdown(1, TimeUnit.SECONDS);
+
+        for (StandInClient client : clients) {
+            assertEquals(0, client.overlaps.get());
+            assertEquals(2000, client.handledBatches.size());
+            for (int i = 0; i < client.handledBatches.size(); i++) assertEquals(i, (int)client.handledBatches.get(i));
+        }
+    }
+
+    @Test
+    public void blockedClientDoesNotStallOthers() throws InterruptedException {
+        ClientWorkerPool workerPool = new ClientWorkerPool(2);
+        ArrayList<StandInClient> clients = createClients(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blockedDone = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+
+        workerPool.execute(clients.get(0), () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {}
+        });
+        workerPool.execute(clients.get(0), clients.get(0).batch(1, 1, blockedDone));
+        workerPool.execute(clients.get(1), clients.get(1).batch(0, 1, otherDone));
+
+        assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+        assertTrue(clients.get(0).handledBatches.isEmpty());
+        release.countDown();
+        assertTrue(blockedDone.await(10, TimeUnit.SECONDS));
+        workerPool.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void failingBatchDoesNotStrandLaterBatches() throws InterruptedException {
+        ClientWorkerPool workerPool = new ClientWorkerPool(1);
+        StandInClient client = createClients(1).get(0);
+        CountDownLatch done = new CountDownLatch(1);
+
+        workerPool.execute(client, () -> {
+            throw new IllegalStateException();
+        });
+        workerPool.execute(client, client.batch(1, 1, done));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        workerPool.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void benchmarkRequestsPerSecond() throws InterruptedException {
+        final int requestsPerBatch = 16;
+        final int totalBatches = 32000;
+        StringBuilder sb = new StringBuilder();
+        for (int clientCount : new int[]{1, 4, 16}) {
+            ClientWorkerPool workerPool = new ClientWorkerPool(WORKER_COUNT);
+            long elapsedTime = submitBatches(workerPool, createClients(clientCount), totalBatches / clientCount, requestsPerBatch);
+            workerPool.shutdown(1, TimeUnit.SECONDS);
+            sb.append(String.format(" %d clients %.0f req/s;", clientCount, (long)totalBatches * requestsPerBatch / (elapsedTime / 1e9)));
+        }
+        System.out.println("ClientWorkerPool (" + WORKER_COUNT + " workers):" + sb);
+    }
+}
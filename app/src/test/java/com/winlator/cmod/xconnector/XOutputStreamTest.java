@@ -0,0 +1,141 @@
+package com.winlator.cmod.xconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class XOutputStreamTest {
+    private static final int EVENT_COUNT = 1000;
+
+    /** Counts the write syscalls XOutputStream would make instead of sending anything. */
+    private static class CountingClientSocket extends ClientSocket {
+        private int writeCount = 0;
+        private long bytesWritten = 0;
+
+        private CountingClientSocket() {
+            super(-1);
+        }
+
+        @Override
+        public void write(ByteBuffer data) {
+            writeCount++;
+            bytesWritten += data.remaining();
+            data.position(data.limit());
+        }
+    }
+
+    private static void writeEvent(XOutputStream outputStream, byte code, int sequenceNumber) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte(code);
+            outputStream.writeByte((byte)0);
+            outputStream.writeShort((short)sequenceNumber);
+            outputStream.writePad(28);
+        }
+    }
+
+    /** Sends a reply of the given size, which is flushed right away. */
+    private static void writeReply(XOutputStream outputStream, int sequenceNumber, int length) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte((byte)1);
+            outputStream.writeByte((byte)0);
+            outputStream.writeShort((short)sequenceNumber);
+            outputStream.writeInt((length - 32) / 4);
+            outputStream.write(new byte[length - 8]);
+        }
+    }
+
+    private static long getBufferAcquireCount() {
+        return DirectBufferPool.getHitCount() + DirectBufferPool.getMissCount();
+    }
+
+    /** Sends EVENT_COUNT MotionNotify events, flushing pending output after every epoll iteration of eventsPerIteration. */
+    private static CountingClientSocket sendEvents(boolean deferredFlush, int eventsPerIteration) throws IOException {
+        CountingClientSocket clientSocket = new CountingClientSocket();
+        XOutputStream outputStream = new XOutputStream(clientSocket, 4096);
+        outputStream.setDeferredFlush(deferredFlush);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            writeEvent(outputStream, (byte)6, i);
+            if ((i + 1) % eventsPerIteration == 0) outputStream.flushPending();
+        }
+        outputStream.flushPending();
+        assertEquals(EVENT_COUNT * 32L, clientSocket.bytesWritten);
+        return clientSocket;
+    }
+
+    @Test
+    public void immediateFlushWritesEveryEvent() throws IOException {
+        assertEquals(EVENT_COUNT, sendEvents(false, 8).writeCount);
+    }
+
+    @Test
+    public void deferredFlushWritesOncePerIteration() throws IOException {
+        assertEquals(EVENT_COUNT / 8, sendEvents(true, 8).writeCount);
+        assertEquals(4, sendEvents(true, 256).writeCount);
+        // 32000 bytes in one iteration cross the 16 KiB flush threshold once
+        assertEquals(2, sendEvents(true, EVENT_COUNT).writeCount);
+    }
+
+    @Test
+    public void repliesAndErrorsAreNotDeferred() throws IOException {
+        CountingClientSocket clientSocket = new CountingClientSocket();
+        XOutputStream outputStream = new XOutputStream(clientSocket, 4096);
+        outputStream.setDeferredFlush(true);
+
+        writeEvent(outputStream, (byte)6, 1);
+        assertEquals(0, clientSocket.writeCount);
+        outputStream.writeSuccessReply(2, 0);
+        assertEquals(1, clientSocket.writeCount);
+        assertEquals(64, clientSocket.bytesWritten);
+
+        writeEvent(outputStream, (byte)0, 3);
+        assertEquals(2, clientSocket.writeCount);
+    }
+
+    @Test
+    public void deferredFlushHonoursThreshold() throws IOException {
+        CountingClientSocket clientSocket = new CountingClientSocket();
+        XOutputStream outputStream = new XOutputStream(clientSocket, 4096);
+        outputStream.setDeferredFlush(true);
+        outputStream.setFlushThreshold(32 * 10);
+        for (int i = 0; i < 100; i++) writeEvent(outputStream, (byte)6, i);
+        assertEquals(10, clientSocket.writeCount);
+    }
+
+    @Test
+    public void grownBufferShrinksAfterARunOfSmallFlushes() throws IOException {
+        XOutputStream outputStream = new XOutputStream(new CountingClientSocket(), 4096);
+        writeReply(outputStream, 1, 65536);
+        assertTrue(outputStream.buffer.capacity() >= 65536);
+
+        for (int i = 0; i < 63; i++) writeReply(outputStream, 2 + i, 32);
+        assertTrue(outputStream.buffer.capacity() >= 65536);
+        writeReply(outputStream, 65, 32);
+        assertEquals(4096, outputStream.buffer.capacity());
+    }
+
+    @Test
+    public void periodicLargeRepliesKeepTheGrownBuffer() throws IOException {
+        XOutputStream outputStream = new XOutputStream(new CountingClientSocket(), 4096);
+        long acquireCount = getBufferAcquireCount();
+        for (int i = 0; i < 1000; i++) writeReply(outputStream, i, i % 16 == 0 ? 65536 : 32);
+        // Only the first large reply grows the buffer, it is never handed back in between
+        assertEquals(acquireCount + 1, getBufferAcquireCount());
+    }
+
+    @Test
+    public void benchmarkSyscallsPerThousandEvents() throws IOException {
+        int[] eventsPerIteration = {1, 4, 16, 64};
+        StringBuilder sb = new StringBuilder();
+        for (int batch : eventsPerIteration) {
+            int immediate = sendEvents(false, batch).writeCount;
+            int deferred = sendEvents(true, batch).writeCount;
+            assertTrue(deferred <= immediate);
+            sb.append(String.format(" %d/iteration: immediate %d, deferred %d;", batch, immediate, deferred));
+        }
+        System.out.println("XOutputStream write syscalls per " + EVENT_COUNT + " events:" + sb);
+    }
+}
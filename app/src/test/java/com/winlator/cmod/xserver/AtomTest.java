@@ -0,0 +1,150 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AtomTest {
+    private static final int THREAD_COUNT = 8;
+    private static final int PREDEFINED_ATOM_COUNT = 68;
+
+    /** What Atom did before names were indexed by hash: a synchronized list scanned on every lookup. */
+    private static class ListAtoms {
+        private final ArrayList<String> atoms = new ArrayList<>();
+
+        private ListAtoms(ArrayList<String> names) {
+            atoms.add(null);
+            for (int id = 1; id <= PREDEFINED_ATOM_COUNT; id++) atoms.add(Atom.getName(id));
+            atoms.addAll(names);
+        }
+
+        private synchronized int getId(String name) {
+            for (int i = 0; i < atoms.size(); i++) if (name.equals(atoms.get(i))) return i;
+            return -1;
+        }
+
+        private synchronized int internAtom(String name) {
+            int id = getId(name);
+            if (id == -1) {
+                id = atoms.size();
+                atoms.add(name);
+            }
+            return id;
+        }
+    }
+
+    private interface Interner {
+        int internAtom(String name);
+    }
+
+    private interface ThreadBody {
+        void run(int index) throws Exception;
+    }
+
+    private static ArrayList<String> createNames(String prefix, int count) {
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) names.add(prefix + i);
+        return names;
+    }
+
+    /** Runs body on THREAD_COUNT threads released at the same time and returns the wall time. */
+    private static long runThreads(ThreadBody body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(index);
+                }
+                catch (Throwable e) {
+                    e.printStackTrace();
+                    failures.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) thread.join(TimeUnit.SECONDS.toMillis(30));
+        long elapsedTime = System.nanoTime() - startTime;
+        assertEquals(0, failures.get());
+        return elapsedTime;
+    }
+
+    @Test
+    public void predefinedAtomsKeepTheirIds() {
+        assertEquals(1, Atom.getId("PRIMARY"));
+        assertEquals(39, Atom.internAtom("WM_NAME"));
+        assertEquals("WM_TRANSIENT_FOR", Atom.getName(PREDEFINED_ATOM_COUNT));
+        assertEquals(0, Atom.internAtom(null));
+        assertNull(Atom.getName(0));
+        assertEquals(-1, Atom.getId("AtomTest_never_interned"));
+    }
+
+    @Test
+    public void concurrentInternGivesOneIdPerName() throws InterruptedException {
+        // Enough names to grow the id table several times while the threads race
+        final ArrayList<String> names = createNames("AtomTest_concurrent_", 5000);
+        final int[][] ids = new int[THREAD_COUNT][names.size()];
+
+        runThreads((index) -> {
+            ArrayList<Integer> order = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) order.add(i);
+            Collections.shuffle(order, new Random(index));
+
+            for (int i : order) {
+                String name = names.get(i);
+                int id = Atom.internAtom(name);
+                ids[index][i] = id;
+                // The id may come from another thread's intern, its name must already be readable here
+                if (!name.equals(Atom.getName(id)) || Atom.getId(name) != id) throw new AssertionError(name + " " + id);
+            }
+        });
+
+        HashSet<Integer> distinctIds = new HashSet<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            for (int t = 1; t < THREAD_COUNT; t++) assertEquals(name, ids[0][i], ids[t][i]);
+            assertTrue(Atom.isValid(ids[0][i]));
+            assertEquals(name, Atom.getName(Atom.getId(name)));
+            distinctIds.add(ids[0][i]);
+        }
+        assertEquals(names.size(), distinctIds.size());
+    }
+
+    @Test
+    public void benchmarkInternAtomEightThreads() throws InterruptedException {
+        final int internsPerThread = 50000;
+        // About the atoms a desktop session and a few Wine processes intern, most of them already known
+        final ArrayList<String> names = createNames("AtomTest_benchmark_", 512);
+        for (String name : names) Atom.internAtom(name);
+        ListAtoms listAtoms = new ListAtoms(names);
+
+        StringBuilder sb = new StringBuilder();
+        Interner[] interners = {listAtoms::internAtom, Atom::internAtom};
+        String[] labels = {"synchronized list", "hash index"};
+        for (int i = 0; i < interners.length; i++) {
+            Interner interner = interners[i];
+            long elapsedTime = runThreads((index) -> {
+                Random random = new Random(index);
+                for (int j = 0; j < internsPerThread; j++) interner.internAtom(names.get(random.nextInt(names.size())));
+            });
+            sb.append(String.format(" %s %.2f ms;", labels[i], elapsedTime / 1e6));
+        }
+        System.out.println("Atom (" + THREAD_COUNT + " threads, " + internsPerThread + " InternAtom each over " + names.size() + " names):" + sb);
+    }
+}
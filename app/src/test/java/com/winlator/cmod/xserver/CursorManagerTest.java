@@ -0,0 +1,62 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class CursorManagerTest {
+    private static final short WIDTH = 2;
+    private static final short HEIGHT = 2;
+    private static final byte DEPTH = 32;
+
+    private static ByteBuffer longData(long... values) {
+        ByteBuffer data = ByteBuffer.allocateDirect(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : values) data.putLong(value);
+        data.rewind();
+        return data;
+    }
+
+    private static long hash(int foreColor, ByteBuffer sourceData, ByteBuffer maskData) {
+        return CursorManager.hashCursorImage(WIDTH, HEIGHT, DEPTH, foreColor, 0, sourceData, maskData);
+    }
+
+    @Test
+    public void identicalInputsMatch() {
+        CursorManager.CursorImage image = new CursorManager.CursorImage(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, longData(1, 2), longData(-1, 0));
+        assertTrue(image.matches(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, longData(1, 2), longData(-1, 0)));
+    }
+
+    @Test
+    public void collidingSourceDataDoesNotMatch() {
+        ByteBuffer sourceData = longData(100, 200);
+        ByteBuffer collidingData = longData(101, 200 - 31);
+        assertEquals(hash(0xffffff, sourceData, null), hash(0xffffff, collidingData, null));
+
+        CursorManager.CursorImage image = new CursorManager.CursorImage(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, sourceData, null);
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, collidingData, null));
+    }
+
+    @Test
+    public void storedCopyIsNotAffectedBySourceChanges() {
+        ByteBuffer sourceData = longData(1, 2);
+        CursorManager.CursorImage image = new CursorManager.CursorImage(WIDTH, HEIGHT, DEPTH, 0, 0, sourceData, null);
+        sourceData.putLong(0, 3);
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0, 0, sourceData, null));
+        assertTrue(image.matches(WIDTH, HEIGHT, DEPTH, 0, 0, longData(1, 2), null));
+    }
+
+    @Test
+    public void colorsAndMaskArePartOfTheMatch() {
+        CursorManager.CursorImage image = new CursorManager.CursorImage(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, longData(1, 2), longData(-1, 0));
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0xff0000, 0, longData(1, 2), longData(-1, 0)));
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0xffffff, 0x00ff00, longData(1, 2), longData(-1, 0)));
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, longData(1, 2), longData(0, -1)));
+        assertFalse(image.matches(WIDTH, HEIGHT, DEPTH, 0xffffff, 0, longData(1, 2), null));
+        assertFalse(image.matches((short)4, (short)1, DEPTH, 0xffffff, 0, longData(1, 2), longData(-1, 0)));
+    }
+}
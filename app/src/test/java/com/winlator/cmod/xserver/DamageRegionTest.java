@@ -0,0 +1,130 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DamageRegionTest {
+    private static void assertRect(DamageRegion region, int index, int x, int y, int width, int height) {
+        assertEquals(x, region.getX(index));
+        assertEquals(y, region.getY(index));
+        assertEquals(width, region.getWidth(index));
+        assertEquals(height, region.getHeight(index));
+    }
+
+    @Test
+    public void clipsRectsToDrawableBounds() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(-10, -10, 20, 20);
+        region.add(95, 90, 20, 20);
+        assertEquals(2, region.getRectCount());
+        assertRect(region, 0, 0, 0, 10, 10);
+        assertRect(region, 1, 95, 90, 5, 10);
+    }
+
+    @Test
+    public void ignoresRectsOutsideOrEmpty() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(100, 0, 10, 10);
+        region.add(-20, -20, 10, 10);
+        region.add(10, 10, 0, 5);
+        assertTrue(region.isEmpty());
+    }
+
+    @Test
+    public void wholeSurfaceBecomesFull() {
+        DamageRegion region = new DamageRegion(100, 50);
+        region.add(-5, -5, 200, 200);
+        assertTrue(region.isFull());
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 0, 0, 100, 50);
+        assertEquals(100 * 50, region.getArea());
+
+        region.add(10, 10, 5, 5);
+        assertTrue(region.isFull());
+
+        region.clear();
+        assertTrue(region.isEmpty());
+        assertFalse(region.isFull());
+    }
+
+    @Test
+    public void mergesOverlappingAndAdjacentRects() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(0, 0, 10, 10);
+        region.add(5, 0, 10, 10);
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 0, 0, 15, 10);
+
+        region.add(15, 0, 10, 10);
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 0, 0, 25, 10);
+    }
+
+    @Test
+    public void keepsDistantRectsSeparate() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(0, 0, 10, 10);
+        region.add(50, 50, 10, 10);
+        assertEquals(2, region.getRectCount());
+        assertEquals(200, region.getArea());
+    }
+
+    @Test
+    public void ignoresRectsInsideExistingDamage() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(10, 10, 50, 50);
+        region.add(20, 20, 5, 5);
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 10, 10, 50, 50);
+    }
+
+    @Test
+    public void mergedRectIsMergedAgainWithEarlierRects() {
+        DamageRegion region = new DamageRegion(100, 100);
+        region.add(0, 0, 10, 10);
+        region.add(20, 0, 10, 10);
+        assertEquals(2, region.getRectCount());
+
+        region.add(10, 0, 10, 10);
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 0, 0, 30, 10);
+    }
+
+    @Test
+    public void collapsesToBoundingBoxPastMaxRects() {
+        DamageRegion region = new DamageRegion(200, 100);
+        for (int i = 0; i < DamageRegion.MAX_RECTS; i++) region.add(i * 10, 0, 1, 1);
+        assertEquals(DamageRegion.MAX_RECTS, region.getRectCount());
+
+        region.add(0, 50, 1, 1);
+        assertEquals(1, region.getRectCount());
+        assertRect(region, 0, 0, 0, (DamageRegion.MAX_RECTS - 1) * 10 + 1, 51);
+        assertFalse(region.isFull());
+    }
+
+    // Compares the bytes uploaded for scattered small damage against re-uploading the whole surface every frame
+    @Test
+    public void uploadsFarLessThanFullSurfaceForSmallDamage() {
+        final int width = 1280, height = 720, frames = 1000;
+        DamageRegion region = new DamageRegion(width, height);
+        Random random = new Random(1);
+        long uploadedBytes = 0;
+
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < 4; i++) {
+                region.add(random.nextInt(width), random.nextInt(height), 8 + random.nextInt(56), 8 + random.nextInt(24));
+            }
+            uploadedBytes += region.getArea() * 4L;
+            region.clear();
+        }
+
+        long fullBytes = (long)width * height * 4 * frames;
+        System.out.printf("DamageRegion: uploaded %d KiB vs %d KiB full (%.2f%%)%n", uploadedBytes / 1024, fullBytes / 1024, 100.0 * uploadedBytes / fullBytes);
+        assertTrue(uploadedBytes * 20 < fullBytes);
+    }
+}
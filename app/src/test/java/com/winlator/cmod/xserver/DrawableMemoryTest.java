@@ -0,0 +1,107 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class DrawableMemoryTest {
+    private static final int SIZE = 64;
+    private static final long DRAWABLE_BYTES = SIZE * SIZE * 4;
+    private final ArrayList<Drawable> drawables = new ArrayList<>();
+    private long maxResidentBytes;
+    private long baseResidentBytes;
+
+    @Before
+    public void setUp() {
+        maxResidentBytes = DrawableMemory.getMaxResidentBytes();
+        baseResidentBytes = DrawableMemory.getResidentBytes();
+    }
+
+    @After
+    public void tearDown() {
+        for (Drawable drawable : drawables) drawable.detachBackingStore();
+        DrawableMemory.setMaxResidentBytes(maxResidentBytes);
+    }
+
+    private Drawable createDrawable(boolean evictable) {
+        Drawable drawable = new Drawable(drawables.size() + 1, SIZE, SIZE, null);
+        drawable.setType(Drawable.Type.WINDOW);
+        drawable.setEvictable(evictable);
+        drawables.add(drawable);
+        return drawable;
+    }
+
+    /** Leaves room for the given number of drawables on top of whatever other tests keep resident. */
+    private void setBudget(int drawableCount) {
+        DrawableMemory.setMaxResidentBytes(baseResidentBytes + drawableCount * DRAWABLE_BYTES);
+    }
+
+    @Test
+    public void reallocatedDrawableIsEvictedAgain() {
+        Drawable unmapped = createDrawable(true);
+        Drawable mapped = createDrawable(false);
+        unmapped.getData();
+        mapped.getData();
+
+        setBudget(1);
+        assertFalse(unmapped.hasData());
+        assertTrue(mapped.hasData());
+
+        // Redrawn on Expose while still unmapped
+        unmapped.getData();
+        assertEquals(baseResidentBytes + 2 * DRAWABLE_BYTES, DrawableMemory.getResidentBytes());
+        DrawableMemory.trim();
+        assertFalse(unmapped.hasData());
+        assertEquals(baseResidentBytes + DRAWABLE_BYTES, DrawableMemory.getResidentBytes());
+    }
+
+    @Test
+    public void drawableUnmappedBeforeItsFirstDrawIsEvicted() {
+        Drawable unmapped = createDrawable(true);
+        assertEquals(0, DrawableMemory.getEvictableBytes());
+
+        setBudget(0);
+        unmapped.getData();
+        assertEquals(DRAWABLE_BYTES, DrawableMemory.getEvictableBytes());
+        DrawableMemory.trim();
+        assertFalse(unmapped.hasData());
+        assertEquals(0, DrawableMemory.getEvictableBytes());
+    }
+
+    @Test
+    public void busyDrawableStaysQueued() {
+        Drawable unmapped = createDrawable(true);
+        unmapped.getData();
+
+        try (XLock lock = unmapped.lockPixels(true)) {
+            setBudget(0);
+            assertTrue(unmapped.hasData());
+        }
+        DrawableMemory.trim();
+        assertFalse(unmapped.hasData());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedFirst() {
+        Drawable first = createDrawable(true);
+        Drawable second = createDrawable(true);
+        first.getData();
+        second.getData();
+        first.getData();
+
+        setBudget(1);
+        assertTrue(first.hasData());
+        assertFalse(second.hasData());
+
+        // Mapping a window takes it out of the queue
+        first.setEvictable(false);
+        setBudget(0);
+        assertTrue(first.hasData());
+    }
+}
@@ -0,0 +1,155 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.winlator.cmod.xconnector.ClientSocket;
+import com.winlator.cmod.xconnector.XOutputStream;
+import com.winlator.cmod.xserver.events.ButtonPress;
+import com.winlator.cmod.xserver.events.ButtonRelease;
+import com.winlator.cmod.xserver.events.EnterNotify;
+import com.winlator.cmod.xserver.events.Event;
+import com.winlator.cmod.xserver.events.KeyPress;
+import com.winlator.cmod.xserver.events.KeyRelease;
+import com.winlator.cmod.xserver.events.LeaveNotify;
+import com.winlator.cmod.xserver.events.MotionNotify;
+import com.winlator.cmod.xserver.events.PointerWindowEvent;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class InputDeviceManagerTest {
+    private static final int DELIVERY_COUNT = 100000;
+    private static final int BUTTON1_MASK = 1<<8;
+    private final Window root = new Window(1, null, 0, 0, 1280, 720, null);
+    private final Window window = new Window(2, null, 100, 50, 640, 480, null);
+    private final Window child = new Window(3, null, 10, 10, 64, 64, null);
+    private final CapturingClientSocket clientSocket = new CapturingClientSocket();
+    private final XOutputStream outputStream = new XOutputStream(clientSocket, 4096);
+
+    // The instances InputDeviceManager keeps and refills for every delivery
+    private final MotionNotify motionNotify = new MotionNotify();
+    private final ButtonPress buttonPress = new ButtonPress();
+    private final ButtonRelease buttonRelease = new ButtonRelease();
+    private final KeyPress keyPress = new KeyPress();
+    private final KeyRelease keyRelease = new KeyRelease();
+    private final EnterNotify enterNotify = new EnterNotify();
+    private final LeaveNotify leaveNotify = new LeaveNotify();
+
+    /** Keeps the last event written when capturing, otherwise drops the bytes like a client that reads everything. */
+    private static class CapturingClientSocket extends ClientSocket {
+        private boolean capturing = false;
+        private byte[] lastWrite;
+
+        private CapturingClientSocket() {
+            super(-1);
+        }
+
+        @Override
+        public void write(ByteBuffer data) {
+            if (capturing) {
+                lastWrite = new byte[data.remaining()];
+                data.get(lastWrite);
+            }
+            else data.position(data.limit());
+        }
+    }
+
+    public InputDeviceManagerTest() {
+        root.addChild(window);
+        window.addChild(child);
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+        assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled());
+        return allocationMXBean;
+    }
+
+    /** One round of what InputDeviceManager delivers for pointer and keyboard input, seven events. */
+    private void deliverShared(short x, short y, int state) throws IOException {
+        short localX = window.rootXToLocal(x);
+        short localY = window.rootYToLocal(y);
+        leaveNotify.set(PointerWindowEvent.Detail.INFERIOR, root, root, null, x, y, x, y, state, PointerWindowEvent.Mode.NORMAL, true).send((short)1, outputStream);
+        enterNotify.set(PointerWindowEvent.Detail.ANCESTOR, root, window, null, x, y, localX, localY, state, PointerWindowEvent.Mode.NORMAL, true).send((short)2, outputStream);
+        motionNotify.set((byte)0, root, window, child, x, y, localX, localY, state).send((short)3, outputStream);
+        buttonPress.set((byte)1, root, window, child, x, y, localX, localY, state).send((short)4, outputStream);
+        buttonRelease.set((byte)1, root, window, null, x, y, localX, localY, state).send((short)5, outputStream);
+        keyPress.set((byte)38, root, window, child, x, y, localX, localY, state).send((short)6, outputStream);
+        keyRelease.set((byte)38, root, window, null, x, y, localX, localY, state).send((short)7, outputStream);
+    }
+
+    /** What InputDeviceManager did before the instances were shared: new events, masks and local points every time. */
+    private void deliverAllocated(short x, short y, int state) throws IOException {
+        short[] localPoint = window.rootPointToLocal(x, y);
+        new LeaveNotify(PointerWindowEvent.Detail.INFERIOR, root, root, null, x, y, x, y, new Bitmask(state), PointerWindowEvent.Mode.NORMAL, true).send((short)1, outputStream);
+        new EnterNotify(PointerWindowEvent.Detail.ANCESTOR, root, window, null, x, y, localPoint[0], localPoint[1], new Bitmask(state), PointerWindowEvent.Mode.NORMAL, true).send((short)2, outputStream);
+        new MotionNotify(false, root, window, child, x, y, localPoint[0], localPoint[1], new Bitmask(state)).send((short)3, outputStream);
+        new ButtonPress((byte)1, root, window, child, x, y, localPoint[0], localPoint[1], new Bitmask(state)).send((short)4, outputStream);
+        new ButtonRelease((byte)1, root, window, null, x, y, localPoint[0], localPoint[1], new Bitmask(state)).send((short)5, outputStream);
+        new KeyPress((byte)38, root, window, child, x, y, localPoint[0], localPoint[1], new Bitmask(state)).send((short)6, outputStream);
+        new KeyRelease((byte)38, root, window, null, x, y, localPoint[0], localPoint[1], new Bitmask(state)).send((short)7, outputStream);
+    }
+
+    private byte[] encode(Event event) throws IOException {
+        clientSocket.capturing = true;
+        event.send((short)9, outputStream);
+        clientSocket.capturing = false;
+        // The timestamp is taken when the event is filled in
+        byte[] data = clientSocket.lastWrite;
+        Arrays.fill(data, 4, 8, (byte)0);
+        return data;
+    }
+
+    @Test
+    public void refilledEventEncodesLikeANewOne() throws IOException {
+        Bitmask state = new Bitmask(BUTTON1_MASK);
+        short localX = window.rootXToLocal((short)300);
+        short localY = window.rootYToLocal((short)200);
+
+        // Filled for another window first, so every field has to be overwritten
+        motionNotify.set((byte)1, window, child, child, (short)1, (short)2, (short)3, (short)4, 0xff);
+        assertArrayEquals(encode(new MotionNotify(false, root, window, null, (short)300, (short)200, localX, localY, state)),
+                encode(motionNotify.set((byte)0, root, window, null, (short)300, (short)200, localX, localY, state.getBits())));
+
+        keyPress.set((byte)10, window, child, child, (short)1, (short)2, (short)3, (short)4, 0xff);
+        assertArrayEquals(encode(new KeyPress((byte)38, root, window, null, (short)300, (short)200, localX, localY, state)),
+                encode(keyPress.set((byte)38, root, window, null, (short)300, (short)200, localX, localY, state.getBits())));
+
+        enterNotify.set(PointerWindowEvent.Detail.NONLINEAR, window, child, child, (short)1, (short)2, (short)3, (short)4, 0xff, PointerWindowEvent.Mode.GRAB, false);
+        assertArrayEquals(encode(new EnterNotify(PointerWindowEvent.Detail.ANCESTOR, root, window, null, (short)300, (short)200, localX, localY, state, PointerWindowEvent.Mode.NORMAL, true)),
+                encode(enterNotify.set(PointerWindowEvent.Detail.ANCESTOR, root, window, null, (short)300, (short)200, localX, localY, state.getBits(), PointerWindowEvent.Mode.NORMAL, true)));
+    }
+
+    @Test
+    public void sharedEventDeliveryDoesNotAllocate() throws IOException {
+        com.sun.management.ThreadMXBean allocationMXBean = getAllocationMXBean();
+        long threadId = Thread.currentThread().getId();
+        int state = BUTTON1_MASK;
+        for (int i = 0; i < DELIVERY_COUNT / 10; i++) {
+            deliverShared((short)(i % 1280), (short)(i % 720), state);
+            deliverAllocated((short)(i % 1280), (short)(i % 720), state);
+        }
+
+        long allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < DELIVERY_COUNT; i++) deliverShared((short)(i % 1280), (short)(i % 720), state);
+        long sharedBytes = allocationMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+        allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < DELIVERY_COUNT; i++) deliverAllocated((short)(i % 1280), (short)(i % 720), state);
+        long newEventBytes = allocationMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+        System.out.printf("InputDeviceManager (%d deliveries of 7 events): shared events %.2f bytes/event, new events %.2f bytes/event%n",
+                DELIVERY_COUNT, sharedBytes / (DELIVERY_COUNT * 7.0), newEventBytes / (DELIVERY_COUNT * 7.0));
+        // Leaves room for the measurement itself, a single allocation per event would be several megabytes
+        assertTrue("allocated " + sharedBytes + " bytes", sharedBytes < 64 * 1024);
+    }
+}
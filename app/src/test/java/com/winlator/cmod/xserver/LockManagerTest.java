@@ -0,0 +1,185 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LockManagerTest {
+    private static final XServer.Lockable[] LOCKABLES = XServer.Lockable.values();
+
+    /** Tracks holders per lockable so that any overlap of a writer with another holder is counted. */
+    private static class Holders {
+        private final AtomicInteger[] readers = new AtomicInteger[LOCKABLES.length];
+        private final AtomicInteger[] writers = new AtomicInteger[LOCKABLES.length];
+        private final AtomicInteger maxReaders = new AtomicInteger();
+        private final AtomicInteger violations = new AtomicInteger();
+
+        private Holders() {
+            for (int i = 0; i < LOCKABLES.length; i++) {
+                readers[i] = new AtomicInteger();
+                writers[i] = new AtomicInteger();
+            }
+        }
+
+        private void enter(XServer.Lockable[] lockables, boolean shared) {
+            for (XServer.Lockable lockable : distinct(lockables)) {
+                int i = lockable.ordinal();
+                if (shared) {
+                    maxReaders.accumulateAndGet(readers[i].incrementAndGet(), Math::max);
+                    if (writers[i].get() != 0) violations.incrementAndGet();
+                }
+                else if (writers[i].incrementAndGet() != 1 || readers[i].get() != 0) violations.incrementAndGet();
+            }
+        }
+
+        private void exit(XServer.Lockable[] lockables, boolean shared) {
+            for (XServer.Lockable lockable : distinct(lockables)) {
+                int i = lockable.ordinal();
+                if (shared) {
+                    readers[i].decrementAndGet();
+                }
+                else writers[i].decrementAndGet();
+            }
+        }
+    }
+
+    private static ArrayList<XServer.Lockable> distinct(XServer.Lockable[] lockables) {
+        ArrayList<XServer.Lockable> result = new ArrayList<>();
+        for (XServer.Lockable lockable : lockables) {
+            if (!result.contains(lockable)) result.add(lockable);
+        }
+        return result;
+    }
+
+    /** A random subset in random order, possibly with duplicates, as callers list them. */
+    private static XServer.Lockable[] randomLockables(Random random) {
+        XServer.Lockable[] lockables = new XServer.Lockable[1 + random.nextInt(4)];
+        for (int i = 0; i < lockables.length; i++) lockables[i] = LOCKABLES[random.nextInt(LOCKABLES.length)];
+        return lockables;
+    }
+
+    private static long runContention(LockManager lockManager, Holders holders, int threadCount, int iterations, int sharedPercent) throws InterruptedException {
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < iterations; i++) {
+                    XServer.Lockable[] lockables = randomLockables(random);
+                    boolean shared = random.nextInt(100) < sharedPercent;
+                    try (XLock lock = shared ? lockManager.lockShared(lockables) : lockManager.lock(lockables)) {
+                        holders.enter(lockables, shared);
+                        Thread.yield();
+                        holders.exit(lockables, shared);
+                    }
+                    operations.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            if (thread.isAlive()) fail("Lock acquisition deadlocked");
+        }
+        long elapsedTime = System.nanoTime() - startTime;
+        assertEquals((long)threadCount * iterations, operations.get());
+        return elapsedTime;
+    }
+
+    @Test
+    public void randomOrderAcquisitionNeverDeadlocksOrOverlaps() throws InterruptedException {
+        Holders holders = new Holders();
+        runContention(new LockManager(), holders, 8, 20000, 50);
+        assertEquals(0, holders.violations.get());
+    }
+
+    @Test
+    public void sharedLocksAreHeldConcurrently() throws InterruptedException {
+        final LockManager lockManager = new LockManager();
+        final CountDownLatch bothHeld = new CountDownLatch(2);
+        final AtomicInteger completed = new AtomicInteger();
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try (XLock lock = lockManager.lockShared(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    bothHeld.countDown();
+                    if (bothHeld.await(10, TimeUnit.SECONDS)) completed.incrementAndGet();
+                }
+                catch (InterruptedException e) {}
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(2, completed.get());
+    }
+
+    @Test
+    public void upgradingASharedLockFailsInsteadOfHanging() throws InterruptedException {
+        LockManager lockManager = new LockManager();
+        try (XLock sharedLock = lockManager.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
+            try (XLock lock = lockManager.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.WINDOW_MANAGER)) {
+                fail("Upgrade was allowed");
+            }
+            catch (IllegalStateException e) {}
+
+            try (XLock lock = lockManager.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                fail("Upgrade was allowed");
+            }
+            catch (IllegalStateException e) {}
+
+            // Nothing was left held by the failed attempt
+            final AtomicInteger acquired = new AtomicInteger();
+            Thread thread = new Thread(() -> {
+                try (XLock lock = lockManager.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
+                    acquired.incrementAndGet();
+                }
+            });
+            thread.start();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(thread.isAlive());
+            assertEquals(1, acquired.get());
+        }
+
+        // A thread that already holds the exclusive side may take it shared and exclusive again
+        try (XLock lock = lockManager.lock(XServer.Lockable.WINDOW_MANAGER);
+             XLock downgrade = lockManager.lockShared(XServer.Lockable.WINDOW_MANAGER);
+             XLock reentrant = lockManager.lock(XServer.Lockable.WINDOW_MANAGER)) {
+            assertEquals(2, lockManager.getWriteHoldCount(XServer.Lockable.WINDOW_MANAGER));
+        }
+    }
+
+    @Test
+    public void benchmarkReadMostlyContention() throws InterruptedException {
+        final int threadCount = 8;
+        final int iterations = 20000;
+        StringBuilder sb = new StringBuilder();
+        for (int sharedPercent : new int[]{0, 90, 100}) {
+            Holders holders = new Holders();
+            long elapsedTime = runContention(new LockManager(), holders, threadCount, iterations, sharedPercent);
+            assertEquals(0, holders.violations.get());
+            if (sharedPercent == 100) assertTrue(holders.maxReaders.get() > 1);
+            sb.append(String.format(" %d%% shared %.0f ops/s;", sharedPercent, threadCount * iterations / (elapsedTime / 1e9)));
+        }
+        System.out.println("LockManager (" + threadCount + " threads):" + sb);
+    }
+}
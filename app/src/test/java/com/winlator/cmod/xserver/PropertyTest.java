@@ -0,0 +1,80 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PropertyTest {
+    private static byte[] chunk(int index, int length) {
+        byte[] values = new byte[length];
+        for (int i = 0; i < length; i++) values[i] = (byte)(index * 31 + i);
+        return values;
+    }
+
+    private static byte[] toArray(ByteBuffer data) {
+        byte[] values = new byte[data.remaining()];
+        data.duplicate().get(values);
+        return values;
+    }
+
+    /** What Property.append did before the value buffer could grow: copy the whole value on every call. */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    @Test
+    public void appendAndPrependKeepValueOrder() {
+        Property property = new Property(1, 2, Property.Format.BYTE_ARRAY, new byte[]{3, 4});
+        property.append(new byte[]{5, 6});
+        property.prepend(new byte[]{1, 2});
+        property.append(ByteBuffer.wrap(new byte[]{7}));
+
+        assertEquals(7, property.size());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7}, toArray(property.getData()));
+    }
+
+    @Test
+    public void dataViewIsNotOverwrittenByLaterChanges() {
+        Property property = new Property(1, 2, Property.Format.BYTE_ARRAY, new byte[]{1, 2, 3});
+        property.append(new byte[]{4});
+        ByteBuffer view = property.getData();
+
+        property.append(new byte[]{5});
+        property.prepend(new byte[]{0});
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, toArray(view));
+
+        view = property.getData();
+        property.replace(new byte[]{9, 9});
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5}, toArray(view));
+        assertArrayEquals(new byte[]{9, 9}, toArray(property.getData()));
+    }
+
+    @Test
+    public void benchmarkTenThousandAppends() {
+        final int appends = 10000;
+        final int chunkSize = 16;
+        byte[][] chunks = new byte[appends][];
+        for (int i = 0; i < appends; i++) chunks[i] = chunk(i, chunkSize);
+
+        long startTime = System.nanoTime();
+        Property property = new Property(1, 2, Property.Format.BYTE_ARRAY, (byte[])null);
+        for (byte[] values : chunks) property.append(values);
+        long appendTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        byte[] expected = new byte[0];
+        for (byte[] values : chunks) expected = concat(expected, values);
+        long copyTime = System.nanoTime() - startTime;
+
+        assertEquals(appends * chunkSize, property.size());
+        assertArrayEquals(expected, toArray(property.getData()));
+
+        System.out.printf("Property (%d appends of %d bytes): growable buffer %.2f ms, copy per append %.2f ms%n", appends, chunkSize, appendTime / 1e6, copyTime / 1e6);
+    }
+}
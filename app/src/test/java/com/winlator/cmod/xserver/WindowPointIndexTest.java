@@ -0,0 +1,203 @@
+package com.winlator.cmod.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class WindowPointIndexTest {
+    private static final int SCREEN_WIDTH = 1920;
+    private static final int SCREEN_HEIGHT = 1080;
+    private int nextId = 1;
+
+    private Window createRoot() {
+        Window root = new Window(nextId++, null, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT, null);
+        root.attributes.setMapped(true);
+        return root;
+    }
+
+    private Window createChild(Window parent, int x, int y, int width, int height) {
+        Window window = new Window(nextId++, null, x, y, width, height, null);
+        window.attributes.setMapped(true);
+        parent.addChild(window);
+        return window;
+    }
+
+    /** The recursive descent that WindowManager used before the index existed. */
+    private static Window findByTreeWalk(Window window, short rootX, short rootY) {
+        if (!(window.attributes.isMapped() && window.containsPoint(rootX, rootY))) return null;
+        Window child = window.getChildByCoords(rootX, rootY);
+        return child != null ? findByTreeWalk(child, rootX, rootY) : window;
+    }
+
+    private ArrayList<Window> createScene(Window root, Random random, int windowCount) {
+        ArrayList<Window> windows = new ArrayList<>();
+        Window desktop = createChild(root, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        windows.add(desktop);
+        for (int i = 1; i < windowCount; i++) {
+            Window parent = random.nextInt(4) == 0 ? windows.get(random.nextInt(windows.size())) : desktop;
+            windows.add(createChild(parent, random.nextInt(1600) - 100, random.nextInt(900) - 100, random.nextInt(600) + 1, random.nextInt(400) + 1));
+        }
+        return windows;
+    }
+
+    private static void assertMatchesTreeWalk(Window root, WindowPointIndex index, Random random, int samples) {
+        for (int i = 0; i < samples; i++) {
+            short x = (short)random.nextInt(SCREEN_WIDTH);
+            short y = (short)random.nextInt(SCREEN_HEIGHT);
+            assertSame(findByTreeWalk(root, x, y), index.findPointWindow(x, y));
+        }
+    }
+
+    /** Applies one random edit the way WindowManager does: change the tree, then notify the index. */
+    private static void applyRandomEdit(ArrayList<Window> windows, WindowPointIndex index, Random random) {
+        Window window = windows.get(1 + random.nextInt(windows.size() - 1));
+        Window parent = window.getParent();
+        switch (random.nextInt(5)) {
+            case 0:
+                if (window.attributes.isMapped()) {
+                    window.attributes.setMapped(false);
+                    index.onUnmapWindow(window);
+                }
+                else {
+                    window.attributes.setMapped(true);
+                    index.onMapWindow(window);
+                }
+                break;
+            case 1: {
+                Window sibling = parent.getChildren().get(random.nextInt(parent.getChildCount()));
+                if (random.nextBoolean()) {
+                    parent.moveChildAbove(window, sibling);
+                }
+                else parent.moveChildBelow(window, sibling);
+                index.onChangeWindowZOrder(window);
+                break;
+            }
+            case 2:
+                window.setX((short)(window.getX() + random.nextInt(201) - 100));
+                window.setY((short)(window.getY() + random.nextInt(201) - 100));
+                index.onUpdateWindowGeometry(window, false);
+                break;
+            case 3:
+                window.setWidth((short)(random.nextInt(600) + 1));
+                window.setHeight((short)(random.nextInt(400) + 1));
+                index.onUpdateWindowGeometry(window, true);
+                break;
+            case 4: {
+                Window newParent = windows.get(random.nextInt(windows.size()));
+                if (newParent == window || window.isAncestorOf(newParent)) newParent = windows.get(0);
+                index.onDetachWindow(window);
+                parent.removeChild(window);
+                newParent.addChild(window);
+                index.onAttachWindow(window);
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void findsTopmostWindowInPaintOrder() {
+        Window root = createRoot();
+        Window bottom = createChild(root, 0, 0, 100, 100);
+        Window top = createChild(root, 50, 50, 100, 100);
+        Window nested = createChild(bottom, 60, 60, 30, 30);
+        WindowPointIndex index = new WindowPointIndex(root);
+
+        assertSame(bottom, index.findPointWindow((short)10, (short)10));
+        assertSame(top, index.findPointWindow((short)70, (short)70));
+        assertSame(root, index.findPointWindow((short)500, (short)500));
+
+        root.moveChildAbove(bottom, top);
+        index.onChangeWindowZOrder(bottom);
+        assertSame(nested, index.findPointWindow((short)70, (short)70));
+        assertEquals(1, index.getRebuildCount());
+    }
+
+    @Test
+    public void clipsChildrenToTheirAncestors() {
+        Window root = createRoot();
+        Window parent = createChild(root, 100, 100, 50, 50);
+        Window child = createChild(parent, 40, 40, 100, 100);
+        WindowPointIndex index = new WindowPointIndex(root);
+
+        assertSame(child, index.findPointWindow((short)145, (short)145));
+        assertSame(root, index.findPointWindow((short)160, (short)160));
+
+        parent.setWidth((short)200);
+        parent.setHeight((short)200);
+        index.onUpdateWindowGeometry(parent, true);
+        assertSame(child, index.findPointWindow((short)160, (short)160));
+    }
+
+    @Test
+    public void unmappedSubtreeIsSkippedUntilMappedAgain() {
+        Window root = createRoot();
+        Window parent = createChild(root, 0, 0, 200, 200);
+        Window child = createChild(parent, 10, 10, 50, 50);
+        WindowPointIndex index = new WindowPointIndex(root);
+        assertEquals(3, index.getWindowCount());
+
+        parent.attributes.setMapped(false);
+        index.onUnmapWindow(parent);
+        assertSame(root, index.findPointWindow((short)20, (short)20));
+        assertEquals(1, index.getWindowCount());
+
+        parent.attributes.setMapped(true);
+        index.onMapWindow(parent);
+        assertSame(child, index.findPointWindow((short)20, (short)20));
+        assertEquals(3, index.getWindowCount());
+    }
+
+    @Test
+    public void incrementalUpdatesMatchTreeWalk() {
+        Random random = new Random(13);
+        Window root = createRoot();
+        ArrayList<Window> windows = createScene(root, random, 300);
+        WindowPointIndex index = new WindowPointIndex(root);
+        assertMatchesTreeWalk(root, index, random, 200);
+
+        for (int i = 0; i < 3000; i++) {
+            applyRandomEdit(windows, index, random);
+            assertMatchesTreeWalk(root, index, random, 20);
+        }
+        assertEquals(1, index.getRebuildCount());
+    }
+
+    @Test
+    public void benchmarkTwoThousandWindows() {
+        final int edits = 2000;
+        final int queriesPerEdit = 10;
+
+        Random random = new Random(2000);
+        Window root = createRoot();
+        ArrayList<Window> windows = createScene(root, random, 2000);
+        WindowPointIndex index = new WindowPointIndex(root);
+        index.getWindowCount();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            applyRandomEdit(windows, index, random);
+            for (int j = 0; j < queriesPerEdit; j++) index.findPointWindow((short)random.nextInt(SCREEN_WIDTH), (short)random.nextInt(SCREEN_HEIGHT));
+        }
+        long incrementalTime = System.nanoTime() - startTime;
+        assertEquals(1, index.getRebuildCount());
+
+        random = new Random(2000);
+        root = createRoot();
+        windows = createScene(root, random, 2000);
+        WindowPointIndex rebuiltIndex = new WindowPointIndex(root);
+        rebuiltIndex.getWindowCount();
+        startTime = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            applyRandomEdit(windows, rebuiltIndex, random);
+            rebuiltIndex.invalidate();
+            for (int j = 0; j < queriesPerEdit; j++) rebuiltIndex.findPointWindow((short)random.nextInt(SCREEN_WIDTH), (short)random.nextInt(SCREEN_HEIGHT));
+        }
+        long rebuildTime = System.nanoTime() - startTime;
+        assertEquals(edits + 1, rebuiltIndex.getRebuildCount());
+
+        System.out.printf("WindowPointIndex (2000 windows, %d edits): incremental %.2f ms, full rebuild %.2f ms%n", edits, incrementalTime / 1e6, rebuildTime / 1e6);
+    }
+}
@@ -0,0 +1,169 @@
+package com.winlator.cmod.xserver.extensions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.winlator.cmod.xconnector.ClientSocket;
+import com.winlator.cmod.xconnector.XInputStream;
+import com.winlator.cmod.xserver.XClient;
+import com.winlator.cmod.xserver.errors.XRequestError;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+public class SyncExtensionTest {
+    private static final byte CREATE_FENCE = 14;
+    private static final byte TRIGGER_FENCE = 15;
+    private static final byte AWAIT_FENCE = 19;
+    private final SyncExtension syncExtension = new SyncExtension();
+
+    /** Hands the request body to XInputStream instead of reading it from a socket. */
+    private static class RequestSocket extends ClientSocket {
+        private final ByteBuffer data;
+
+        private RequestSocket(ByteBuffer data) {
+            super(-1);
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) {
+            int length = data.remaining();
+            buffer.put(data);
+            return length;
+        }
+    }
+
+    /** A client served by the epoll thread can be parked, one with a thread of its own cannot. */
+    private static XClient createClient(boolean canPark) {
+        XClient client = mock(XClient.class);
+        when(client.park()).thenReturn(canPark);
+        return client;
+    }
+
+    /** Sends one request the way XClientRequestHandler does once it has read the request header. */
+    private void sendRequest(XClient client, byte opcode, int... values) throws IOException, XRequestError {
+        ByteBuffer data = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) data.putInt(value);
+        data.flip();
+
+        XInputStream inputStream = new XInputStream(new RequestSocket(data), 64);
+        inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        inputStream.readMoreData(false);
+        when(client.getRequestData()).thenReturn(opcode);
+        when(client.getRemainingRequestLength()).thenReturn(values.length * 4);
+        try {
+            syncExtension.handleRequest(client, inputStream, null);
+        }
+        finally {
+            inputStream.release();
+        }
+    }
+
+    private void createFence(XClient client, int id) throws IOException, XRequestError {
+        sendRequest(client, CREATE_FENCE, 0, id, 0);
+    }
+
+    /** Runs an AwaitFence that blocks on a thread of its own, as in thread-per-client mode. */
+    private Thread startBlockingAwait(XClient client, int... ids) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                sendRequest(client, AWAIT_FENCE, ids);
+            }
+            catch (IOException | XRequestError e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) Thread.sleep(1);
+        assertEquals(Thread.State.WAITING, thread.getState());
+        return thread;
+    }
+
+    @Test(timeout = 10000)
+    public void parkedAwaitFenceLeavesTheThreadToOtherClients() throws IOException, XRequestError {
+        XClient waiting = createClient(true);
+        XClient other = createClient(true);
+        createFence(waiting, 1);
+        createFence(other, 2);
+
+        // Returns right away, the epoll thread goes on with the other client's requests
+        sendRequest(waiting, AWAIT_FENCE, 1);
+        verify(waiting).park();
+        for (int i = 0; i < 1000; i++) {
+            sendRequest(other, TRIGGER_FENCE, 2);
+            sendRequest(other, AWAIT_FENCE, 2);
+        }
+        verify(other, never()).park();
+        verify(waiting, never()).unpark();
+
+        sendRequest(other, TRIGGER_FENCE, 1);
+        verify(waiting).unpark();
+    }
+
+    @Test(timeout = 10000)
+    public void blockingAwaitFenceNeitherSpinsNorStallsOthers() throws IOException, XRequestError, InterruptedException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadCpuTimeSupported());
+
+        XClient waiting = createClient(false);
+        XClient other = createClient(false);
+        createFence(waiting, 1);
+        createFence(other, 2);
+
+        Thread thread = startBlockingAwait(waiting, 1);
+        long cpuTime = threadMXBean.getThreadCpuTime(thread.getId());
+        long startTime = System.nanoTime();
+        while (System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(500)) {
+            sendRequest(other, TRIGGER_FENCE, 2);
+            sendRequest(other, AWAIT_FENCE, 2);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+        assertTrue(threadMXBean.getThreadCpuTime(thread.getId()) - cpuTime < TimeUnit.MILLISECONDS.toNanos(50));
+
+        sendRequest(other, TRIGGER_FENCE, 1);
+        thread.join();
+    }
+
+    @Test(timeout = 10000)
+    public void clientHangingUpWhileParkedIsDropped() throws IOException, XRequestError {
+        XClient gone = createClient(true);
+        XClient staying = createClient(true);
+        createFence(staying, 1);
+        createFence(staying, 2);
+        sendRequest(gone, AWAIT_FENCE, 1, 2);
+        sendRequest(staying, AWAIT_FENCE, 2);
+
+        // What XClient.freeResources does once the connector sees the hangup
+        syncExtension.removeWaiters(gone);
+        sendRequest(staying, TRIGGER_FENCE, 1);
+        sendRequest(staying, TRIGGER_FENCE, 2);
+        verify(staying).unpark();
+        verify(gone, never()).unpark();
+    }
+
+    @Test(timeout = 10000)
+    public void clientHangingUpWhileBlockedReleasesItsThread() throws IOException, XRequestError, InterruptedException {
+        XClient gone = createClient(false);
+        createFence(gone, 1);
+
+        Thread thread = startBlockingAwait(gone, 1);
+        syncExtension.removeWaiters(gone);
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(thread.isAlive());
+    }
+}